@@ -0,0 +1,54 @@
+package com.splitshare.splitshare.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Loads the receipt images from src/test/resources for the benchmarks.
+ */
+final class BenchmarkResources {
+
+    private BenchmarkResources() {
+    }
+
+    static byte[] read(String name) {
+        try (InputStream in = BenchmarkResources.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Benchmark resource not found: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Text shaped like Tesseract output for a restaurant receipt, repeated to the requested item count.
+     */
+    static String receiptText(int items) {
+        StringBuilder text = new StringBuilder();
+        text.append("THE CORNER BISTRO\n");
+        text.append("123 Main Street Springfield\n");
+        text.append("Host: Maria  Table 12\n");
+        text.append("05/12/2023 7:42 PM\n\n");
+        double subtotal = 0;
+        for (int i = 0; i < items; i++) {
+            double price = 3.25 + (i % 17) * 1.5;
+            subtotal += price;
+            if (i % 3 == 0) {
+                text.append(2).append(" Chicken Wings ").append(String.format("%.2f", price)).append('\n');
+            } else {
+                text.append("Coffee Latte ").append(String.format("%.2f", price)).append('\n');
+            }
+        }
+        double tax = subtotal * 0.08;
+        text.append('\n');
+        text.append("Subtotal ").append(String.format("%.2f", subtotal)).append('\n');
+        text.append("Sales Tax ").append(String.format("%.2f", tax)).append('\n');
+        text.append("Tip 5.00\n");
+        text.append("TOTAL $").append(String.format("%.2f", subtotal + tax + 5)).append('\n');
+        text.append("VISA **** 1234\nAuthorization 004211\nThank you for dining with us\n");
+        return text.toString();
+    }
+}
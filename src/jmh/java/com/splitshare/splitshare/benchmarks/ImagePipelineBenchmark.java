@@ -0,0 +1,95 @@
+package com.splitshare.splitshare.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.splitshare.splitshare.service.ImagePipelineContext;
+import com.splitshare.splitshare.service.ImageQualityChecker;
+import com.splitshare.splitshare.service.Preprocesing;
+import com.splitshare.splitshare.service.QualityReport;
+import com.splitshare.splitshare.service.ReceiptRegionDetector;
+
+/**
+ * Non-OCR stages of the image pipeline: decode, receipt region cropping, blur scoring and both preprocessing branches.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ImagePipelineBenchmark {
+
+    @Param({"receipt1.png", "blurry_receipt.png", "receipt_3.png", "clear_receipt.png"})
+    public String image;
+
+    private byte[] imageBytes;
+    private ImagePipelineContext decoded;
+    private final ReceiptRegionDetector regionDetector = new ReceiptRegionDetector(true, 512, 0.2, 0.9);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        imageBytes = BenchmarkResources.read(image);
+        decoded = ImagePipelineContext.decode(imageBytes);
+        decoded.getGray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        decoded.close();
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        try (ImagePipelineContext context = ImagePipelineContext.decode(imageBytes)) {
+            blackhole.consume(context.getGray().rows());
+        }
+    }
+
+    @Benchmark
+    public void cropToReceipt(Blackhole blackhole) {
+        try (Mat region = regionDetector.crop(decoded.getGray())) {
+            blackhole.consume(region.rows());
+        }
+    }
+
+    @Benchmark
+    public double blurVariance() {
+        return ImageQualityChecker.computeVariance(decoded.getGray());
+    }
+
+    @Benchmark
+    public QualityReport qualityReport() {
+        return ImageQualityChecker.analyze(decoded.getGray());
+    }
+
+    @Benchmark
+    public void preprocessIncreased(Blackhole blackhole) {
+        try (Mat result = Preprocesing.preprocessIncreased(decoded.getGray())) {
+            blackhole.consume(result.rows());
+        }
+    }
+
+    @Benchmark
+    public void preprocessMinimal(Blackhole blackhole) {
+        try (Mat result = Preprocesing.preprocessMinimal(decoded.getGray())) {
+            blackhole.consume(result.rows());
+        }
+    }
+}
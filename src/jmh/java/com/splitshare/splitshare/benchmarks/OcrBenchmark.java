@@ -0,0 +1,76 @@
+package com.splitshare.splitshare.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.service.ImagePipelineContext;
+import com.splitshare.splitshare.service.OcrEnginePool;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.ParallelStripOcr;
+import com.splitshare.splitshare.service.Preprocesing;
+
+/**
+ * Tesseract itself on already preprocessed receipts, in a single pass or cut into strips
+ * OCR'd in parallel on one pooled engine per core, with and without the fast engine setting
+ * the first OCR tier uses.
+ * Needs the Tesseract native library and tessdata, like the Docker test image provides.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class OcrBenchmark {
+
+    @Param({"receipt1.png", "receipt_3.png"})
+    public String image;
+
+    @Param({ParallelStripOcr.MODE_SINGLE, ParallelStripOcr.MODE_STRIPS})
+    public String ocrMode;
+
+    @Param({"false", "true"})
+    public boolean fast;
+
+    private OcrEnginePool pool;
+    private ParallelStripOcr stripOcr;
+    private Mat preprocessed;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new OcrEnginePool(0, 30000);
+        stripOcr = new ParallelStripOcr(pool, new OcrMetrics(new SimpleMeterRegistry()), 2000, 300, 0);
+        try (ImagePipelineContext context = ImagePipelineContext.decode(BenchmarkResources.read(image))) {
+            preprocessed = Preprocesing.preprocessMinimal(context.getGray());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        preprocessed.close();
+        stripOcr.shutdown();
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String doOcr() throws Exception {
+        return stripOcr.extractText(preprocessed, ocrMode, fast);
+    }
+}
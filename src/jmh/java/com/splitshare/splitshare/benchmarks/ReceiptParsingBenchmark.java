@@ -0,0 +1,47 @@
+package com.splitshare.splitshare.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+
+/**
+ * Parsing raw OCR text into ReceiptData for short and long receipts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReceiptParsingBenchmark {
+
+    @Param({"10", "200"})
+    public int items;
+
+    private final ReceiptExtractionHelper extractor = new ReceiptExtractionHelper();
+    private String rawText;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        rawText = BenchmarkResources.receiptText(items);
+    }
+
+    @Benchmark
+    public ReceiptData parseReceiptText() {
+        return extractor.parseReceiptText(rawText);
+    }
+}
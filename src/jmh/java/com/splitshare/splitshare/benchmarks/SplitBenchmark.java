@@ -0,0 +1,83 @@
+package com.splitshare.splitshare.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.dto.ReceiptItem;
+import com.splitshare.splitshare.service.IntLongHashMap;
+import com.splitshare.splitshare.service.ItemSplitService;
+
+/**
+ * Splitting a receipt between users, from a small dinner to a large group bill.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SplitBenchmark {
+
+    @Param({"30:5", "5000:300", "20000:800"})
+    public String itemsAndUsers;
+
+    private final ItemSplitService splitService = new ItemSplitService();
+    private ReceiptData receipt;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] parts = itemsAndUsers.split(":");
+        int items = Integer.parseInt(parts[0]);
+        int users = Integer.parseInt(parts[1]);
+        Random random = new Random(42);
+
+        receipt = new ReceiptData();
+        List<ReceiptItem> receiptItems = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            ReceiptItem item = new ReceiptItem("Item " + i, 1 + random.nextInt(5000) / 100.0, 1 + random.nextInt(3));
+            List<Integer> assigned = new ArrayList<>();
+            int shares = 1 + random.nextInt(Math.min(users, 6));
+            for (int s = 0; s < shares; s++) {
+                assigned.add(1 + random.nextInt(users));
+            }
+            item.setAssignedUsers(assigned);
+            receiptItems.add(item);
+        }
+        receipt.setItems(receiptItems);
+        receipt.setTax(receipt.expectedSubTotal() * 0.08);
+        receipt.setTip(receipt.expectedSubTotal() * 0.15);
+    }
+
+    @Benchmark
+    public Map<Integer, Double> calculateUserOwedAmounts() {
+        return splitService.calculateUserOwedAmounts(receipt);
+    }
+
+    // The cents engine alone, without converting to a boxed map of dollars
+    @Benchmark
+    public IntLongHashMap calculateUserOwedCents() {
+        return splitService.calculateUserOwedCents(receipt, false);
+    }
+
+    @Benchmark
+    public IntLongHashMap calculateUserOwedCentsWithTaxAndTip() {
+        return splitService.calculateUserOwedCents(receipt, true);
+    }
+}
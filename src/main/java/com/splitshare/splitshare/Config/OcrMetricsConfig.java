@@ -0,0 +1,161 @@
+package com.splitshare.splitshare.Config;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import org.bytedeco.javacpp.Pointer;
+
+import com.splitshare.splitshare.service.BatchExtractionService;
+import com.splitshare.splitshare.service.LogStructuredReceiptStore;
+import com.splitshare.splitshare.service.NativeMemoryBudget;
+import com.splitshare.splitshare.service.OcrEnginePool;
+import com.splitshare.splitshare.service.OcrJobService;
+import com.splitshare.splitshare.service.OcrResultCache;
+import com.splitshare.splitshare.service.SplitResultCache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes the counters the OCR pool, native memory budget, cache, job queue,
+ * batch limiter and receipt log already keep, so they show up next to the per-stage timers on /actuator.
+ */
+@Configuration
+public class OcrMetricsConfig {
+
+    @Bean
+    public MeterBinder ocrPoolMetrics(OcrEnginePool pool) {
+        return registry -> {
+            Gauge.builder("ocr.pool.size", pool, OcrEnginePool::getSize)
+                    .description("Number of Tesseract engines in the pool")
+                    .register(registry);
+            Gauge.builder("ocr.pool.in_use", pool, OcrEnginePool::getInUse)
+                    .description("Engines currently running OCR")
+                    .register(registry);
+            Gauge.builder("ocr.pool.waiting", pool, OcrEnginePool::getWaiting)
+                    .description("Requests waiting for an engine")
+                    .register(registry);
+            Gauge.builder("ocr.pool.available", pool, OcrEnginePool::getAvailable)
+                    .description("Idle engines")
+                    .register(registry);
+            FunctionCounter.builder("ocr.pool.timeouts", pool, OcrEnginePool::getTimeoutCount)
+                    .description("Borrows that gave up waiting for an engine")
+                    .register(registry);
+            FunctionTimer.builder("ocr.pool.borrow", pool,
+                            OcrEnginePool::getBorrowCount,
+                            OcrEnginePool::getTotalBorrowNanos,
+                            TimeUnit.NANOSECONDS)
+                    .description("Time spent waiting to borrow an engine")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder nativeMemoryMetrics(NativeMemoryBudget budget) {
+        return registry -> {
+            Gauge.builder("ocr.native_memory.budget", budget, NativeMemoryBudget::getBudgetBytes)
+                    .baseUnit("bytes")
+                    .description("Native memory images may reserve at once")
+                    .register(registry);
+            Gauge.builder("ocr.native_memory.reserved", budget, NativeMemoryBudget::getReservedBytes)
+                    .baseUnit("bytes")
+                    .description("Estimated native memory held by images in the pipeline")
+                    .register(registry);
+            Gauge.builder("ocr.native_memory.waiting", budget, NativeMemoryBudget::getWaiting)
+                    .description("Images waiting for native memory budget")
+                    .register(registry);
+            FunctionCounter.builder("ocr.native_memory.timeouts", budget, NativeMemoryBudget::getTimeoutCount)
+                    .description("Images rejected because the budget stayed exhausted")
+                    .register(registry);
+            // Process-wide resident memory as JavaCPP measures it, includes OpenCV allocations
+            Gauge.builder("javacpp.physical_bytes", Pointer::physicalBytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder ocrCacheMetrics(OcrResultCache cache) {
+        return registry -> {
+            FunctionCounter.builder("ocr.cache.hits", cache, OcrResultCache::getMemoryHits)
+                    .tag("tier", "memory")
+                    .register(registry);
+            FunctionCounter.builder("ocr.cache.hits", cache, OcrResultCache::getDiskHits)
+                    .tag("tier", "disk")
+                    .register(registry);
+            FunctionCounter.builder("ocr.cache.misses", cache, OcrResultCache::getMisses)
+                    .register(registry);
+            FunctionCounter.builder("ocr.cache.evictions", cache, OcrResultCache::getMemoryEvictions)
+                    .tag("tier", "memory")
+                    .register(registry);
+            FunctionCounter.builder("ocr.cache.evictions", cache, OcrResultCache::getDiskEvictions)
+                    .tag("tier", "disk")
+                    .register(registry);
+            Gauge.builder("ocr.cache.bytes", cache, OcrResultCache::getMemoryBytes)
+                    .tag("tier", "memory")
+                    .register(registry);
+            Gauge.builder("ocr.cache.bytes", cache, OcrResultCache::getDiskBytes)
+                    .tag("tier", "disk")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder splitCacheMetrics(SplitResultCache cache) {
+        return registry -> {
+            FunctionCounter.builder("split.cache.hits", cache, SplitResultCache::getHits)
+                    .register(registry);
+            FunctionCounter.builder("split.cache.misses", cache, SplitResultCache::getMisses)
+                    .register(registry);
+            FunctionCounter.builder("split.cache.evictions", cache, SplitResultCache::getEvictions)
+                    .register(registry);
+            FunctionCounter.builder("split.cache.invalidations", cache, SplitResultCache::getInvalidations)
+                    .description("Cached splits dropped because their receipt changed")
+                    .register(registry);
+            Gauge.builder("split.cache.entries", cache, SplitResultCache::getEntries)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder ocrJobMetrics(OcrJobService jobService, BatchExtractionService batchService) {
+        return registry -> {
+            Gauge.builder("ocr.jobs.queued", jobService, OcrJobService::getQueuedCount)
+                    .description("Async OCR jobs waiting for a worker")
+                    .register(registry);
+            Gauge.builder("ocr.jobs.active", jobService, OcrJobService::getActiveCount)
+                    .description("Async OCR jobs currently running")
+                    .register(registry);
+            Gauge.builder("ocr.batch.in_flight", batchService, BatchExtractionService::getInFlight)
+                    .description("Batch files currently being processed")
+                    .register(registry);
+        };
+    }
+
+    // Only registered when receipt.storage.engine=log
+    @Bean
+    public MeterBinder receiptLogMetrics(ObjectProvider<LogStructuredReceiptStore> logStore) {
+        return registry -> logStore.ifAvailable(store -> {
+            Gauge.builder("receipt.log.segments", store, LogStructuredReceiptStore::getSegmentCount)
+                    .description("Receipt log segment files")
+                    .register(registry);
+            Gauge.builder("receipt.log.records", store, LogStructuredReceiptStore::getRecordCount)
+                    .description("Live records in the receipt log index")
+                    .register(registry);
+            Gauge.builder("receipt.log.bytes", store, LogStructuredReceiptStore::getTotalBytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("receipt.log.live_bytes", store, LogStructuredReceiptStore::getLiveBytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+            FunctionCounter.builder("receipt.log.compactions", store, LogStructuredReceiptStore::getCompactedSegments)
+                    .description("Segments rewritten and deleted by compaction")
+                    .register(registry);
+        });
+    }
+}
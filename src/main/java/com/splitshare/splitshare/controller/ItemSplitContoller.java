@@ -1,77 +1,168 @@
 package com.splitshare.splitshare.controller;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 
+import com.splitshare.splitshare.dto.BulkAssignmentRequest;
 import com.splitshare.splitshare.dto.ReceiptData;
-import com.splitshare.splitshare.dto.ReceiptItem;
 import com.splitshare.splitshare.service.ErrorResponse;
 import com.splitshare.splitshare.service.ItemSplitService;
 import com.splitshare.splitshare.service.ReceiptStorageService;
+import com.splitshare.splitshare.service.ReceiptVersionConflictException;
+import com.splitshare.splitshare.service.SplitResultCache;
 
 @RestController
 @RequestMapping("/api/split")
 public class ItemSplitContoller {
     private final ItemSplitService itemSplitService;
     private final ReceiptStorageService storageService;
+    private final SplitResultCache splitCache;
     @Autowired
-    public ItemSplitContoller(ItemSplitService itemSplitService, ReceiptStorageService storageService) {
+    public ItemSplitContoller(ItemSplitService itemSplitService, ReceiptStorageService storageService,
+                              SplitResultCache splitCache) {
         this.storageService = storageService;
         this.itemSplitService = itemSplitService;
+        this.splitCache = splitCache;
     }
 
+    /**
+     * What each user owes for a receipt, in dollars. Shares always add up to the receipt exactly.
+     * Results are memoized per receipt version, and the response carries an ETag derived from
+     * that version: send it back in If-None-Match to get a 304 while the receipt is unchanged.
+     * @param includeTaxAndTip Also share tax and tip in proportion to each user's items
+     */
     @PostMapping("/calculate-split")
     public ResponseEntity<Map<Integer, Double>> calculateSplit(
             @RequestParam("userId") Long userId,
-            @RequestParam("receiptId") String receiptId) {
+            @RequestParam("receiptId") String receiptId,
+            @RequestParam(value = "includeTaxAndTip", defaultValue = "false") boolean includeTaxAndTip,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
-        ReceiptData receipt = storageService.getReceiptById(userId, receiptId);
-        if (receipt == null) {
+        Long version = storageService.getReceiptVersion(userId, receiptId);
+        if (version == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
+        String etag = SplitResultCache.etag(receiptId, version, includeTaxAndTip);
+        if (matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+
+        Map<Integer, Double> result = splitCache.get(userId, receiptId, version, includeTaxAndTip);
+        if (result == null) {
+            ReceiptData receipt = storageService.getReceiptById(userId, receiptId);
+            if (receipt == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
+            result = itemSplitService.calculateUserOwedAmounts(receipt, includeTaxAndTip);
+            // The receipt may have moved on since the version check, tag what was actually computed
+            splitCache.put(userId, receiptId, receipt.getVersion(), includeTaxAndTip, result);
+            etag = SplitResultCache.etag(receiptId, receipt.getVersion(), includeTaxAndTip);
+        }
+        return ResponseEntity.ok().eTag(etag).body(result);
+    }
 
-        Map<Integer, Double> result = itemSplitService.calculateUserOwedAmounts(receipt);
-        return ResponseEntity.ok(result);
+    // If-None-Match holds "*" or a comma separated list of possibly weak entity tags
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+        return false;
     }
 
+    /**
+     * Assigns users to one item. Only a small delta is written, so concurrent assignments
+     * to the same receipt do not overwrite each other.
+     * Pass expectedVersion (the receipt version last seen) to get a 409 instead of applying
+     * the change when someone else changed the receipt in the meantime.
+     */
     @PostMapping("/assign-users")
     public ResponseEntity<?> assignUsersToItem(
             @RequestParam("userId") Long userId,
             @RequestParam("receiptId") String receiptId,
             @RequestParam("itemIndex") int itemIndex,
+            @RequestParam(value = "expectedVersion", required = false) Long expectedVersion,
             @RequestBody List<Integer> userIds) {
 
-        // Load structured receipt data
-        ReceiptData receiptData = storageService.getReceiptById(userId, receiptId);
-        if (receiptData == null) {
+        Long version;
+        try {
+            version = storageService.assignUsers(userId, receiptId, Map.of(itemIndex, userIds), expectedVersion);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse("Invalid item index"));
+        } catch (ReceiptVersionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ErrorResponse("The receipt was changed by someone else (now at version "
+                            + e.getCurrentVersion() + "). Reload it and try again."));
+        }
+        if (version == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(new ErrorResponse("Receipt not found"));
         }
 
-        List<ReceiptItem> items = receiptData.getItems();
-        if (itemIndex < 0 || itemIndex >= items.size()) {
-            return ResponseEntity.badRequest()
-                    .body(new ErrorResponse("Invalid item index"));
-        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Users assigned to item successfully");
+        response.put("version", version);
+        return ResponseEntity.ok(response);
+    }
 
-        // Assign users to item
-        ReceiptItem item = items.get(itemIndex);
-        item.setAssignedUsers(userIds);
+    /**
+     * Assigns users to many items in one round trip. The body holds explicit assignments
+     * (item index to users) and/or splitRemainingAmong, which splits every item still without
+     * users evenly among the given users. Everything is validated before anything is written,
+     * and the result is persisted once.
+     *
+     * @param includeSplit Also return what each user owes after the assignments
+     * @param includeTaxAndTip Whether that split shares tax and tip as well
+     */
+    @PostMapping("/assign-users/bulk")
+    public ResponseEntity<?> assignUsersBulk(
+            @RequestParam("userId") Long userId,
+            @RequestParam("receiptId") String receiptId,
+            @RequestParam(value = "includeSplit", defaultValue = "false") boolean includeSplit,
+            @RequestParam(value = "includeTaxAndTip", defaultValue = "false") boolean includeTaxAndTip,
+            @RequestBody BulkAssignmentRequest request) {
 
-        // Persist updated data as JSON
-        storageService.updateReceipt(userId, receiptId, receiptData);
+        ReceiptData receiptData;
+        try {
+            receiptData = storageService.applyAssignments(userId, receiptId, request.getExpectedVersion(),
+                    receipt -> itemSplitService.resolveAssignments(receipt, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse(e.getMessage()));
+        } catch (ReceiptVersionConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ErrorResponse("The receipt was changed by someone else (now at version "
+                            + e.getCurrentVersion() + "). Reload it and try again."));
+        }
+        if (receiptData == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(new ErrorResponse("Receipt not found"));
+        }
 
-        return ResponseEntity.ok("Users assigned to item successfully");
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Users assigned to items successfully");
+        response.put("version", receiptData.getVersion());
+        response.put("items", receiptData.getItems());
+        if (includeSplit) {
+            response.put("split", itemSplitService.calculateUserOwedAmounts(receiptData, includeTaxAndTip));
+        }
+        return ResponseEntity.ok(response);
     }
 }
@@ -0,0 +1,95 @@
+package com.splitshare.splitshare.controller;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.splitshare.splitshare.service.OcrJob;
+import com.splitshare.splitshare.service.OcrJobService;
+
+/**
+ * Status endpoints for asynchronous OCR jobs.
+ * Jobs are created by POST /api/receipts/extract with async=true.
+ * Clients either poll the job or subscribe to its Server-Sent Events stream.
+ */
+@RestController
+@RequestMapping("/api/receipts/jobs")
+public class OcrJobController {
+    private static final Logger logger = LoggerFactory.getLogger(OcrJobController.class);
+
+    private final OcrJobService jobService;
+    private final long sseTimeoutMillis;
+
+    @Autowired
+    public OcrJobController(OcrJobService jobService,
+                            @Value("${ocr.jobs.sse-timeout-ms:120000}") long sseTimeoutMillis) {
+        this.jobService = jobService;
+        this.sseTimeoutMillis = sseTimeoutMillis;
+    }
+
+    /**
+     * Returns the current state of a job, including the extracted data once it has completed
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<?> getJob(@PathVariable String jobId) {
+        OcrJob job = jobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        return ResponseEntity.ok(job);
+    }
+
+    /**
+     * Streams job state changes as Server-Sent Events.
+     * The current state is sent immediately and the stream closes once the job has finished.
+     */
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamJob(@PathVariable String jobId) {
+        OcrJob job = jobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMillis);
+        Consumer<OcrJob> listener = new Consumer<>() {
+            @Override
+            public void accept(OcrJob changed) {
+                try {
+                    emitter.send(SseEmitter.event()
+                            .name("status")
+                            .id(changed.getStatus().name())
+                            .data(changed, MediaType.APPLICATION_JSON));
+                    if (changed.getStatus().isFinished()) {
+                        changed.removeListener(this);
+                        emitter.complete();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // Client went away, stop sending
+                    logger.debug("Stopped streaming job {}: {}", changed.getJobId(), e.getMessage());
+                    changed.removeListener(this);
+                }
+            }
+        };
+        emitter.onCompletion(() -> job.removeListener(listener));
+        emitter.onTimeout(() -> job.removeListener(listener));
+
+        if (!job.getStatus().isFinished()) {
+            // Send the current state right away, later changes arrive through the listener
+            listener.accept(job);
+        }
+        job.addListener(listener);
+        return ResponseEntity.ok(emitter);
+    }
+}
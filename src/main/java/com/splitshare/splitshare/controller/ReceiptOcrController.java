@@ -3,27 +3,49 @@ package com.splitshare.splitshare.controller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.splitshare.splitshare.dto.OcrResult;
+import com.splitshare.splitshare.dto.QualityCheck;
 import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.dto.UploadedImage;
+import com.splitshare.splitshare.service.BatchExtractionService;
 import com.splitshare.splitshare.service.ErrorResponse;
-import com.splitshare.splitshare.service.ImageHandlingService;
-import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+import com.splitshare.splitshare.service.ExecutionModel;
+import com.splitshare.splitshare.service.ImageQualityService;
+import com.splitshare.splitshare.service.ImageType;
+import com.splitshare.splitshare.service.OcrEngineUnavailableException;
+import com.splitshare.splitshare.service.OcrJob;
+import com.splitshare.splitshare.service.OcrJobService;
+import com.splitshare.splitshare.service.ParallelStripOcr;
+import com.splitshare.splitshare.service.ReceiptProcessingService;
+import com.splitshare.splitshare.service.ReceiptResponseBuilder;
 import com.splitshare.splitshare.service.ReceiptStorageService;
+import com.splitshare.splitshare.service.UnreadableImageException;
+import com.splitshare.splitshare.service.UnsupportedImageTypeException;
+import com.splitshare.splitshare.service.UploadIngestService;
+import com.splitshare.splitshare.service.UploadTooLargeException;
 
-import javax.imageio.ImageIO;
-
-
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
@@ -39,21 +61,43 @@ import java.util.*;
 public class ReceiptOcrController {
     // Logger for tracking operations and debugging
     private static final Logger logger = LoggerFactory.getLogger(ReceiptOcrController.class);
+    private static final String INVALID_OCR_MODE = "ocrMode must be one of " + ParallelStripOcr.MODE_AUTO + ", "
+            + ParallelStripOcr.MODE_SINGLE + " or " + ParallelStripOcr.MODE_STRIPS;
     // The OCR engine used to extract text from images
 
     private final ReceiptStorageService storageService;
-    private final ImageHandlingService imageHandlingService;
-    private final ReceiptExtractionHelper extractor;
+    private final ReceiptProcessingService processingService;
+    private final OcrJobService jobService;
+    private final BatchExtractionService batchService;
+    private final ObjectMapper objectMapper;
+    private final long batchTimeoutMillis;
+    private final UploadIngestService ingestService;
+    private final long maxExtractBytes;
+    private final ImageQualityService qualityService;
+    private final ExecutionModel execution;
 
     /**
      * Constructor that injects the OCR engine dependency
      */
     @Autowired
-    public ReceiptOcrController( ReceiptStorageService storageService, ImageHandlingService imageHandlingService, ReceiptExtractionHelper extractor) {
+    public ReceiptOcrController( ReceiptStorageService storageService, ReceiptProcessingService processingService, OcrJobService jobService,
+            BatchExtractionService batchService, ObjectMapper objectMapper,
+            @Value("${ocr.batch.timeout-ms:600000}") long batchTimeoutMillis,
+            UploadIngestService ingestService,
+            @Value("${ocr.extract.max-bytes:10485760}") long maxExtractBytes,
+            ImageQualityService qualityService,
+            ExecutionModel execution) {
 
         this.storageService = storageService;
-        this.imageHandlingService = imageHandlingService;
-        this.extractor = extractor;
+        this.processingService = processingService;
+        this.jobService = jobService;
+        this.batchService = batchService;
+        this.objectMapper = objectMapper;
+        this.batchTimeoutMillis = batchTimeoutMillis;
+        this.ingestService = ingestService;
+        this.maxExtractBytes = maxExtractBytes;
+        this.qualityService = qualityService;
+        this.execution = execution;
     }
     /**
      * API endpoint for extracting data from receipt images.
@@ -64,10 +108,19 @@ public class ReceiptOcrController {
      */
 
     //this is the endpoint for passing the file name of a file that is already on the server
+    //the request runs on the I/O executor and the OCR on the CPU pool, see ExecutionModel
     @PostMapping("/extract-from-server")
-    public ResponseEntity<?> extractReceiptData(
+    public CompletableFuture<ResponseEntity<?>> extractReceiptData(
             @RequestParam("fileName") String fileName,
-            @RequestParam("userId") Long userId) {
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "ocrMode", defaultValue = ParallelStripOcr.MODE_AUTO) String ocrMode) {
+        if (!ParallelStripOcr.isMode(ocrMode)) {
+            return CompletableFuture.completedFuture(invalidOcrMode());
+        }
+        return execution.<ResponseEntity<?>>io(() -> extractFromServer(fileName, userId, ocrMode)).exceptionally(this::serverBusy);
+    }
+
+    private ResponseEntity<?> extractFromServer(String fileName, Long userId, String ocrMode) {
         File file = null;
         try {
             // Load file from the server
@@ -80,34 +133,27 @@ public class ReceiptOcrController {
                         .body(new ErrorResponse("The requested file does not exist on the server."));
             }
 
-            // Convert to image
-            BufferedImage image = ImageIO.read(file);
-            if (image == null) {
+            // OCR & parsing, reusing the cached result if this file was processed before
+            // The file is hashed and decoded straight from disk
+            OcrResult result;
+            try {
+                result = execution.onCpu(() -> processingService.process(filePath, null, ocrMode));
+            } catch (UnreadableImageException e) {
                 logger.error("Failed to read image from saved file");
                 return ResponseEntity.badRequest()
                         .body(new ErrorResponse("Unable to process the saved image."));
             }
-
-            // OCR & parsing logic stays the same
-            String rawText = imageHandlingService.handleImage(file.getAbsolutePath());
-            ReceiptData parsedData = extractor.parseReceiptText(rawText);
-            String receiptId = storageService.storeReceiptText(userId, rawText, parsedData, fileName);
+            ReceiptData parsedData = result.getReceiptData();
+            String receiptId = storageService.storeReceiptText(userId, result.getRawText(), parsedData, fileName);
 
             // Build structured response
-            Map<String, Object> response = new HashMap<>();
-            response.put("receiptId", receiptId);
-            response.put("storeName", parsedData.getStoreName());
-            response.put("date", parsedData.getDate());
-            response.put("total", parsedData.getTotal());
-            response.put("items", parsedData.getItems());
-            response.put("subtotal", parsedData.getSubtotal());
-            response.put("expectedSubtotal", parsedData.expectedSubTotal());
-            response.put("tax", parsedData.getTax());
-            response.put("tip", parsedData.getTip());
-
-
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(ReceiptResponseBuilder.build(receiptId, parsedData));
 
+        } catch (OcrEngineUnavailableException | RejectedExecutionException e) {
+            // All OCR engines or CPU threads are busy, the image itself may be fine
+            logger.warn("OCR capacity exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ErrorResponse("The server is busy processing other receipts. Please try again shortly."));
         } catch (Exception e) {
             // Log the complete stack trace for technical debugging
             logger.error("Error processing receipt image: ", e);
@@ -128,66 +174,95 @@ public class ReceiptOcrController {
 
     
     //this is the rest api for if use uploads file from their device
+    //with async=true the image is queued and a job ID is returned right away
+    //ocrMode=strips OCRs the receipt in strips on several engines at once, single in one pass,
+    //auto (the default) uses strips for long receipts only
+    //the Tomcat thread is released at once: the upload is streamed to disk and stored on the I/O
+    //executor, and only the quality check and OCR wait for a CPU thread
     @PostMapping("/extract")
-    public ResponseEntity<?> extractReceiptData(
+    public CompletableFuture<ResponseEntity<?>> extractReceiptData(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("userId") Long userId) {
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestParam(value = "ocrMode", defaultValue = ParallelStripOcr.MODE_AUTO) String ocrMode) {
+        if (!ParallelStripOcr.isMode(ocrMode)) {
+            return CompletableFuture.completedFuture(invalidOcrMode());
+        }
+        if (file.getSize() > maxExtractBytes) {
+            return CompletableFuture.completedFuture(imageTooLarge());
+        }
+        return execution.<ResponseEntity<?>>io(() -> extractUpload(file, userId, async, ocrMode)).exceptionally(this::serverBusy);
+    }
+
+    private ResponseEntity<?> extractUpload(MultipartFile file, Long userId, boolean async, String ocrMode) {
+        UploadedImage upload = null;
         try {
-            // Check if the uploaded file is actually an image by examining its MIME type
-            // This prevents processing non-image files which would fail in OCR
-            String contentType = file.getContentType();
-            if (contentType == null || !contentType.startsWith("image/")) {
-                logger.warn("Invalid file type uploaded: {}", contentType);
+            // Stream the upload to a scratch file, checking that it really is an image by its
+            // magic bytes and hashing it on the way, so the image is never held in memory
+            try (InputStream input = file.getInputStream()) {
+                upload = ingestService.ingestTemporary(input, maxExtractBytes, ImageType.RECEIPT_TYPES);
+            } catch (UnsupportedImageTypeException e) {
+                logger.warn("Invalid file type uploaded: {}", file.getContentType());
                 return ResponseEntity.badRequest()
-                        .body(new ErrorResponse("Please upload a valid image file"));
+                        .body(new ErrorResponse("Please upload a valid image or PDF file"));
+            } catch (UploadTooLargeException e) {
+                return imageTooLarge();
             }
 
-            // Convert the uploaded file to a BufferedImage for OCR processing
-            // ImageIO.read will return null if the file cannot be read as an image
-            BufferedImage image = ImageIO.read(file.getInputStream());
-            if (image == null) {
+            // With the quality gate on, images that would only produce garbage are turned away
+            // before any OCR time is spent on them
+            QualityCheck quality;
+            Path uploadPath = upload.getPath();
+            try {
+                // PDFs are e-receipts or scans, neither is a photo that could be retaken
+                quality = upload.getType() == ImageType.PDF ? null : execution.onCpu(() -> qualityService.gate(uploadPath));
+            } catch (UnreadableImageException e) {
                 logger.error("Failed to read image from uploaded file");
                 return ResponseEntity.badRequest()
                         .body(new ErrorResponse("Unable to process the uploaded image"));
             }
+            if (quality != null && !quality.isUsable()) {
+                logger.info("Quality gate rejected upload from user {}: {}", userId, quality.getHints());
+                return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                        .body(new ErrorResponse("This photo is unlikely to be readable. " + String.join(" ", quality.getHints())));
+            }
 
+            if (async) {
+                // Queued jobs keep their image in memory until a worker picks them up
+                return submitJob(Files.readAllBytes(upload.getPath()), file.getOriginalFilename(), userId, ocrMode);
+            }
 
-            File tempFile = File.createTempFile("receipt-", ".png");
-            file.transferTo(tempFile);
-            //uses imageHandlingService to call ocrEngine and control how the image is processed
-            String rawText = imageHandlingService.handleImage(tempFile.getAbsolutePath());
-
-            tempFile.delete();
-
+            //uses processingService to run OCR (or reuse a cached result) and parse the text
+            //an UnreadableImageException means the bytes cannot be decoded as an image
+            OcrResult result;
+            try {
+                String contentHash = upload.getContentHash();
+                result = execution.onCpu(() -> processingService.process(uploadPath, contentHash, ocrMode));
+            } catch (UnreadableImageException e) {
+                logger.error("Failed to read image from uploaded file");
+                return ResponseEntity.badRequest()
+                        .body(new ErrorResponse("Unable to process the uploaded image"));
+            }
 
             // This includes store name, date, total, and individual items
-            ReceiptData parsedData = extractor.parseReceiptText(rawText);
+            ReceiptData parsedData = result.getReceiptData();
             // Store the extracted text and receipt data
             String receiptId = storageService.storeReceiptText(
                     userId,
-                    rawText,
+                    result.getRawText(),
                     parsedData,
                     file.getOriginalFilename()
             );
             // Log successful extraction for monitoring and debugging
             logger.info("Successfully extracted and stored receipt data from uploaded image");
-            // Return response with receipt ID and parsed data
-            Map<String, Object> response = new HashMap<>();
-            response.put("receiptId", receiptId);
-            response.put("storeName", parsedData.getStoreName());
-            response.put("date", parsedData.getDate());
-            response.put("total", parsedData.getTotal());
-            response.put("items", parsedData.getItems());
-            //sub total
-            response.put("subtotal", parsedData.getSubtotal());
-            //expected sub total
-            response.put("expectedSubtotal", parsedData.expectedSubTotal());
-            response.put("tax", parsedData.getTax());
-            response.put("tip", parsedData.getTip());
-            
             // Return the structured data to the client with HTTP 200 OK status
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(ReceiptResponseBuilder.build(receiptId, parsedData));
 
+        } catch (OcrEngineUnavailableException | RejectedExecutionException e) {
+            // All OCR engines or CPU threads are busy, the image itself may be fine
+            logger.warn("OCR capacity exhausted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ErrorResponse("The server is busy processing other receipts. Please try again shortly."));
         } catch (Exception e) {
             // Log the complete stack trace for technical debugging
             logger.error("Error processing receipt image: ", e);
@@ -202,37 +277,193 @@ public class ReceiptOcrController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(new ErrorResponse("We couldn't process this receipt image. " +
                             "Please ensure the image is clear and try again, or enter the details manually."));
+        } finally {
+            deleteQuietly(upload);
+        }
+    }
+
+    //scores an image in milliseconds without running OCR, so the app can ask for a retake right away
+    //the upload is streamed on the I/O executor and scored on the CPU pool, like /extract
+    @PostMapping("/quality-check")
+    public CompletableFuture<ResponseEntity<?>> checkQuality(@RequestParam("file") MultipartFile file) {
+        if (file.getSize() > maxExtractBytes) {
+            return CompletableFuture.completedFuture(imageTooLarge());
         }
+        return execution.<ResponseEntity<?>>io(() -> checkUpload(file)).exceptionally(this::serverBusy);
+    }
+
+    private ResponseEntity<?> checkUpload(MultipartFile file) {
+        UploadedImage upload = null;
+        try (InputStream input = file.getInputStream()) {
+            upload = ingestService.ingestTemporary(input, maxExtractBytes, ImageType.OCR_TYPES);
+            Path uploadPath = upload.getPath();
+            return ResponseEntity.ok(execution.onCpu(() -> qualityService.check(uploadPath)));
+        } catch (UnsupportedImageTypeException | UnreadableImageException e) {
+            return ResponseEntity.badRequest()
+                    .body(new ErrorResponse("Please upload a valid image file"));
+        } catch (UploadTooLargeException e) {
+            return imageTooLarge();
+        } catch (RejectedExecutionException e) {
+            logger.warn("CPU pool is full, rejecting quality check");
+            return serverBusy(e);
+        } catch (Exception e) {
+            logger.error("Error checking receipt image quality: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponse("We couldn't check this receipt image. Please try again."));
+        } finally {
+            deleteQuietly(upload);
+        }
+    }
+
+    // Reached when the I/O executor turns the request away, or a read from the store fails
+    private ResponseEntity<?> serverBusy(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (!(cause instanceof RejectedExecutionException)) {
+            logger.error("Error handling receipt request: ", cause);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ErrorResponse("Something went wrong. Please try again."));
+        }
+        logger.warn("Could not start request: {}", cause.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(new ErrorResponse("The server is busy processing other receipts. Please try again shortly."));
+    }
+
+    private ResponseEntity<?> invalidOcrMode() {
+        return ResponseEntity.badRequest()
+                .body(new ErrorResponse(INVALID_OCR_MODE));
+    }
+
+    private ResponseEntity<?> imageTooLarge() {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(new ErrorResponse("Please upload an image smaller than " + maxExtractBytes / (1024 * 1024) + "MB"));
     }
+
+    private void deleteQuietly(UploadedImage upload) {
+        if (upload == null) return;
+        try {
+            Files.deleteIfExists(upload.getPath());
+        } catch (IOException e) {
+            logger.warn("Could not delete scratch upload {}", upload.getPath());
+        }
+    }
+
+    //accepts many receipt images at once and streams one NDJSON line per file as each one finishes
+    //ocrMode applies to every file, as for /extract
+    @PostMapping("/extract-batch")
+    public ResponseEntity<ResponseBodyEmitter> extractReceiptBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "ocrMode", defaultValue = ParallelStripOcr.MODE_AUTO) String ocrMode) {
+        if (!ParallelStripOcr.isMode(ocrMode)) {
+            return batchError(INVALID_OCR_MODE);
+        }
+        if (files.isEmpty()) {
+            return batchError("Please upload at least one receipt image");
+        }
+        if (files.size() > batchService.getMaxFiles()) {
+            return batchError("Please upload at most " + batchService.getMaxFiles() + " receipts at once");
+        }
+
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeoutMillis);
+        batchService.extractAll(userId, files, ocrMode, line -> sendLine(emitter, line), emitter::complete);
+        logger.info("Started batch extraction of {} receipts for user {}", files.size(), userId);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    // The batch endpoint always returns an emitter, so errors are sent as its only body
+    private ResponseEntity<ResponseBodyEmitter> batchError(String message) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        try {
+            emitter.send(new ErrorResponse(message), MediaType.APPLICATION_JSON);
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(emitter);
+    }
+
+    // Writes one result as a single JSON line, results arrive from several worker threads
+    private void sendLine(ResponseBodyEmitter emitter, Map<String, Object> line) {
+        try {
+            String json = objectMapper.writeValueAsString(line) + "\n";
+            synchronized (emitter) {
+                emitter.send(json, MediaType.APPLICATION_NDJSON);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client went away, remaining files still finish and are stored
+            logger.debug("Could not send batch result: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Queues the upload as a background OCR job and returns its ID with 202 Accepted
+     */
+    private ResponseEntity<?> submitJob(byte[] imageBytes, String fileName, Long userId, String ocrMode) {
+        try {
+            OcrJob job = jobService.submit(userId, fileName, imageBytes, ocrMode);
+            Map<String, Object> response = new HashMap<>();
+            response.put("jobId", job.getJobId());
+            response.put("status", job.getStatus());
+            response.put("statusUrl", "/api/receipts/jobs/" + job.getJobId());
+            response.put("eventsUrl", "/api/receipts/jobs/" + job.getJobId() + "/events");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (RejectedExecutionException e) {
+            logger.warn("OCR job queue is full, rejecting upload from user {}", userId);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(new ErrorResponse("The server is busy processing other receipts. Please try again shortly."));
+        }
+    }
+
+    /**
+     * Lists a user's stored receipts, newest first.
+     * Pass the returned nextCursor to get the next page; it is null on the last page.
+     * Reads from the store run on the I/O executor, so they never wait behind OCR.
+     */
+    @GetMapping("/{userId}")
+    public CompletableFuture<ResponseEntity<?>> listReceipts(
+            @PathVariable Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        return execution.<ResponseEntity<?>>io(() -> {
+            try {
+                return ResponseEntity.ok(storageService.listReceipts(userId, cursor, limit));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+            }
+        }).exceptionally(this::serverBusy);
+    }
+
     /**
      * Retrieve a stored receipt by ID
      */
     @GetMapping("/{userId}/{receiptId}")
-    public ResponseEntity<?> getReceipt(
+    public CompletableFuture<ResponseEntity<?>> getReceipt(
             @PathVariable Long userId,
             @PathVariable String receiptId) {
+        return execution.<ResponseEntity<?>>io(() -> {
+            String receiptText = storageService.getReceiptText(userId, receiptId);
 
-        String receiptText = storageService.getReceiptText(userId, receiptId);
-
-        if (receiptText == null) {
-            return ResponseEntity.notFound().build();
-        }
+            if (receiptText == null) {
+                return ResponseEntity.notFound().build();
+            }
 
-        return ResponseEntity.ok(receiptText);
+            return ResponseEntity.ok(receiptText);
+        }).exceptionally(this::serverBusy);
     }
 
     @GetMapping("/receipt-data")
-    public ResponseEntity<?> getReceiptData(
+    public CompletableFuture<ResponseEntity<?>> getReceiptData(
             @RequestParam Long userId,
             @RequestParam String receiptId) {
+        return execution.<ResponseEntity<?>>io(() -> {
+            ReceiptData receiptData = storageService.getReceiptById(userId, receiptId);
 
-        ReceiptData receiptData = storageService.getReceiptById(userId, receiptId);
+            if (receiptData == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            }
 
-        if (receiptData == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
-        }
-        
-        return ResponseEntity.ok(receiptData);
+            return ResponseEntity.ok(receiptData);
+        }).exceptionally(this::serverBusy);
     }
     
 }
\ No newline at end of file
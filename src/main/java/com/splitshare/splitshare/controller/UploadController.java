@@ -1,67 +1,86 @@
 package com.splitshare.splitshare.controller;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.splitshare.splitshare.dto.UploadedImage;
+import com.splitshare.splitshare.service.ImageType;
+import com.splitshare.splitshare.service.UnsupportedImageTypeException;
+import com.splitshare.splitshare.service.UploadIngestService;
+import com.splitshare.splitshare.service.UploadTooLargeException;
+
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.*;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api")
-public class UploadController {private static final List<String> ALLOWED_TYPES = List.of(
-        "image/jpeg", "image/png", "application/pdf"
-);
+public class UploadController {
+    private static final Logger logger = LoggerFactory.getLogger(UploadController.class);
+
+    // Checked against the file's magic bytes, not the Content-Type the client sends
+    private static final Set<ImageType> ALLOWED_TYPES = EnumSet.of(
+            ImageType.JPEG, ImageType.PNG, ImageType.PDF
+    );
     private static final long MAX_SIZE = 5 * 1024 * 1024; // 5MB
+
+    private final UploadIngestService ingestService;
+
+    @Autowired
+    public UploadController(UploadIngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+
     @PostMapping("/upload")
     public ResponseEntity<?> uploadReceipt(@RequestParam("file") MultipartFile file) {
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("error", "No file selected."));
         }
-        if (!ALLOWED_TYPES.contains(file.getContentType())) {
-            return ResponseEntity
-                    .status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
-                    .body(Map.of("error", "Unsupported file format. Please upload a valid image or PDF file."));
-
-        }
+        // Declared size is checked first so obviously oversized files are not read at all,
+        // the limit is enforced again while streaming
         if (file.getSize() > MAX_SIZE) {
-            return ResponseEntity
-                    .status(HttpStatus.PAYLOAD_TOO_LARGE)
-                    .body(Map.of("error", "File too large. Please upload a file smaller than 5MB."));
+            return tooLarge();
         }
-        try {
-            // Create storage directory if it doesn't exist
-            Path storagePath = Paths.get("uploads").toAbsolutePath();
-            Files.createDirectories(storagePath);
-
-            // Generate UUID file name
-            String extension = getExtension(file.getOriginalFilename());
-            String newFileName = UUID.randomUUID().toString() + "." + extension;
-            Path fullPath = storagePath.resolve(newFileName);
-
-            // Save file
-            file.transferTo(fullPath.toFile());
+        // Create storage directory if it doesn't exist
+        Path storagePath = Paths.get("uploads").toAbsolutePath();
+        try (InputStream input = file.getInputStream()) {
+            // Save file under a UUID name, hashing and checking its type while copying
+            UploadedImage upload = ingestService.ingest(input, storagePath, MAX_SIZE, ALLOWED_TYPES);
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Upload successful");
-            response.put("fileName", newFileName);
-            response.put("filePath", fullPath.toString());
+            response.put("fileName", upload.getPath().getFileName().toString());
+            response.put("filePath", upload.getPath().toString());
+            response.put("contentHash", upload.getContentHash());
+            response.put("contentType", upload.getType().getMediaType());
 
             return ResponseEntity.ok(response);
 
+        } catch (UnsupportedImageTypeException e) {
+            return ResponseEntity
+                    .status(HttpStatus.UNSUPPORTED_MEDIA_TYPE)
+                    .body(Map.of("error", "Unsupported file format. Please upload a valid image or PDF file."));
+        } catch (UploadTooLargeException e) {
+            return tooLarge();
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("Upload failed", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Upload failed due to a server error."));
         }
     }
-    private String getExtension(String fileName) {
-        int lastDot = fileName.lastIndexOf('.');
-        return (lastDot == -1) ? "" : fileName.substring(lastDot + 1);
+
+    private ResponseEntity<?> tooLarge() {
+        return ResponseEntity
+                .status(HttpStatus.PAYLOAD_TOO_LARGE)
+                .body(Map.of("error", "File too large. Please upload a file smaller than 5MB."));
     }
 }
@@ -0,0 +1,41 @@
+package com.splitshare.splitshare.dto;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Entry of a receipt's assignment journal: the users assigned to one or more items,
+ * and the receipt version the change produced.
+ */
+public class AssignmentDelta {
+    private long version;
+    private Map<Integer, List<Integer>> assignments = new LinkedHashMap<>();
+
+    public AssignmentDelta() {
+    }
+
+    public AssignmentDelta(long version, Map<Integer, List<Integer>> assignments) {
+        this.version = version;
+        this.assignments = assignments;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    /**
+     * Item index to the users now assigned to that item
+     */
+    public Map<Integer, List<Integer>> getAssignments() {
+        return assignments;
+    }
+
+    public void setAssignments(Map<Integer, List<Integer>> assignments) {
+        this.assignments = assignments;
+    }
+}
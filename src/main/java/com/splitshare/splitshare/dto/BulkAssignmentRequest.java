@@ -0,0 +1,48 @@
+package com.splitshare.splitshare.dto;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Body of a bulk assignment: explicit assignments per item, optionally followed by a rule
+ * that splits every item still unassigned evenly among a group of users.
+ */
+public class BulkAssignmentRequest {
+    private Map<Integer, List<Integer>> assignments = new LinkedHashMap<>();
+    private List<Integer> splitRemainingAmong;
+    private Long expectedVersion;
+
+    /**
+     * Item index to the users assigned to that item
+     */
+    public Map<Integer, List<Integer>> getAssignments() {
+        return assignments;
+    }
+
+    public void setAssignments(Map<Integer, List<Integer>> assignments) {
+        this.assignments = assignments;
+    }
+
+    /**
+     * Users that every item left without users (after the explicit assignments) is split among, or null
+     */
+    public List<Integer> getSplitRemainingAmong() {
+        return splitRemainingAmong;
+    }
+
+    public void setSplitRemainingAmong(List<Integer> splitRemainingAmong) {
+        this.splitRemainingAmong = splitRemainingAmong;
+    }
+
+    /**
+     * Receipt version the client last saw, or null to skip the concurrent change check
+     */
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public void setExpectedVersion(Long expectedVersion) {
+        this.expectedVersion = expectedVersion;
+    }
+}
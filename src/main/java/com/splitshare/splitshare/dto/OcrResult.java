@@ -0,0 +1,48 @@
+package com.splitshare.splitshare.dto;
+
+/**
+ * Result of running a receipt image through OCR and parsing.
+ * Holds the raw OCR text together with the structured data parsed from it.
+ */
+public class OcrResult {
+    private String rawText;
+    private ReceiptData receiptData;
+    private int parserVersion;
+
+    public OcrResult() {
+    }
+
+    public OcrResult(String rawText, ReceiptData receiptData, int parserVersion) {
+        this.rawText = rawText;
+        this.receiptData = receiptData;
+        this.parserVersion = parserVersion;
+    }
+
+    public String getRawText() {
+        return rawText;
+    }
+
+    public void setRawText(String rawText) {
+        this.rawText = rawText;
+    }
+
+    public ReceiptData getReceiptData() {
+        return receiptData;
+    }
+
+    public void setReceiptData(ReceiptData receiptData) {
+        this.receiptData = receiptData;
+    }
+
+    /**
+     * Version of the parser that produced the receipt data.
+     * Cached results from an older parser are parsed again from the raw text.
+     */
+    public int getParserVersion() {
+        return parserVersion;
+    }
+
+    public void setParserVersion(int parserVersion) {
+        this.parserVersion = parserVersion;
+    }
+}
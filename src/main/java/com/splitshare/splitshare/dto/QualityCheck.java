@@ -0,0 +1,68 @@
+package com.splitshare.splitshare.dto;
+
+import java.util.List;
+
+/**
+ * Result of a pre-flight quality check: the measured scores, whether the image is worth running
+ * OCR on, and what to change when retaking the photo.
+ */
+public class QualityCheck {
+    private final double sharpness;
+    private final double contrast;
+    private final double brightness;
+    private final double glare;
+    private final boolean blurry;
+    private final boolean usable;
+    private final List<String> hints;
+    private final long analysisMillis;
+
+    public QualityCheck(double sharpness, double contrast, double brightness, double glare, boolean blurry,
+                        boolean usable, List<String> hints, long analysisMillis) {
+        this.sharpness = sharpness;
+        this.contrast = contrast;
+        this.brightness = brightness;
+        this.glare = glare;
+        this.blurry = blurry;
+        this.usable = usable;
+        this.hints = List.copyOf(hints);
+        this.analysisMillis = analysisMillis;
+    }
+
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    public double getContrast() {
+        return contrast;
+    }
+
+    public double getBrightness() {
+        return brightness;
+    }
+
+    public double getGlare() {
+        return glare;
+    }
+
+    public boolean isBlurry() {
+        return blurry;
+    }
+
+    /**
+     * @return Whether OCR has a fair chance of reading the image
+     */
+    public boolean isUsable() {
+        return usable;
+    }
+
+    /**
+     * @return Retake advice, empty when the image looks fine
+     */
+    public List<String> getHints() {
+        return hints;
+    }
+
+    public long getAnalysisMillis() {
+        return analysisMillis;
+    }
+}
@@ -15,6 +15,9 @@ public class ReceiptData {
     
     private List<ReceiptItem> items;
 
+    // Bumped on every change, clients send it back to detect concurrent edits
+    private long version;
+
     /**
      * Default constructor initializes an empty items list
      */
@@ -78,6 +81,14 @@ public class ReceiptData {
         this.tip = tip; 
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public double expectedSubTotal() {
         double subtotal = 0;
         for (ReceiptItem item : items) {
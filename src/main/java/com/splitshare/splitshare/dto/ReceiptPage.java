@@ -0,0 +1,25 @@
+package com.splitshare.splitshare.dto;
+
+import java.util.List;
+
+/**
+ * One page of a user's receipt list.
+ * nextCursor is passed back to fetch the following page and is null on the last one.
+ */
+public class ReceiptPage {
+    private final List<ReceiptSummary> receipts;
+    private final String nextCursor;
+
+    public ReceiptPage(List<ReceiptSummary> receipts, String nextCursor) {
+        this.receipts = receipts;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<ReceiptSummary> getReceipts() {
+        return receipts;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
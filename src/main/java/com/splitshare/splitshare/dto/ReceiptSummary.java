@@ -0,0 +1,72 @@
+package com.splitshare.splitshare.dto;
+
+import java.util.Date;
+
+/**
+ * Entry of the per-user receipt index, holding what a receipt list needs
+ * without loading the full receipt.
+ */
+public class ReceiptSummary {
+    private String receiptId;
+    private String storeName;
+    private Date date;
+    private double total;
+    private Date createdAt;
+
+    public ReceiptSummary() {
+    }
+
+    public ReceiptSummary(String receiptId, ReceiptData receiptData, Date createdAt) {
+        this.receiptId = receiptId;
+        this.storeName = receiptData.getStoreName();
+        this.date = receiptData.getDate();
+        this.total = receiptData.getTotal();
+        this.createdAt = createdAt;
+    }
+
+    public String getReceiptId() {
+        return receiptId;
+    }
+
+    public void setReceiptId(String receiptId) {
+        this.receiptId = receiptId;
+    }
+
+    public String getStoreName() {
+        return storeName;
+    }
+
+    public void setStoreName(String storeName) {
+        this.storeName = storeName;
+    }
+
+    /**
+     * Date printed on the receipt, if one was found
+     */
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public void setTotal(double total) {
+        this.total = total;
+    }
+
+    /**
+     * When the receipt was stored, the list is ordered newest first by this
+     */
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,41 @@
+package com.splitshare.splitshare.dto;
+
+import java.nio.file.Path;
+
+import com.splitshare.splitshare.service.ImageType;
+
+/**
+ * An upload that has been streamed to disk, with what was learned while copying it.
+ */
+public class UploadedImage {
+    private final Path path;
+    private final String contentHash;
+    private final long size;
+    private final ImageType type;
+
+    public UploadedImage(Path path, String contentHash, long size, ImageType type) {
+        this.path = path;
+        this.contentHash = contentHash;
+        this.size = size;
+        this.type = type;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Hex SHA-256 of the file content
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public ImageType getType() {
+        return type;
+    }
+}
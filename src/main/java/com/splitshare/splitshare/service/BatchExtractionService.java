@@ -0,0 +1,206 @@
+package com.splitshare.splitshare.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.splitshare.splitshare.dto.OcrResult;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Extracts many receipts from one request.
+ * Files are read and stored in parallel on a bounded worker pool, OCR runs on the shared CPU pool
+ * of {@link ExecutionModel}, and each result is reported as soon as it is ready. A semaphore shared
+ * by all batches caps how many images are loaded and decoded at once, so a large batch cannot
+ * exhaust memory. Files that find the worker queue full are reported as busy rather than queued.
+ */
+@Service
+public class BatchExtractionService {
+    private static final Logger logger = LoggerFactory.getLogger(BatchExtractionService.class);
+
+    private static final String SERVER_BUSY = "The server is busy processing other receipts. Please try again shortly.";
+
+    private final ReceiptProcessingService processingService;
+    private final ReceiptStorageService storageService;
+    private final ExecutionModel execution;
+    private final ExecutorService executor;
+    private final Semaphore inFlightImages;
+    private final int maxInFlight;
+    private final int maxFiles;
+
+    /**
+     * @param queueCapacity Files of all batches that may wait for a worker, the rest are reported as busy
+     */
+    @Autowired
+    public BatchExtractionService(ReceiptProcessingService processingService,
+                                  ReceiptStorageService storageService,
+                                  ExecutionModel execution,
+                                  @Value("${ocr.batch.workers:0}") int workers,
+                                  @Value("${ocr.batch.max-in-flight:0}") int maxInFlight,
+                                  @Value("${ocr.batch.max-files:100}") int maxFiles,
+                                  @Value("${ocr.batch.queue-capacity:500}") int queueCapacity) {
+        this.processingService = processingService;
+        this.storageService = storageService;
+        this.execution = execution;
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.maxInFlight = maxInFlight > 0 ? maxInFlight : threads;
+        this.inFlightImages = new Semaphore(this.maxInFlight, true);
+        this.maxFiles = maxFiles;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // Queued tasks only hold a reference to the multipart file, bytes are read once a permit is held
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ocr-batch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getInFlight() {
+        return maxInFlight - inFlightImages.availablePermits();
+    }
+
+    /**
+     * Starts extracting every file in the batch and returns right away.
+     *
+     * @param userId The ID of the user who uploaded the receipts
+     * @param files The uploaded receipt images
+     * @param onResult Called once per file, in completion order, with that file's result or error
+     * @param onComplete Called after the last file has been reported
+     */
+    public void extractAll(Long userId, List<MultipartFile> files,
+                           Consumer<Map<String, Object>> onResult, Runnable onComplete) {
+        extractAll(userId, files, ReceiptProcessingService.DEFAULT_MODE, onResult, onComplete);
+    }
+
+    /**
+     * Same as {@link #extractAll(Long, List, Consumer, Runnable)} with OCR in one of the {@link ParallelStripOcr} modes
+     */
+    public void extractAll(Long userId, List<MultipartFile> files, String ocrMode,
+                           Consumer<Map<String, Object>> onResult, Runnable onComplete) {
+        if (files.isEmpty()) {
+            onComplete.run();
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            int index = i;
+            MultipartFile file = files.get(i);
+            try {
+                executor.execute(() -> report(userId, index, () -> extractOne(userId, index, file, ocrMode),
+                        remaining, onResult, onComplete));
+            } catch (RejectedExecutionException e) {
+                report(userId, index, () -> errorLine(index, file, SERVER_BUSY), remaining, onResult, onComplete);
+            }
+        }
+    }
+
+    private void report(Long userId, int index, Supplier<Map<String, Object>> line, AtomicInteger remaining,
+                        Consumer<Map<String, Object>> onResult, Runnable onComplete) {
+        try {
+            onResult.accept(line.get());
+        } catch (RuntimeException e) {
+            logger.error("Could not report batch result {} for user {}", index, userId, e);
+        } finally {
+            if (remaining.decrementAndGet() == 0) {
+                onComplete.run();
+            }
+        }
+    }
+
+    private static Map<String, Object> errorLine(int index, MultipartFile file, String error) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("fileName", file.getOriginalFilename());
+        line.put("status", "error");
+        line.put("error", error);
+        return line;
+    }
+
+    private Map<String, Object> extractOne(Long userId, int index, MultipartFile file, String ocrMode) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("fileName", file.getOriginalFilename());
+
+        // Checked by magic bytes like /extract, the client's Content-Type is not trusted
+        ImageType type;
+        try (InputStream input = file.getInputStream()) {
+            byte[] header = input.readNBytes(ImageType.HEADER_BYTES);
+            type = ImageType.sniff(header, header.length);
+        } catch (IOException e) {
+            type = null;
+        }
+        if (type == null || !ImageType.RECEIPT_TYPES.contains(type)) {
+            line.put("status", "error");
+            line.put("error", "Please upload a valid image or PDF file");
+            return line;
+        }
+
+        try {
+            inFlightImages.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            line.put("status", "error");
+            line.put("error", "Processing was interrupted");
+            return line;
+        }
+        try {
+            byte[] imageBytes = file.getBytes();
+            OcrResult result = execution.onCpu(() -> processingService.process(imageBytes, ocrMode));
+            String receiptId = storageService.storeReceiptText(
+                    userId, result.getRawText(), result.getReceiptData(), file.getOriginalFilename());
+            line.put("status", "ok");
+            line.put("result", ReceiptResponseBuilder.build(receiptId, result.getReceiptData()));
+        } catch (UnreadableImageException e) {
+            line.put("status", "error");
+            line.put("error", "Unable to process the uploaded image");
+        } catch (OcrEngineUnavailableException | RejectedExecutionException e) {
+            line.put("status", "error");
+            line.put("error", SERVER_BUSY);
+        } catch (Exception e) {
+            logger.error("Error processing batch receipt {}: ", file.getOriginalFilename(), e);
+            storageService.logOcrFailure(userId, file.getOriginalFilename(), e.getMessage());
+            line.put("status", "error");
+            line.put("error", "We couldn't process this receipt image. " +
+                    "Please ensure the image is clear and try again, or enter the details manually.");
+        } finally {
+            inFlightImages.release();
+        }
+        return line;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,195 @@
+package com.splitshare.splitshare.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Where work runs: CPU-bound OCR on a fixed pool with one thread per core, blocking I/O and request
+ * handling on a separate executor, so requests that only read or write storage are never queued
+ * behind Tesseract. /extract, async jobs and batches all run their OCR on the same CPU pool, so
+ * no more than one OCR per core runs at a time however the receipts arrive.
+ *
+ * The I/O executor uses virtual threads when execution.io.mode is virtual, or auto on a runtime
+ * that has them (Java 21+, found by reflection so the code still builds for Java 17). Otherwise it
+ * is a fixed pool of execution.io.threads platform threads. Either way at most execution.io.threads
+ * plus execution.io.queue-capacity requests are taken on at once, later ones are rejected so the
+ * controllers can answer 503 instead of letting requests pile up.
+ */
+@Component
+public class ExecutionModel {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionModel.class);
+
+    public static final String IO_AUTO = "auto";
+    public static final String IO_VIRTUAL = "virtual";
+    public static final String IO_PLATFORM = "platform";
+
+    private final ThreadPoolExecutor cpu;
+    private final ExecutorService io;
+    private final boolean virtualIo;
+    // Caps requests in flight on virtual threads, null for the platform pool whose queue is bounded
+    private final Semaphore virtualIoPermits;
+
+    /**
+     * @param cpuThreads Threads for OCR, or 0 for one per core
+     * @param cpuQueueCapacity OCR tasks that may wait for a thread before new ones are rejected
+     * @param ioMode auto, virtual or platform
+     * @param ioThreads Size of the platform I/O pool, unused with virtual threads
+     * @param ioQueueCapacity Requests that may wait for an I/O thread before new ones are rejected
+     */
+    @Autowired
+    public ExecutionModel(@Value("${execution.cpu.threads:0}") int cpuThreads,
+                          @Value("${execution.cpu.queue-capacity:100}") int cpuQueueCapacity,
+                          @Value("${execution.io.mode:auto}") String ioMode,
+                          @Value("${execution.io.threads:64}") int ioThreads,
+                          @Value("${execution.io.queue-capacity:500}") int ioQueueCapacity) {
+        int threads = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger cpuCount = new AtomicInteger();
+        this.cpu = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, cpuQueueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ocr-cpu-" + cpuCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        ExecutorService virtual = null;
+        if (IO_VIRTUAL.equals(ioMode) || IO_AUTO.equals(ioMode)) {
+            virtual = newVirtualThreadExecutor();
+            if (virtual == null && IO_VIRTUAL.equals(ioMode)) {
+                logger.warn("Virtual threads need Java 21 or later, using {} platform I/O threads", ioThreads);
+            }
+        } else if (!IO_PLATFORM.equals(ioMode)) {
+            throw new IllegalArgumentException("execution.io.mode must be auto, virtual or platform, got " + ioMode);
+        }
+        this.virtualIo = virtual != null;
+        int size = Math.max(1, ioThreads);
+        int queueCapacity = Math.max(1, ioQueueCapacity);
+        if (virtual != null) {
+            this.io = virtual;
+            this.virtualIoPermits = new Semaphore(size + queueCapacity);
+        } else {
+            AtomicInteger ioCount = new AtomicInteger();
+            this.io = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "io-" + ioCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.virtualIoPermits = null;
+        }
+        logger.info("Execution model: {} OCR threads, {} I/O threads", threads, virtualIo ? "virtual" : ioThreads);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor(), or null before Java 21
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs CPU-bound work on the OCR pool
+     *
+     * @return A future that fails with RejectedExecutionException when the OCR queue is full
+     */
+    public <T> CompletableFuture<T> cpu(Callable<T> work) {
+        return submit(cpu, work);
+    }
+
+    /**
+     * Runs blocking I/O or a whole request on the I/O executor
+     *
+     * @return A future that fails with RejectedExecutionException when the I/O executor is full
+     */
+    public <T> CompletableFuture<T> io(Callable<T> work) {
+        if (virtualIoPermits == null) {
+            return submit(io, work);
+        }
+        if (!virtualIoPermits.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many requests in flight"));
+        }
+        return submit(io, () -> {
+            try {
+                return work.call();
+            } finally {
+                virtualIoPermits.release();
+            }
+        });
+    }
+
+    /**
+     * Runs CPU-bound work on the OCR pool and waits for it, for callers already on an I/O thread.
+     * Exceptions thrown by the work are rethrown as they are.
+     *
+     * @throws RejectedExecutionException if the OCR queue is full
+     */
+    public <T> T onCpu(Callable<T> work) throws Exception {
+        try {
+            return cpu(work).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) throw (Exception) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw e;
+        }
+    }
+
+    private static <T> CompletableFuture<T> submit(ExecutorService executor, Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(work.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    public boolean isVirtualIo() {
+        return virtualIo;
+    }
+
+    public int getCpuThreads() {
+        return cpu.getCorePoolSize();
+    }
+
+    public int getCpuActive() {
+        return cpu.getActiveCount();
+    }
+
+    public int getCpuQueued() {
+        return cpu.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cpu.shutdownNow();
+        io.shutdownNow();
+    }
+}
@@ -0,0 +1,116 @@
+package com.splitshare.splitshare.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Original storage layout: a directory per user under receipt.storage.path holding
+ * {receiptId}.txt, {receiptId}.json, {receiptId}.deltas (one delta per line) and ocr_failure_*.log files.
+ * Simple to inspect by hand, but costs two inodes per receipt.
+ */
+@Component
+@ConditionalOnProperty(name = "receipt.storage.engine", havingValue = "file", matchIfMissing = true)
+public class FileReceiptStore implements ReceiptStore {
+
+    private final Path basePath;
+
+    @Autowired
+    public FileReceiptStore(@Value("${receipt.storage.path:/tmp/receipts}") String storageBasePath) {
+        this.basePath = Paths.get(storageBasePath);
+    }
+
+    @Override
+    public void writeText(Long userId, String receiptId, String text) throws IOException {
+        Files.writeString(userDir(userId).resolve(receiptId + ".txt"), text);
+    }
+
+    @Override
+    public String readText(Long userId, String receiptId) throws IOException {
+        Path receiptFile = basePath.resolve(userId.toString()).resolve(receiptId + ".txt");
+        return Files.exists(receiptFile) ? new String(Files.readAllBytes(receiptFile), StandardCharsets.UTF_8) : null;
+    }
+
+    @Override
+    public void writeData(Long userId, String receiptId, byte[] json) throws IOException {
+        Path target = userDir(userId).resolve(receiptId + ".json");
+        // Write then rename so readers never see a half written receipt
+        Path temp = Files.createTempFile(target.getParent(), receiptId, ".tmp");
+        Files.write(temp, json);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public byte[] readData(Long userId, String receiptId) throws IOException {
+        Path jsonFile = basePath.resolve(userId.toString()).resolve(receiptId + ".json");
+        return Files.exists(jsonFile) ? Files.readAllBytes(jsonFile) : null;
+    }
+
+    @Override
+    public boolean hasData(Long userId, String receiptId) {
+        return Files.exists(basePath.resolve(userId.toString()).resolve(receiptId + ".json"));
+    }
+
+    @Override
+    public void appendDelta(Long userId, String receiptId, byte[] delta) throws IOException {
+        byte[] line = Arrays.copyOf(delta, delta.length + 1);
+        line[delta.length] = '\n';
+        Files.write(userDir(userId).resolve(receiptId + ".deltas"), line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public List<byte[]> readDeltas(Long userId, String receiptId) throws IOException {
+        List<byte[]> deltas = new ArrayList<>();
+        Path deltaFile = basePath.resolve(userId.toString()).resolve(receiptId + ".deltas");
+        if (!Files.exists(deltaFile)) return deltas;
+        for (String line : Files.readAllLines(deltaFile, StandardCharsets.UTF_8)) {
+            if (!line.isEmpty()) deltas.add(line.getBytes(StandardCharsets.UTF_8));
+        }
+        return deltas;
+    }
+
+    @Override
+    public void clearDeltas(Long userId, String receiptId) throws IOException {
+        Files.deleteIfExists(basePath.resolve(userId.toString()).resolve(receiptId + ".deltas"));
+    }
+
+    @Override
+    public void writeFailureLog(Long userId, String name, String text) throws IOException {
+        Files.writeString(userDir(userId).resolve(name + ".log"), text);
+    }
+
+    @Override
+    public Map<String, Long> listReceipts(Long userId) throws IOException {
+        Map<String, Long> receipts = new HashMap<>();
+        Path userDir = basePath.resolve(userId.toString());
+        if (!Files.isDirectory(userDir)) return receipts;
+        try (Stream<Path> files = Files.list(userDir)) {
+            files.filter(path -> path.getFileName().toString().endsWith(".json"))
+                    .forEach(path -> {
+                        String name = path.getFileName().toString();
+                        receipts.put(name.substring(0, name.length() - ".json".length()), path.toFile().lastModified());
+                    });
+        }
+        return receipts;
+    }
+
+    // Creates the user directory if it doesn't exist
+    private Path userDir(Long userId) throws IOException {
+        return Files.createDirectories(basePath.resolve(userId.toString()));
+    }
+}
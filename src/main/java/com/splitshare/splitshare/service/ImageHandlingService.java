@@ -1,33 +1,174 @@
 package com.splitshare.splitshare.service;
 
+import java.io.File;
+import java.util.concurrent.Callable;
 
-import java.awt.image.BufferedImage;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 
 @Service
 public class ImageHandlingService {
-    private final OcrEngine ocrEngine;
-  
-    public ImageHandlingService() {
-        this.ocrEngine = new OcrEngine();
+    private static final Logger logger = LoggerFactory.getLogger(ImageHandlingService.class);
+    // Bump when preprocessing or OCR settings change, so cached OCR text is not reused
+    public static final int PIPELINE_VERSION = 7;
+
+    public static final String MODE_MINIMAL = "minimal";
+    public static final String MODE_INCREASED = "increased";
+
+    private final OcrMetrics metrics;
+    private final NativeMemoryBudget memoryBudget;
+    private final ReceiptRegionDetector regionDetector;
+    private final ResolutionNormalizer resolutionNormalizer;
+    private final ParallelStripOcr stripOcr;
+    private final OcrTierPolicy tiers;
+
+    @Autowired
+    public ImageHandlingService(OcrMetrics metrics, NativeMemoryBudget memoryBudget,
+                                ReceiptRegionDetector regionDetector, ResolutionNormalizer resolutionNormalizer,
+                                ParallelStripOcr stripOcr, OcrTierPolicy tiers) {
+        this.metrics = metrics;
+        this.memoryBudget = memoryBudget;
+        this.regionDetector = regionDetector;
+        this.resolutionNormalizer = resolutionNormalizer;
+        this.stripOcr = stripOcr;
+        this.tiers = tiers;
     }
 
     public String handleImage(String imagePath) throws Exception {
-        // Check if blurry
-        boolean blurry = ImageQualityChecker.isBlurry(imagePath);
+        return handleImage(imagePath, ParallelStripOcr.MODE_AUTO);
+    }
+
+    /**
+     * @param ocrMode One of the {@link ParallelStripOcr} modes, whether OCR runs in strips or a single pass
+     */
+    public String handleImage(String imagePath, String ocrMode) throws Exception {
+        try (NativeMemoryBudget.Reservation reservation = memoryBudget.reserve(
+                     NativeMemoryBudget.estimateBytes(new File(imagePath)));
+             PointerScope scope = new PointerScope();
+             ImagePipelineContext context = metrics.time(OcrMetrics.DECODE, OcrMetrics.NO_MODE,
+                     () -> ImagePipelineContext.read(imagePath))) {
+            return handleImage(context, ocrMode);
+        }
+    }
+
+    public String handleImage(byte[] imageBytes) throws Exception {
+        return handleImage(imageBytes, ParallelStripOcr.MODE_AUTO);
+    }
+
+    // The budget is reserved from the header dimensions before any pixels are decoded,
+    // and everything allocated natively for this image is released when the scope closes
+    public String handleImage(byte[] imageBytes, String ocrMode) throws Exception {
+        try (NativeMemoryBudget.Reservation reservation = memoryBudget.reserve(
+                     NativeMemoryBudget.estimateBytes(imageBytes));
+             PointerScope scope = new PointerScope();
+             ImagePipelineContext context = metrics.time(OcrMetrics.DECODE, OcrMetrics.NO_MODE,
+                     () -> ImagePipelineContext.decode(imageBytes))) {
+            return handleImage(context, ocrMode);
+        }
+    }
+
+    //every stage works on the image decoded once in the context
+    //and runs in its own pointer scope, so its temporaries are freed as soon as it ends
+    public String handleImage(ImagePipelineContext context) throws Exception {
+        return handleImage(context, ParallelStripOcr.MODE_AUTO);
+    }
+
+    public String handleImage(ImagePipelineContext context, String ocrMode) throws Exception {
+        return handleImage(context, ocrMode, true);
+    }
+
+    /**
+     * @param tiered Whether the image may go through the OCR tiers of {@link OcrTierPolicy} when they are
+     *               enabled. Callers pass false for images that are only part of a receipt, whose totals
+     *               cannot add up on their own
+     */
+    public String handleImage(ImagePipelineContext context, String ocrMode, boolean tiered) throws Exception {
+        // Crop to the receipt paper first, so no later stage works on the background
+        // The context's grayscale image is created outside the stage scope, it belongs to the context
+        Mat frame = context.getGray();
+        Mat gray;
+        try (PointerScope stage = new PointerScope()) {
+            gray = metrics.time(OcrMetrics.REGION, OcrMetrics.NO_MODE, () -> regionDetector.crop(frame));
+            gray.retainReference();
+            metrics.countRegion(ReceiptRegionDetector.isCropped(frame, gray));
+        }
+        try {
+            return handleRegion(gray, ocrMode, tiered && tiers.isEnabled());
+        } finally {
+            gray.close();
+        }
+    }
+
+    private String handleRegion(Mat gray, String ocrMode, boolean tiered) throws Exception {
+        // Check if blurry, the same pass measures the contrast preprocessing needs
+        QualityReport quality;
+        try (PointerScope stage = new PointerScope()) {
+            quality = metrics.time(OcrMetrics.BLUR_CHECK, OcrMetrics.NO_MODE, () -> ImageQualityChecker.analyze(gray));
+        }
+        boolean blurry = quality.isBlurry();
+        double contrast = quality.getContrast();
+
+        // Measure the text, so it reaches Tesseract at the size it reads best
+        ResolutionNormalizer.Decision scale;
+        try (PointerScope stage = new PointerScope()) {
+            scale = metrics.time(OcrMetrics.SCALE, OcrMetrics.NO_MODE, () -> resolutionNormalizer.decide(gray));
+        }
+        metrics.recordScale(scale.getFactor(), scale.getTextHeight());
+        double factor = scale.getFactor();
 
         //Preprocess accordingly
-        BufferedImage preprocessed;
-        if (blurry) {
-            System.out.println("Image is blurry, using increased preprocessing.");
-            preprocessed = Preprocesing.preprocessIncreased(imagePath);
-        } else {
-            System.out.println("Image is not blurry, using minimal preprocessing.");
-            preprocessed = Preprocesing.preprocessMinimal(imagePath);
+        String mode = blurry ? MODE_INCREASED : MODE_MINIMAL;
+        logger.debug("Image is {}, using {} preprocessing.", blurry ? "blurry" : "not blurry", mode);
+        if (!tiered) {
+            return ocr(gray, mode, factor, contrast, ocrMode, false);
         }
 
-        return ocrEngine.extractTextFromImage(preprocessed);
+        // Cheapest tier first, escalating while the parsed totals do not add up.
+        // Blurry images skip FAST, minimal preprocessing would only waste a pass on them
+        if (!blurry) {
+            String text = runTier(OcrTierPolicy.TIER_FAST, false,
+                    () -> ocr(gray, MODE_MINIMAL, factor * tiers.getFastScale(), contrast, ocrMode, true));
+            if (text != null) return text;
+        }
+        String text = runTier(OcrTierPolicy.TIER_STANDARD, false,
+                () -> ocr(gray, mode, factor, contrast, ocrMode, false));
+        if (text != null) return text;
+        return runTier(OcrTierPolicy.TIER_INTENSIVE, true,
+                () -> ocr(gray, MODE_INCREASED, factor * tiers.getIntensiveScale(), contrast, ocrMode, false));
+    }
+
+    // Runs one tier and returns its text if validation accepts it, otherwise null.
+    // The last tier's text is returned either way, nothing heavier is left to try
+    private String runTier(String tier, boolean last, Callable<String> ocr) throws Exception {
+        return metrics.time(OcrMetrics.TIER, tier, () -> {
+            String text = ocr.call();
+            return tiers.accept(tier, text) || last ? text : null;
+        });
+    }
+
+    private String ocr(Mat gray, String mode, double factor, double contrast, String ocrMode, boolean fast) throws Exception {
+        metrics.countMode(mode);
+        Mat preprocessed;
+        try (PointerScope stage = new PointerScope()) {
+            preprocessed = metrics.time(OcrMetrics.PREPROCESS, mode, () -> MODE_INCREASED.equals(mode)
+                    ? Preprocesing.preprocessIncreased(gray, factor, contrast)
+                    : Preprocesing.preprocessMinimal(gray, factor));
+            // Outlives the stage scope, released below once OCR is done
+            preprocessed.retainReference();
+        }
+
+        try (PointerScope stage = new PointerScope()) {
+            // Tesseract reads the preprocessed pixels straight from native memory,
+            // long receipts in strips on several engines at once
+            return metrics.time(OcrMetrics.OCR, mode, () -> stripOcr.extractText(preprocessed, ocrMode, fast));
+        } finally {
+            preprocessed.close();
+        }
     }
 }
@@ -0,0 +1,105 @@
+package com.splitshare.splitshare.service;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+/**
+ * Holds a receipt image that has been decoded exactly once.
+ * The same native Mat is shared by blur scoring, preprocessing and OCR so no stage
+ * needs to read or decode the image again. The grayscale version is created lazily
+ * and also shared, since every stage works on grayscale.
+ */
+public class ImagePipelineContext implements AutoCloseable {
+    private final Mat color;
+    private Mat gray;
+
+    private ImagePipelineContext(Mat color) {
+        this.color = color;
+    }
+
+    private ImagePipelineContext(Mat color, Mat gray) {
+        this.color = color;
+        this.gray = gray;
+    }
+
+    /**
+     * Wraps an image that is already grayscale, such as a rendered PDF page.
+     * The same Mat serves as the color image, the context takes ownership of it.
+     */
+    public static ImagePipelineContext ofGray(Mat gray) {
+        return new ImagePipelineContext(gray, gray);
+    }
+
+    /**
+     * Decodes encoded image bytes (PNG, JPEG, ...) in memory.
+     *
+     * @param imageBytes The raw bytes of the uploaded file
+     * @return A context holding the decoded image
+     * @throws UnreadableImageException if the bytes are not a readable image
+     */
+    public static ImagePipelineContext decode(byte[] imageBytes) {
+        if (imageBytes == null || imageBytes.length == 0) {
+            throw new UnreadableImageException("Could not decode image: no data");
+        }
+        Mat decoded;
+        try (BytePointer data = new BytePointer(imageBytes);
+             Mat encoded = new Mat(1, imageBytes.length, opencv_core.CV_8UC1, data)) {
+            decoded = opencv_imgcodecs.imdecode(encoded, opencv_imgcodecs.IMREAD_COLOR);
+        }
+        if (decoded == null || decoded.empty()) {
+            throw new UnreadableImageException("Could not decode image");
+        }
+        return new ImagePipelineContext(decoded);
+    }
+
+    /**
+     * Reads and decodes an image file that is already on disk.
+     *
+     * @throws UnreadableImageException if the file is missing or not a readable image
+     */
+    public static ImagePipelineContext read(String imagePath) {
+        Mat image = opencv_imgcodecs.imread(imagePath, opencv_imgcodecs.IMREAD_COLOR);
+        if (image.empty()) {
+            image.close();
+            throw new UnreadableImageException("Could not read image: " + imagePath);
+        }
+        return new ImagePipelineContext(image);
+    }
+
+    public Mat getColor() {
+        return color;
+    }
+
+    /**
+     * The grayscale image, converted on first use. It is owned by the context and stays valid until
+     * the context is closed, even when first asked for inside a stage's PointerScope.
+     */
+    public Mat getGray() {
+        if (gray == null) {
+            gray = new Mat();
+            // Outlives any scope open right now, released in close()
+            gray.retainReference();
+            opencv_imgproc.cvtColor(color, gray, opencv_imgproc.COLOR_BGR2GRAY);
+        }
+        return gray;
+    }
+
+    public int getWidth() {
+        return color.cols();
+    }
+
+    public int getHeight() {
+        return color.rows();
+    }
+
+    @Override
+    public void close() {
+        if (gray != null && gray != color) {
+            gray.close();
+        }
+        color.close();
+    }
+}
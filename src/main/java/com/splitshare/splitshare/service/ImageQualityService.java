@@ -0,0 +1,108 @@
+package com.splitshare.splitshare.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.splitshare.splitshare.dto.QualityCheck;
+
+/**
+ * Pre-flight quality check that tells a user to retake a photo before any OCR time is spent on it.
+ *
+ * The image is decoded straight to grayscale at full resolution and measured with
+ * {@link ImageQualityChecker#analyze}. It is not decoded at a reduced size: the decoders' reduction
+ * keeps far more pixel-level detail than pyrDown, so blur would be judged on a different scale than
+ * in the OCR pipeline.
+ */
+@Service
+public class ImageQualityService {
+    private static final Logger logger = LoggerFactory.getLogger(ImageQualityService.class);
+
+    // Above this share of blown out pixels the white is the background of a scan or a digital
+    // receipt rather than glare on paper
+    private static final double BACKGROUND_GLARE = 0.5;
+
+    private final OcrMetrics metrics;
+    private final boolean gateEnabled;
+    private final double minBrightness;
+    private final double maxGlare;
+
+    /**
+     * @param gateEnabled Whether /extract turns away unusable images before OCR
+     * @param minBrightness Mean gray level under which an image is too dark to read
+     * @param maxGlare Share of blown out pixels above which the user is told to avoid glare
+     */
+    @Autowired
+    public ImageQualityService(OcrMetrics metrics,
+                               @Value("${ocr.quality.gate-enabled:false}") boolean gateEnabled,
+                               @Value("${ocr.quality.min-brightness:60}") double minBrightness,
+                               @Value("${ocr.quality.max-glare:0.05}") double maxGlare) {
+        this.metrics = metrics;
+        this.gateEnabled = gateEnabled;
+        this.minBrightness = minBrightness;
+        this.maxGlare = maxGlare;
+    }
+
+    public boolean isGateEnabled() {
+        return gateEnabled;
+    }
+
+    /**
+     * Scores an image file and decides whether it is worth running OCR on
+     *
+     * @throws UnreadableImageException if the file is not a readable image
+     */
+    public QualityCheck check(Path imageFile) throws Exception {
+        long start = System.nanoTime();
+        QualityReport report = metrics.time(OcrMetrics.QUALITY_CHECK, OcrMetrics.NO_MODE, () -> analyze(imageFile));
+
+        List<String> hints = new ArrayList<>();
+        boolean tooDark = report.getBrightness() < minBrightness;
+        if (report.isBlurry()) {
+            hints.add("The photo is blurry. Hold the phone steady and tap the receipt to focus before taking it.");
+        }
+        if (tooDark) {
+            hints.add("The photo is too dark. Move somewhere brighter or turn on the flash.");
+        }
+        if (report.getGlare() > maxGlare && report.getGlare() < BACKGROUND_GLARE) {
+            hints.add("Part of the receipt is washed out by glare. Tilt the phone or move away from direct light.");
+        }
+        // Glare only hides part of the receipt, so it is worth a hint but not a rejection
+        boolean usable = !report.isBlurry() && !tooDark;
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        logger.debug("Quality check of {}: {} usable={} in {} ms", imageFile.getFileName(), report, usable, millis);
+        return new QualityCheck(report.getSharpness(), report.getContrast(), report.getBrightness(), report.getGlare(),
+                report.isBlurry(), usable, hints, millis);
+    }
+
+    /**
+     * Runs the check for the /extract gate and counts the outcome
+     *
+     * @return The check, or null if the gate is disabled
+     */
+    public QualityCheck gate(Path imageFile) throws Exception {
+        if (!gateEnabled) return null;
+        QualityCheck check = check(imageFile);
+        metrics.countQualityGate(check.isUsable());
+        return check;
+    }
+
+    private static QualityReport analyze(Path imageFile) {
+        try (PointerScope scope = new PointerScope()) {
+            Mat gray = opencv_imgcodecs.imread(imageFile.toString(), opencv_imgcodecs.IMREAD_GRAYSCALE);
+            if (gray.empty()) {
+                throw new UnreadableImageException("Could not read image: " + imageFile.getFileName());
+            }
+            return ImageQualityChecker.analyze(gray);
+        }
+    }
+}
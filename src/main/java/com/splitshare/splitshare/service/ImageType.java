@@ -0,0 +1,82 @@
+package com.splitshare.splitshare.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * File types recognised from their leading magic bytes.
+ * Used instead of the client supplied Content-Type, which is easy to get wrong or fake.
+ */
+public enum ImageType {
+    JPEG("jpg", "image/jpeg"),
+    PNG("png", "image/png"),
+    BMP("bmp", "image/bmp"),
+    TIFF("tif", "image/tiff"),
+    WEBP("webp", "image/webp"),
+    PDF("pdf", "application/pdf");
+
+    // Enough leading bytes to tell every type apart (WebP needs 12)
+    public static final int HEADER_BYTES = 12;
+
+    // Types the OCR pipeline can decode
+    public static final Set<ImageType> OCR_TYPES = EnumSet.of(JPEG, PNG, BMP, TIFF, WEBP);
+    // Types receipts can be extracted from, PDFs are read by PdfReceiptService
+    public static final Set<ImageType> RECEIPT_TYPES = EnumSet.of(JPEG, PNG, BMP, TIFF, WEBP, PDF);
+
+    private final String extension;
+    private final String mediaType;
+
+    ImageType(String extension, String mediaType) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Detects the type from the start of a file.
+     *
+     * @param header The first bytes of the file
+     * @param length How many bytes of the header are valid
+     * @return The detected type, or null if it is not a supported format
+     */
+    public static ImageType sniff(byte[] header, int length) {
+        if (startsWith(header, length, 0xFF, 0xD8, 0xFF)) return JPEG;
+        if (startsWith(header, length, 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A)) return PNG;
+        if (startsWith(header, length, '%', 'P', 'D', 'F', '-')) return PDF;
+        if (startsWith(header, length, 'B', 'M')) return BMP;
+        if (startsWith(header, length, 'I', 'I', 0x2A, 0x00) || startsWith(header, length, 'M', 'M', 0x00, 0x2A)) return TIFF;
+        if (startsWith(header, length, 'R', 'I', 'F', 'F') && length >= 12
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') return WEBP;
+        return null;
+    }
+
+    public static ImageType sniff(byte[] bytes) {
+        return sniff(bytes, bytes.length);
+    }
+
+    public static ImageType sniff(Path file) throws IOException {
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] header = input.readNBytes(HEADER_BYTES);
+            return sniff(header, header.length);
+        }
+    }
+
+    private static boolean startsWith(byte[] header, int length, int... magic) {
+        if (length < magic.length) return false;
+        for (int i = 0; i < magic.length; i++) {
+            if ((header[i] & 0xFF) != magic[i]) return false;
+        }
+        return true;
+    }
+}
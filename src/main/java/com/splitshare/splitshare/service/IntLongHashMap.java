@@ -0,0 +1,125 @@
+package com.splitshare.splitshare.service;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from int keys to long values, used by the split engine to sum cents
+ * per user without boxing. Entries are kept in dense arrays in insertion order, so iteration
+ * by index is deterministic. Entries cannot be removed. Not thread safe.
+ */
+public final class IntLongHashMap {
+    // Index + 1 of the entry in keys/values, 0 marks an empty slot
+    private int[] slots;
+    private int[] keys;
+    private long[] values;
+    private int size;
+
+    public IntLongHashMap() {
+        this(8);
+    }
+
+    public IntLongHashMap(int expectedSize) {
+        int entries = Math.max(4, expectedSize);
+        this.slots = new int[Integer.highestOneBit(entries * 2 - 1) << 1];
+        this.keys = new int[entries];
+        this.values = new long[entries];
+    }
+
+    /**
+     * @return The value for the key, or 0 if it is absent
+     */
+    public long get(int key) {
+        int index = indexOf(key);
+        return index < 0 ? 0 : values[index];
+    }
+
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    public void put(int key, long value) {
+        // insert() may grow the arrays, so look up the index before touching values
+        int index = insert(key);
+        values[index] = value;
+    }
+
+    /**
+     * Adds delta to the key's value, starting from 0 for a new key
+     */
+    public void addTo(int key, long delta) {
+        int index = insert(key);
+        values[index] += delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Position in insertion order, from 0 to size() - 1
+     */
+    public int keyAt(int index) {
+        return keys[index];
+    }
+
+    public long valueAt(int index) {
+        return values[index];
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    private int indexOf(int key) {
+        int mask = slots.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) return -1;
+            if (keys[entry - 1] == key) return entry - 1;
+        }
+    }
+
+    private int insert(int key) {
+        int mask = slots.length - 1;
+        int slot = mix(key) & mask;
+        for (int entry = slots[slot]; entry != 0; entry = slots[slot]) {
+            if (keys[entry - 1] == key) return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        keys[size] = key;
+        values[size] = 0;
+        slots[slot] = ++size;
+        // Keep the table at most half full so probe sequences stay short
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return size - 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = mix(keys[i]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i + 1;
+        }
+        slots = table;
+    }
+
+    // User IDs are small and sequential, spread them over the table
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
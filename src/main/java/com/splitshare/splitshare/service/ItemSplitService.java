@@ -1,39 +1,174 @@
 package com.splitshare.splitshare.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.springframework.stereotype.Service;
 
+import com.splitshare.splitshare.dto.BulkAssignmentRequest;
 import com.splitshare.splitshare.dto.ReceiptData;
 import com.splitshare.splitshare.dto.ReceiptItem;
 
+/**
+ * Splits receipts between the users assigned to each item.
+ * Amounts are computed in whole cents: each item's cents are shared out so the shares add up
+ * to exactly the item total, and tax and tip are allocated in proportion to each user's items
+ * by the largest remainder method, so the users' totals add up to exactly the receipt's.
+ */
 @Service
 public class ItemSplitService {
+    // Items without assigned users are charged to the uploader
+    private static final int DEFAULT_USER = 1;
+
     public Map<Integer, Double> calculateUserOwedAmounts(ReceiptData receipt) {
-        Map<Integer, Double> userOwedMap = new HashMap<>();
+        return calculateUserOwedAmounts(receipt, false);
+    }
 
-        for (ReceiptItem item : receipt.getItems()) {
+    /**
+     * @param includeTaxAndTip Also share the receipt's tax and tip in proportion to each user's items
+     * @return User ID to the amount owed in dollars
+     */
+    public Map<Integer, Double> calculateUserOwedAmounts(ReceiptData receipt, boolean includeTaxAndTip) {
+        IntLongHashMap owedCents = calculateUserOwedCents(receipt, includeTaxAndTip);
+        Map<Integer, Double> userOwedMap = new HashMap<>(owedCents.size() * 2);
+        for (int i = 0; i < owedCents.size(); i++) {
+            userOwedMap.put(owedCents.keyAt(i), owedCents.valueAt(i) / 100.0);
+        }
+        return userOwedMap;
+    }
+
+    /**
+     * Splits the receipt in cents.
+     * A user listed twice on an item gets two shares of it. Leftover cents of an item go one each
+     * to its first shares, starting at a position that rotates with the item index so the same
+     * user does not collect every leftover cent.
+     *
+     * @return User ID to cents owed, in the order users first appear on the receipt
+     */
+    public IntLongHashMap calculateUserOwedCents(ReceiptData receipt, boolean includeTaxAndTip) {
+        List<ReceiptItem> items = receipt.getItems();
+        IntLongHashMap owed = new IntLongHashMap();
+
+        for (int itemIndex = 0; itemIndex < items.size(); itemIndex++) {
+            ReceiptItem item = items.get(itemIndex);
+            long itemCents = toCents(item.getPrice()) * item.getQuantity();
             List<Integer> assignedUsers = item.getAssignedUser();
-            double itemTotal = item.getPrice() * item.getQuantity();
 
             if (assignedUsers == null || assignedUsers.isEmpty()) {
-                assignedUsers = List.of(1);
+                owed.addTo(DEFAULT_USER, itemCents);
+                continue;
             }
 
-            int numUsers = assignedUsers.size();
-            double splitAmount = itemTotal / numUsers;
-
-            for (Integer userId : assignedUsers) {
-                double previous = userOwedMap.getOrDefault(userId, 0.0);
-                userOwedMap.put(userId, previous + splitAmount);
+            int shares = assignedUsers.size();
+            long base = Math.floorDiv(itemCents, shares);
+            int leftover = (int) Math.floorMod(itemCents, shares);
+            int first = itemIndex % shares;
+            for (int share = 0; share < shares; share++) {
+                // Position of this share counted from the rotating start
+                int position = share >= first ? share - first : share - first + shares;
+                owed.addTo(assignedUsers.get(share), position < leftover ? base + 1 : base);
             }
         }
 
-        // Round all values to 2 decimal places before returning
-        userOwedMap.replaceAll((k, v) -> Math.round(v * 100.0) / 100.0);
+        if (includeTaxAndTip) {
+            allocateProportionally(owed, toCents(receipt.getTax()) + toCents(receipt.getTip()));
+        }
+        return owed;
+    }
 
-        return userOwedMap;
+    /**
+     * Adds amount to the users in proportion to what they already owe, using the largest
+     * remainder method so exactly amount cents are handed out.
+     * Ties go to the user who appears first on the receipt.
+     */
+    private static void allocateProportionally(IntLongHashMap owed, long amount) {
+        if (amount == 0) return;
+        int users = owed.size();
+        if (users == 0) {
+            owed.addTo(DEFAULT_USER, amount);
+            return;
+        }
+
+        long total = owed.sum();
+        long[] weights = new long[users];
+        for (int i = 0; i < users; i++) {
+            weights[i] = total < 0 ? -owed.valueAt(i) : owed.valueAt(i);
+        }
+        total = Math.abs(total);
+        if (total == 0) {
+            // Nothing to weigh by, share evenly
+            Arrays.fill(weights, 1);
+            total = users;
+        }
+
+        long[] shares = new long[users];
+        long[] remainders = new long[users];
+        long handedOut = 0;
+        for (int i = 0; i < users; i++) {
+            long product = Math.multiplyExact(amount, weights[i]);
+            shares[i] = Math.floorDiv(product, total);
+            remainders[i] = Math.floorMod(product, total);
+            handedOut += shares[i];
+        }
+
+        // The floors leave fewer cents than there are users, hand them to the largest remainders
+        long leftover = amount - handedOut;
+        Integer[] order = new Integer[users];
+        for (int i = 0; i < users; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> remainders[a] != remainders[b] ? Long.compare(remainders[b], remainders[a]) : Integer.compare(a, b));
+        for (int i = 0; i < leftover; i++) {
+            shares[order[i]]++;
+        }
+
+        for (int i = 0; i < users; i++) {
+            owed.addTo(owed.keyAt(i), shares[i]);
+        }
+    }
+
+    static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    /**
+     * Turns a bulk request into the final item assignments to write: the explicit assignments,
+     * plus every item that is left without users split among splitRemainingAmong.
+     *
+     * @throws IllegalArgumentException if an item index is out of range or the request assigns nothing
+     */
+    public Map<Integer, List<Integer>> resolveAssignments(ReceiptData receipt, BulkAssignmentRequest request) {
+        List<ReceiptItem> items = receipt.getItems();
+        Map<Integer, List<Integer>> resolved = new LinkedHashMap<>();
+        if (request.getAssignments() != null) {
+            request.getAssignments().forEach((itemIndex, userIds) -> {
+                if (itemIndex == null || itemIndex < 0 || itemIndex >= items.size()) {
+                    throw new IllegalArgumentException("Invalid item index " + itemIndex);
+                }
+                resolved.put(itemIndex, userIds == null ? new ArrayList<>() : new ArrayList<>(userIds));
+            });
+        }
+
+        List<Integer> splitAmong = request.getSplitRemainingAmong();
+        if (splitAmong != null) {
+            if (splitAmong.isEmpty()) {
+                throw new IllegalArgumentException("splitRemainingAmong needs at least one user");
+            }
+            for (int i = 0; i < items.size(); i++) {
+                List<Integer> assigned = resolved.containsKey(i) ? resolved.get(i) : items.get(i).getAssignedUser();
+                if (assigned == null || assigned.isEmpty()) {
+                    resolved.put(i, new ArrayList<>(splitAmong));
+                }
+            }
+        }
+
+        if (resolved.isEmpty() && splitAmong == null) {
+            throw new IllegalArgumentException("No assignments given");
+        }
+        return resolved;
     }
 }
@@ -0,0 +1,579 @@
+package com.splitshare.splitshare.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Receipt store that appends every record to segmented log files under receipt.storage.path/log,
+ * so millions of receipts live in a handful of large files instead of two small files each.
+ *
+ * An in-memory index maps (kind, userId, receiptId) to the position of the latest record.
+ * Assignment deltas are the exception: every delta of a receipt stays live until the journal
+ * is cleared, which appends a tombstone so recovery drops the older deltas as well.
+ * When the active segment reaches its size limit a new one is started; a background task
+ * copies the live records out of sealed segments that are mostly garbage and deletes them.
+ * A tombstone is only needed while an older segment, which may still hold the deltas it
+ * cleared, exists. It cannot be copied forward without landing after newer deltas of the same
+ * receipt, so a segment holding needed tombstones is not compacted until every older one is gone.
+ * On startup the index is rebuilt by scanning the segments, and a torn record at the end of
+ * the last segment (left by a crash mid-write) is truncated away.
+ *
+ * Record layout: crc32 (over everything after it) | kind | userId | idLength | valueLength | id | value
+ */
+@Component
+@ConditionalOnProperty(name = "receipt.storage.engine", havingValue = "log")
+public class LogStructuredReceiptStore implements ReceiptStore {
+    private static final Logger logger = LoggerFactory.getLogger(LogStructuredReceiptStore.class);
+
+    static final byte KIND_TEXT = 1;
+    static final byte KIND_DATA = 2;
+    static final byte KIND_FAILURE = 3;
+    static final byte KIND_DELTA = 4;
+    static final byte KIND_DELTA_CLEAR = 5;
+
+    static final int HEADER_BYTES = 4 + 1 + 8 + 2 + 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path logDir;
+    private final long segmentMaxBytes;
+    private final double compactionMinGarbageRatio;
+    private final boolean syncWrites;
+
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    // Delta journals, each list is replaced rather than modified so readers need no lock
+    private final Map<String, List<Location>> deltas = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    // Guards appends and index updates, so the index order always matches the log order
+    private final Object appendLock = new Object();
+    private Segment active;
+
+    private final ScheduledExecutorService compactor;
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    /**
+     * @param segmentMaxBytes Size at which the active segment is sealed and a new one started
+     * @param compactionIntervalMillis How often sealed segments are checked for compaction, or 0 to disable
+     * @param compactionMinGarbageRatio Share of dead bytes a sealed segment needs before it is rewritten
+     * @param syncWrites Whether each append is forced to disk before returning
+     */
+    @Autowired
+    public LogStructuredReceiptStore(@Value("${receipt.storage.path:/tmp/receipts}") String storageBasePath,
+                                     @Value("${receipt.storage.log.segment-max-bytes:67108864}") long segmentMaxBytes,
+                                     @Value("${receipt.storage.log.compaction-interval-ms:60000}") long compactionIntervalMillis,
+                                     @Value("${receipt.storage.log.compaction-min-garbage-ratio:0.5}") double compactionMinGarbageRatio,
+                                     @Value("${receipt.storage.log.sync-writes:false}") boolean syncWrites) throws IOException {
+        this.logDir = Paths.get(storageBasePath, "log");
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.compactionMinGarbageRatio = compactionMinGarbageRatio;
+        this.syncWrites = syncWrites;
+
+        Files.createDirectories(logDir);
+        recover();
+
+        if (compactionIntervalMillis > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "receipt-log-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactQuietly,
+                    compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    @Override
+    public void writeText(Long userId, String receiptId, String text) throws IOException {
+        append(KIND_TEXT, userId, receiptId, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String readText(Long userId, String receiptId) throws IOException {
+        byte[] value = read(KIND_TEXT, userId, receiptId);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void writeData(Long userId, String receiptId, byte[] json) throws IOException {
+        append(KIND_DATA, userId, receiptId, json);
+    }
+
+    @Override
+    public byte[] readData(Long userId, String receiptId) throws IOException {
+        return read(KIND_DATA, userId, receiptId);
+    }
+
+    @Override
+    public boolean hasData(Long userId, String receiptId) {
+        return index.containsKey(indexKey(KIND_DATA, userId, receiptId));
+    }
+
+    @Override
+    public void writeFailureLog(Long userId, String name, String text) throws IOException {
+        append(KIND_FAILURE, userId, name, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void appendDelta(Long userId, String receiptId, byte[] delta) throws IOException {
+        ByteBuffer record = encode(KIND_DELTA, userId, receiptId, delta);
+        String key = indexKey(KIND_DELTA, userId, receiptId);
+        synchronized (appendLock) {
+            addDelta(key, appendRecord(record));
+        }
+    }
+
+    @Override
+    public List<byte[]> readDeltas(Long userId, String receiptId) throws IOException {
+        String key = indexKey(KIND_DELTA, userId, receiptId);
+        for (int attempt = 0; ; attempt++) {
+            List<Location> locations = deltas.get(key);
+            if (locations == null) return Collections.emptyList();
+            try {
+                List<byte[]> values = new ArrayList<>(locations.size());
+                for (Location location : locations) {
+                    values.add(readValue(location));
+                }
+                return values;
+            } catch (ClosedChannelException e) {
+                if (attempt > 0 || locations.equals(deltas.get(key))) throw e;
+            }
+        }
+    }
+
+    @Override
+    public void clearDeltas(Long userId, String receiptId) throws IOException {
+        String key = indexKey(KIND_DELTA, userId, receiptId);
+        synchronized (appendLock) {
+            if (!deltas.containsKey(key)) return;
+            // The tombstone stays live until no older segment can hold the deltas it clears
+            Location tombstone = appendRecord(encode(KIND_DELTA_CLEAR, userId, receiptId, new byte[0]));
+            active.tombstoneBytes.addAndGet(tombstone.length);
+            dropDeltas(key);
+        }
+    }
+
+    private static String indexKey(byte kind, long userId, String receiptId) {
+        return kind + ":" + userId + ":" + receiptId;
+    }
+
+    private void append(byte kind, long userId, String receiptId, byte[] value) throws IOException {
+        ByteBuffer record = encode(kind, userId, receiptId, value);
+        String key = indexKey(kind, userId, receiptId);
+        synchronized (appendLock) {
+            Location location = appendRecord(record);
+            replace(key, location);
+        }
+    }
+
+    // Caller holds appendLock
+    private Location appendRecord(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (active.size > 0 && active.size + length > segmentMaxBytes) {
+            if (syncWrites) active.channel().force(false);
+            active = openSegment(active.id + 1);
+        }
+        long offset = active.size;
+        while (record.hasRemaining()) {
+            active.channel().write(record, offset + record.position());
+        }
+        if (syncWrites) active.channel().force(false);
+        active.size += length;
+        active.liveBytes.addAndGet(length);
+        return new Location(active.id, offset, length);
+    }
+
+    // Points the key at a new record and marks the record it replaces as garbage
+    private void replace(String key, Location location) {
+        Location previous = index.put(key, location);
+        if (previous != null) markGarbage(previous);
+    }
+
+    private void addDelta(String key, Location location) {
+        deltas.merge(key, List.of(location), (existing, added) -> {
+            List<Location> merged = new ArrayList<>(existing);
+            merged.addAll(added);
+            return Collections.unmodifiableList(merged);
+        });
+    }
+
+    private void dropDeltas(String key) {
+        List<Location> removed = deltas.remove(key);
+        if (removed != null) removed.forEach(this::markGarbage);
+    }
+
+    private void markGarbage(Location location) {
+        Segment segment = segments.get(location.segment);
+        if (segment != null) segment.liveBytes.addAndGet(-location.length);
+    }
+
+    private boolean isLive(byte kind, String key, Location location) {
+        if (kind == KIND_DELTA) {
+            return deltas.getOrDefault(key, Collections.emptyList()).contains(location);
+        }
+        return location.equals(index.get(key));
+    }
+
+    private byte[] read(byte kind, long userId, String receiptId) throws IOException {
+        String key = indexKey(kind, userId, receiptId);
+        // A second attempt covers a segment deleted by compaction between the lookup and the read
+        for (int attempt = 0; ; attempt++) {
+            Location location = index.get(key);
+            if (location == null) return null;
+            try {
+                return readValue(location);
+            } catch (ClosedChannelException e) {
+                if (attempt > 0 || location.equals(index.get(key))) throw e;
+            }
+        }
+    }
+
+    private byte[] readValue(Location location) throws IOException {
+        Segment segment = segments.get(location.segment);
+        if (segment == null) throw new ClosedChannelException();
+        ByteBuffer record = readRecord(segment.channel(), location.offset, location.length);
+        return value(record, segment, location.offset);
+    }
+
+    private static ByteBuffer readRecord(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        while (record.hasRemaining()) {
+            if (channel.read(record, offset + record.position()) < 0) {
+                throw new IOException("Unexpected end of segment at offset " + offset);
+            }
+        }
+        record.flip();
+        return record;
+    }
+
+    static ByteBuffer encode(byte kind, long userId, String receiptId, byte[] value) {
+        byte[] id = receiptId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Receipt ID is too long");
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + id.length + value.length);
+        record.position(4);
+        record.put(kind).putLong(userId).putShort((short) id.length).putInt(value.length).put(id).put(value);
+        record.putInt(0, crc(record, 4, record.capacity()));
+        record.flip();
+        return record;
+    }
+
+    private static int crc(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(from).limit(to));
+        return (int) crc.getValue();
+    }
+
+    private static int recordLength(ByteBuffer header) {
+        return HEADER_BYTES + header.getShort(13) + header.getInt(15);
+    }
+
+    private static byte[] value(ByteBuffer record, Segment segment, long offset) throws IOException {
+        if (record.getInt(0) != crc(record, 4, record.limit())) {
+            throw new IOException("Checksum mismatch in " + segment.path + " at offset " + offset);
+        }
+        byte[] value = new byte[record.getInt(15)];
+        record.position(HEADER_BYTES + record.getShort(13)).get(value);
+        return value;
+    }
+
+    private static String recordKey(ByteBuffer record) {
+        return recordKey(record, record.get(4));
+    }
+
+    private static String recordKey(ByteBuffer record, byte kind) {
+        byte[] id = new byte[record.getShort(13)];
+        record.duplicate().position(HEADER_BYTES).get(id);
+        return indexKey(kind, record.getLong(5), new String(id, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Rebuilds the index from the segments on disk, oldest first so later records win.
+     * Sealed segments are scanned by header only; records are checksummed when read.
+     * The last segment is fully verified and cut back to its last intact record.
+     */
+    private void recover() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(logDir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .forEach(name -> ids.add(Integer.parseInt(
+                            name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()))));
+        }
+        ids.sort(null);
+        for (int i = 0; i < ids.size(); i++) {
+            scanSegment(openSegment(ids.get(i)), i == ids.size() - 1);
+        }
+        synchronized (appendLock) {
+            active = ids.isEmpty() ? openSegment(1) : segments.lastEntry().getValue();
+        }
+        logger.info("Recovered {} receipt records from {} log segments in {}", index.size(), segments.size(), logDir);
+    }
+
+    private void scanSegment(Segment segment, boolean verify) throws IOException {
+        long fileSize = segment.channel().size();
+        long offset = 0;
+        while (offset + HEADER_BYTES <= fileSize) {
+            ByteBuffer header = readRecord(segment.channel(), offset, HEADER_BYTES);
+            short idLength = header.getShort(13);
+            int valueLength = header.getInt(15);
+            if (idLength < 0 || valueLength < 0 || offset + HEADER_BYTES + idLength + valueLength > fileSize) break;
+            int length = HEADER_BYTES + idLength + valueLength;
+
+            ByteBuffer record = readRecord(segment.channel(), offset, verify ? length : HEADER_BYTES + idLength);
+            if (verify && record.getInt(0) != crc(record, 4, length)) break;
+            byte kind = record.get(4);
+            Location location = new Location(segment.id, offset, length);
+            segment.liveBytes.addAndGet(length);
+            if (kind == KIND_DELTA_CLEAR) {
+                segment.tombstoneBytes.addAndGet(length);
+                dropDeltas(recordKey(record, KIND_DELTA));
+            } else if (kind == KIND_DELTA) {
+                addDelta(recordKey(record), location);
+            } else {
+                replace(recordKey(record), location);
+            }
+            offset += length;
+        }
+        if (offset < fileSize) {
+            if (verify) {
+                logger.warn("Truncating {} torn bytes at the end of {}", fileSize - offset, segment.path);
+                segment.channel().truncate(offset);
+                segment.channel().force(true);
+            } else {
+                logger.error("Segment {} is damaged after offset {}, later records in it are skipped", segment.path, offset);
+            }
+        }
+        segment.size = offset;
+    }
+
+    private Segment openSegment(int id) throws IOException {
+        Path path = logDir.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(id, path, channel);
+        segment.size = channel.size();
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            logger.warn("Receipt log compaction failed", e);
+        }
+    }
+
+    /**
+     * Rewrites the live records of sealed segments whose garbage ratio is at least the threshold
+     * into the active segment, then deletes them. Segments are visited oldest first, so each
+     * removal can retire the tombstones of the next one.
+     * @return Number of segments removed
+     */
+    public int compact() throws IOException {
+        int removed = 0;
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            Segment current;
+            synchronized (appendLock) {
+                current = active;
+                retireTombstones();
+            }
+            if (segment == current) continue;
+            // Its tombstones still hide deltas in an older segment
+            if (segment.tombstoneBytes.get() > 0) continue;
+            long garbage = segment.size - segment.liveBytes.get();
+            if (segment.size > 0 && (double) garbage / segment.size < compactionMinGarbageRatio) continue;
+
+            copyLiveRecords(segment);
+            segments.remove(segment.id);
+            segment.close();
+            Files.deleteIfExists(segment.path);
+            compactedSegments.incrementAndGet();
+            reclaimedBytes.addAndGet(garbage);
+            removed++;
+            logger.info("Compacted receipt log segment {} ({} bytes reclaimed)", segment.path, garbage);
+        }
+        return removed;
+    }
+
+    private void copyLiveRecords(Segment segment) throws IOException {
+        long offset = 0;
+        while (offset < segment.size) {
+            ByteBuffer header = readRecord(segment.channel(), offset, HEADER_BYTES);
+            int length = recordLength(header);
+            Location location = new Location(segment.id, offset, length);
+            offset += length;
+
+            ByteBuffer record = readRecord(segment.channel(), location.offset, length);
+            byte kind = record.get(4);
+            String key = recordKey(record);
+            if (!isLive(kind, key, location)) continue;
+            value(record, segment, location.offset);  // verifies the checksum before copying
+            synchronized (appendLock) {
+                // Only copy if no newer record was written meanwhile, otherwise the copy would shadow it on recovery
+                if (isLive(kind, key, location)) {
+                    record.rewind();
+                    Location copy = appendRecord(record);
+                    if (kind == KIND_DELTA) {
+                        moveDelta(key, location, copy);
+                    } else {
+                        replace(key, copy);
+                    }
+                }
+            }
+        }
+        if (syncWrites) {
+            synchronized (appendLock) {
+                active.channel().force(false);
+            }
+        }
+    }
+
+    // Caller holds appendLock. Tombstones in the oldest segment have nothing left to clear
+    private void retireTombstones() {
+        Map.Entry<Integer, Segment> oldest = segments.firstEntry();
+        if (oldest == null) return;
+        long retired = oldest.getValue().tombstoneBytes.getAndSet(0);
+        oldest.getValue().liveBytes.addAndGet(-retired);
+    }
+
+    // Copies can land after newer deltas of the same receipt, readers order deltas by their own version
+    private void moveDelta(String key, Location from, Location to) {
+        deltas.computeIfPresent(key, (k, existing) -> {
+            List<Location> moved = new ArrayList<>(existing);
+            moved.set(moved.indexOf(from), to);
+            return Collections.unmodifiableList(moved);
+        });
+        markGarbage(from);
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public int getRecordCount() {
+        return index.size();
+    }
+
+    public long getTotalBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.size).sum();
+    }
+
+    public long getLiveBytes() {
+        return segments.values().stream().mapToLong(segment -> segment.liveBytes.get()).sum();
+    }
+
+    public long getCompactedSegments() {
+        return compactedSegments.get();
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (compactor != null) compactor.shutdownNow();
+        synchronized (appendLock) {
+            for (Segment segment : segments.values()) {
+                if (segment == active) segment.channel().force(true);
+                segment.close();
+            }
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final AtomicLong liveBytes = new AtomicLong();
+        // Part of liveBytes taken by tombstones that an older segment still needs
+        final AtomicLong tombstoneBytes = new AtomicLong();
+        // Only changed under appendLock (or during recovery)
+        volatile long size;
+        private volatile FileChannel channel;
+        private volatile boolean closed;
+
+        Segment(int id, Path path, FileChannel channel) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        /**
+         * A thread interrupted during I/O closes the shared channel for everyone,
+         * so it is reopened here unless the segment itself was closed
+         */
+        FileChannel channel() throws IOException {
+            FileChannel current = channel;
+            return current.isOpen() ? current : reopen();
+        }
+
+        private synchronized FileChannel reopen() throws IOException {
+            if (closed) throw new ClosedChannelException();
+            if (!channel.isOpen()) {
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            return channel;
+        }
+
+        synchronized void close() throws IOException {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private static final class Location {
+        final int segment;
+        final long offset;
+        final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Location)) return false;
+            Location that = (Location) other;
+            return segment == that.segment && offset == that.offset && length == that.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(offset) * 31 + segment;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.splitshare.splitshare.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.bytedeco.javacpp.Pointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Global budget for the native memory used by OpenCV while images go through the pipeline.
+ * Pixel buffers are allocated by OpenCV outside the Java heap, so the JVM cannot push back
+ * when many large receipts are processed at once. Every image reserves its estimated
+ * footprint before it is decoded and new work waits while the budget is used up.
+ */
+@Component
+public class NativeMemoryBudget {
+    private static final Logger logger = LoggerFactory.getLogger(NativeMemoryBudget.class);
+
+    // Peak native bytes per pixel: BGR decode (3) + gray (1) + 64-bit Laplacian (8)
+    // + blurred/thresholded/padded copies (3) + 2x upscale (4)
+    static final long PIPELINE_BYTES_PER_PIXEL = 19;
+    // Used when the header cannot be read, compressed images are rarely more than 16x smaller
+    static final long FALLBACK_EXPANSION = 16 * PIPELINE_BYTES_PER_PIXEL;
+
+    private static final long PERMIT_BYTES = 1024;
+
+    private final Semaphore permits;
+    private final int totalPermits;
+    private final long maxWaitMillis;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * @param budgetBytes Native bytes that may be reserved at once, or 0 to use the JavaCPP limit (-Dorg.bytedeco.javacpp.maxBytes, the heap size by default)
+     * @param maxWaitMillis How long an image may wait for budget before the request is rejected
+     */
+    @Autowired
+    public NativeMemoryBudget(@Value("${ocr.native-memory.budget-bytes:0}") long budgetBytes,
+                              @Value("${ocr.native-memory.max-wait-ms:30000}") long maxWaitMillis) {
+        long budget = budgetBytes > 0 ? budgetBytes : Pointer.maxBytes();
+        this.totalPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, budget / PERMIT_BYTES));
+        this.permits = new Semaphore(totalPermits, true);
+        this.maxWaitMillis = maxWaitMillis;
+        logger.info("Native image memory budget is {} MB", getBudgetBytes() / (1024 * 1024));
+    }
+
+    /**
+     * Reserves native memory for one image, waiting up to the configured time.
+     * A reservation larger than the whole budget is capped so the image can still run on its own.
+     *
+     * @param bytes Estimated native bytes the image needs
+     * @return The reservation, to be closed once the image's Mats are released
+     * @throws OcrEngineUnavailableException if the budget did not free up in time
+     */
+    public Reservation reserve(long bytes) throws InterruptedException {
+        int needed = (int) Math.min(totalPermits, Math.max(1, (bytes + PERMIT_BYTES - 1) / PERMIT_BYTES));
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(needed, maxWaitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new OcrEngineUnavailableException(
+                    "Native memory budget stayed exhausted for " + maxWaitMillis + " ms");
+        }
+        reservedBytes.addAndGet(needed * PERMIT_BYTES);
+        return new Reservation(needed);
+    }
+
+    /**
+     * Estimates the pipeline's native footprint from the image header without decoding the pixels
+     */
+    public static long estimateBytes(byte[] imageBytes) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(imageBytes))) {
+            return estimateBytes(input, imageBytes.length);
+        } catch (IOException e) {
+            return imageBytes.length * FALLBACK_EXPANSION;
+        }
+    }
+
+    public static long estimateBytes(File imageFile) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageFile)) {
+            return estimateBytes(input, imageFile.length());
+        } catch (IOException e) {
+            return imageFile.length() * FALLBACK_EXPANSION;
+        }
+    }
+
+    private static long estimateBytes(ImageInputStream input, long encodedLength) throws IOException {
+        Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+        if (readers == null || !readers.hasNext()) {
+            return encodedLength * FALLBACK_EXPANSION;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            return (long) reader.getWidth(0) * reader.getHeight(0) * PIPELINE_BYTES_PER_PIXEL;
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    public long getBudgetBytes() {
+        return totalPermits * PERMIT_BYTES;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Budget held by one image. Closing it more than once has no effect.
+     */
+    public class Reservation implements AutoCloseable {
+        private final int reservedPermits;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Reservation(int reservedPermits) {
+            this.reservedPermits = reservedPermits;
+        }
+
+        public long getBytes() {
+            return reservedPermits * PERMIT_BYTES;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                reservedBytes.addAndGet(-reservedPermits * PERMIT_BYTES);
+                permits.release(reservedPermits);
+            }
+        }
+    }
+}
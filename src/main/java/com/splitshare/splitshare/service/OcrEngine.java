@@ -1,32 +1,115 @@
 package com.splitshare.splitshare.service;
 
-import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.ITessAPI.TessOcrEngineMode;
+import net.sourceforge.tess4j.ITessAPI.TessPageSegMode;
+import net.sourceforge.tess4j.TessAPI1;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.util.ImageIOHelper;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import com.sun.jna.Pointer;
+
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+
+/**
+ * Wrapper around a single Tesseract API handle.
+ * The handle is initialized on first use and kept for the life of the engine, so the
+ * traineddata is loaded once instead of on every call. Preprocessed Mats are handed to
+ * Tesseract straight from native memory without going through a BufferedImage.
+ * Not thread safe: instances are handed out one caller at a time by {@link OcrEnginePool}.
+ */
+public class OcrEngine implements AutoCloseable {
+    private static final String DATA_PATH = "/usr/share/tessdata/";  // inside Docker
+    private static final String LANGUAGE = "eng";
+    //this helps with weird cases that creates borders into pipe (|) characters
+    private static final String CHAR_WHITELIST = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789.$&:/+=-, ";
+    // Raw pixels carry no DPI, so Tesseract would guess one and warn about "invalid resolution 0 dpi".
+    // ResolutionNormalizer scales text to about 32 px, the height of receipt print scanned at 300 dpi
+    private static final int SOURCE_PPI = 300;
+
+    private TessBaseAPI handle;
+    // Whether the handle currently has the fast setting, so it is only changed when a call needs the other one
+    private boolean fastApplied;
 
-import org.springframework.stereotype.Service;
-
-@Service
-public class OcrEngine {
-    private Tesseract tesseract;
-    public OcrEngine(){
-        tesseract = new Tesseract();
-        tesseract.setDatapath("/usr/share/tessdata/");  // inside Docker
-        tesseract.setLanguage("eng");
-        //this helps with weird cases that creates borders into pipe (|) characters
-        tesseract.setVariable("tessedit_char_whitelist", "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789.$&:/+=-, ");  
-        
+    private void ensureInitialized() throws TesseractException {
+        if (handle != null) return;
+        TessBaseAPI api = TessAPI1.TessBaseAPICreate();
+        if (TessAPI1.TessBaseAPIInit1(api, DATA_PATH, LANGUAGE, TessOcrEngineMode.OEM_DEFAULT, null, 0) != 0) {
+            TessAPI1.TessBaseAPIDelete(api);
+            throw new TesseractException("Could not initialize Tesseract with data path " + DATA_PATH);
+        }
+        TessAPI1.TessBaseAPISetVariable(api, "tessedit_char_whitelist", CHAR_WHITELIST);
         //there is some weirdness with this in my example version mode 1 worked fine with everything else being the same
         //in this version mode 4 with the same images.
-        tesseract.setPageSegMode(6);
+        TessAPI1.TessBaseAPISetPageSegMode(api, TessPageSegMode.PSM_SINGLE_BLOCK);
+        handle = api;
+    }
+
+    /**
+     * Runs OCR with or without the fast setting, which skips the second pass Tesseract makes over
+     * lines it reads with low confidence to try them as white on black text. Receipts are printed
+     * dark on light, so the pass rarely helps them.
+     */
+    public String extractText(Mat gray, boolean fast) throws Exception {
+        if (gray.channels() != 1 || gray.elemSize() != 1) {
+            throw new IllegalArgumentException("Expected an 8-bit grayscale image, got " + gray.channels() + " channels");
+        }
+        ByteBuffer pixels = gray.data().capacity(gray.step() * gray.rows()).asByteBuffer();
+        return recognize(pixels, gray.cols(), gray.rows(), 1, (int) gray.step(), fast);
+    }
+
+    /**
+     * Runs OCR on an 8-bit single channel image.
+     * Tesseract reads the pixels in place, the Mat must stay open until this returns.
+     */
+    public String extractText(Mat gray) throws Exception {
+        return extractText(gray, false);
     }
 
     //This method does not do any pre processing just looks an image and gets the text.
-    public String extractTextFromImage(BufferedImage image) throws Exception{
+    public String extractTextFromImage(BufferedImage image) throws Exception {
+        int bitsPerPixel = image.getColorModel().getPixelSize();
+        int bytesPerLine = (int) Math.ceil(image.getWidth() * bitsPerPixel / 8.0);
+        return recognize(ImageIOHelper.convertImageData(image), image.getWidth(), image.getHeight(),
+                bitsPerPixel / 8, bytesPerLine, false);
+    }
+
+    private String recognize(ByteBuffer pixels, int width, int height, int bytesPerPixel, int bytesPerLine,
+                             boolean fast) throws TesseractException {
+        ensureInitialized();
+        if (fast != fastApplied) {
+            TessAPI1.TessBaseAPISetVariable(handle, "tessedit_do_invert", fast ? "0" : "1");
+            fastApplied = fast;
+        }
         try {
-            return tesseract.doOCR(image);
-        } catch (Exception e) {
-            e.printStackTrace(); // Print to console to help debug
-            throw e;
+            TessAPI1.TessBaseAPISetImage(handle, pixels, width, height, bytesPerPixel, bytesPerLine);
+            // Set after the image, which resets it
+            TessAPI1.TessBaseAPISetSourceResolution(handle, SOURCE_PPI);
+            Pointer text = TessAPI1.TessBaseAPIGetUTF8Text(handle);
+            if (text == null) {
+                throw new TesseractException("Tesseract returned no text");
+            }
+            try {
+                return text.getString(0, "UTF-8");
+            } finally {
+                TessAPI1.TessDeleteText(text);
+            }
+        } finally {
+            // Drops the image and recognition results but keeps the loaded model
+            TessAPI1.TessBaseAPIClear(handle);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (handle != null) {
+            TessAPI1.TessBaseAPIEnd(handle);
+            TessAPI1.TessBaseAPIDelete(handle);
+            handle = null;
+            fastApplied = false;
         }
     }
 }
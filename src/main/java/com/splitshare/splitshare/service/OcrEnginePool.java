@@ -0,0 +1,201 @@
+package com.splitshare.splitshare.service;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PreDestroy;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fixed-size pool of OCR engines.
+ * A single Tesseract instance is not thread safe, so every OCR call borrows its own
+ * engine and returns it when done. Callers wait at most the configured time for a free engine.
+ */
+@Component
+public class OcrEnginePool {
+    private static final Logger logger = LoggerFactory.getLogger(OcrEnginePool.class);
+
+    private final BlockingQueue<OcrEngine> idleEngines;
+    private final int size;
+    private final long maxWaitMillis;
+
+    // Pool metrics
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalBorrowNanos = new AtomicLong();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+
+    /**
+     * Creates the pool used by the application.
+     *
+     * @param size Number of engines, or 0 to use one engine per available core
+     * @param maxWaitMillis How long a caller may wait for a free engine
+     */
+    @Autowired
+    public OcrEnginePool(@Value("${ocr.pool.size:0}") int size,
+                         @Value("${ocr.pool.max-wait-ms:30000}") long maxWaitMillis) {
+        this(size, maxWaitMillis, OcrEngine::new);
+    }
+
+    public OcrEnginePool(int size, long maxWaitMillis, Supplier<OcrEngine> engineFactory) {
+        this.size = size > 0 ? size : Runtime.getRuntime().availableProcessors();
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleEngines = new ArrayBlockingQueue<>(this.size);
+        // Engines are created up front so the first requests do not pay for setup
+        for (int i = 0; i < this.size; i++) {
+            idleEngines.add(engineFactory.get());
+        }
+        logger.info("Initialized OCR engine pool with {} engines (max wait {} ms)", this.size, maxWaitMillis);
+    }
+
+    /**
+     * Borrows an engine, waiting up to the configured time for one to become free.
+     * Every borrowed engine must be handed back with {@link #release(OcrEngine)}.
+     *
+     * @return An engine reserved for the caller
+     * @throws OcrEngineUnavailableException if no engine became free in time
+     */
+    public OcrEngine borrow() throws InterruptedException {
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        OcrEngine engine;
+        try {
+            engine = idleEngines.poll(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (engine == null) {
+            timeoutCount.incrementAndGet();
+            throw new OcrEngineUnavailableException(
+                    "No OCR engine became available within " + maxWaitMillis + " ms");
+        }
+        long elapsed = System.nanoTime() - start;
+        inUse.incrementAndGet();
+        borrowCount.incrementAndGet();
+        totalBorrowNanos.addAndGet(elapsed);
+        maxBorrowNanos.accumulateAndGet(elapsed, Math::max);
+        return engine;
+    }
+
+    /**
+     * Borrows an engine only if one is idle right now, for work that is optional and
+     * should not hold up other callers. A returned engine must be handed back with {@link #release(OcrEngine)}.
+     *
+     * @return An engine reserved for the caller, or null if all are in use
+     */
+    public OcrEngine tryBorrow() {
+        OcrEngine engine = idleEngines.poll();
+        if (engine != null) {
+            inUse.incrementAndGet();
+            borrowCount.incrementAndGet();
+        }
+        return engine;
+    }
+
+    /**
+     * Returns a borrowed engine to the pool
+     */
+    public void release(OcrEngine engine) {
+        if (engine == null) return;
+        inUse.decrementAndGet();
+        if (!idleEngines.offer(engine)) {
+            logger.warn("OCR engine returned to a full pool, discarding it");
+        }
+    }
+
+    /**
+     * Runs OCR on the image with a pooled engine.
+     */
+    public String extractText(BufferedImage image) throws Exception {
+        OcrEngine engine = borrow();
+        try {
+            return engine.extractTextFromImage(image);
+        } finally {
+            release(engine);
+        }
+    }
+
+    /**
+     * Runs OCR on a preprocessed grayscale Mat with a pooled engine.
+     */
+    public String extractText(Mat gray) throws Exception {
+        return extractText(gray, false);
+    }
+
+    /**
+     * @param fast Whether the engine skips its inverted text pass, see {@link OcrEngine#extractText(Mat, boolean)}
+     */
+    public String extractText(Mat gray, boolean fast) throws Exception {
+        OcrEngine engine = borrow();
+        try {
+            return engine.extractText(gray, fast);
+        } finally {
+            release(engine);
+        }
+    }
+
+    /**
+     * Frees the native Tesseract handles of the idle engines
+     */
+    @PreDestroy
+    public void shutdown() {
+        OcrEngine engine;
+        while ((engine = idleEngines.poll()) != null) {
+            engine.close();
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    public int getAvailable() {
+        return idleEngines.size();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getTotalBorrowNanos() {
+        return totalBorrowNanos.get();
+    }
+
+    public double getAverageBorrowLatencyMillis() {
+        long count = borrowCount.get();
+        return count == 0 ? 0.0 : totalBorrowNanos.get() / (double) count / 1_000_000.0;
+    }
+
+    public double getMaxBorrowLatencyMillis() {
+        return maxBorrowNanos.get() / 1_000_000.0;
+    }
+}
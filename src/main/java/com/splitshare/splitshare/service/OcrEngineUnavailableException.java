@@ -0,0 +1,12 @@
+package com.splitshare.splitshare.service;
+
+/**
+ * Thrown when no OCR engine could be borrowed from the pool within the configured wait.
+ * Callers should treat this as a temporary overload rather than a bad image.
+ */
+public class OcrEngineUnavailableException extends RuntimeException {
+
+    public OcrEngineUnavailableException(String message) {
+        super(message);
+    }
+}
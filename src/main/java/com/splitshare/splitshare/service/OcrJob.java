@@ -0,0 +1,122 @@
+package com.splitshare.splitshare.service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * State of one asynchronous receipt extraction.
+ * Jobs move from QUEUED to RUNNING and end as COMPLETED or FAILED.
+ * Listeners are notified on every change, which is what drives the SSE stream.
+ */
+public class OcrJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED;
+
+        public boolean isFinished() {
+            return this == COMPLETED || this == FAILED;
+        }
+    }
+
+    private final String jobId;
+    private final Long userId;
+    private final String originalFilename;
+    private final Date createdAt;
+    private volatile Date updatedAt;
+    private volatile Status status;
+    private volatile String stage;
+    private volatile Map<String, Object> result;
+    private volatile String error;
+
+    private final List<Consumer<OcrJob>> listeners = new CopyOnWriteArrayList<>();
+
+    public OcrJob(String jobId, Long userId, String originalFilename) {
+        this.jobId = jobId;
+        this.userId = userId;
+        this.originalFilename = originalFilename;
+        this.createdAt = new Date();
+        this.updatedAt = createdAt;
+        this.status = Status.QUEUED;
+    }
+
+    /**
+     * Registers a listener that is called on every status change.
+     * If the job is already finished the listener is called once right away.
+     */
+    public void addListener(Consumer<OcrJob> listener) {
+        listeners.add(listener);
+        if (status.isFinished()) {
+            listener.accept(this);
+        }
+    }
+
+    public void removeListener(Consumer<OcrJob> listener) {
+        listeners.remove(listener);
+    }
+
+    synchronized void markRunning(String stage) {
+        this.status = Status.RUNNING;
+        this.stage = stage;
+        changed();
+    }
+
+    synchronized void markCompleted(Map<String, Object> result) {
+        this.result = result;
+        this.status = Status.COMPLETED;
+        this.stage = null;
+        changed();
+    }
+
+    synchronized void markFailed(String error) {
+        this.error = error;
+        this.status = Status.FAILED;
+        this.stage = null;
+        changed();
+    }
+
+    private void changed() {
+        updatedAt = new Date();
+        for (Consumer<OcrJob> listener : listeners) {
+            listener.accept(this);
+        }
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public Map<String, Object> getResult() {
+        return result;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
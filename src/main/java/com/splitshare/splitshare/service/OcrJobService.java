@@ -0,0 +1,168 @@
+package com.splitshare.splitshare.service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.splitshare.splitshare.dto.OcrResult;
+import com.splitshare.splitshare.dto.ReceiptData;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs receipt extraction in the background so upload requests return right away.
+ * Jobs are picked up by a bounded pool of worker threads with a bounded queue; when the
+ * queue is full new jobs are rejected instead of piling up in memory. Workers hand OCR to the
+ * shared CPU pool of {@link ExecutionModel} and only store results and track the job themselves.
+ * Finished jobs are dropped once ocr.jobs.retention-minutes have passed, by a periodic sweep and
+ * whenever an expired job is polled.
+ */
+@Service
+public class OcrJobService {
+    private static final Logger logger = LoggerFactory.getLogger(OcrJobService.class);
+    private static final long PURGE_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final ReceiptProcessingService processingService;
+    private final ReceiptStorageService storageService;
+    private final ExecutionModel execution;
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService purger;
+    private final Map<String, OcrJob> jobs = new ConcurrentHashMap<>();
+    private final long retentionMillis;
+
+    @Autowired
+    public OcrJobService(ReceiptProcessingService processingService,
+                         ReceiptStorageService storageService,
+                         ExecutionModel execution,
+                         @Value("${ocr.jobs.workers:0}") int workers,
+                         @Value("${ocr.jobs.queue-capacity:100}") int queueCapacity,
+                         @Value("${ocr.jobs.retention-minutes:30}") long retentionMinutes) {
+        this.processingService = processingService;
+        this.storageService = storageService;
+        this.execution = execution;
+        this.retentionMillis = TimeUnit.MINUTES.toMillis(retentionMinutes);
+
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ocr-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ocr-job-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(this::purgeExpiredJobs,
+                PURGE_INTERVAL_MILLIS, PURGE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a receipt image for extraction.
+     *
+     * @param userId The ID of the user who uploaded the receipt
+     * @param originalFilename The original filename of the uploaded receipt image
+     * @param imageBytes The encoded image bytes
+     * @return The queued job
+     * @throws RejectedExecutionException if the job queue is full
+     */
+    public OcrJob submit(Long userId, String originalFilename, byte[] imageBytes) {
+        return submit(userId, originalFilename, imageBytes, ReceiptProcessingService.DEFAULT_MODE);
+    }
+
+    /**
+     * Same as {@link #submit(Long, String, byte[])} with OCR in one of the {@link ParallelStripOcr} modes
+     */
+    public OcrJob submit(Long userId, String originalFilename, byte[] imageBytes, String ocrMode) {
+        OcrJob job = new OcrJob(UUID.randomUUID().toString(), userId, originalFilename);
+        jobs.put(job.getJobId(), job);
+        try {
+            executor.execute(() -> run(job, imageBytes, ocrMode));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            throw e;
+        }
+        logger.info("Queued OCR job {} for user {}", job.getJobId(), userId);
+        return job;
+    }
+
+    /**
+     * @return The job with this ID, or null if it is unknown or has expired
+     */
+    public OcrJob getJob(String jobId) {
+        OcrJob job = jobs.get(jobId);
+        // The sweep may not have run yet
+        if (job != null && isExpired(job, System.currentTimeMillis() - retentionMillis)) {
+            jobs.remove(jobId, job);
+            return null;
+        }
+        return job;
+    }
+
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private void run(OcrJob job, byte[] imageBytes, String ocrMode) {
+        try {
+            job.markRunning("ocr");
+            OcrResult result = execution.onCpu(() -> processingService.process(imageBytes, ocrMode));
+            ReceiptData parsedData = result.getReceiptData();
+
+            job.markRunning("storing");
+            String receiptId = storageService.storeReceiptText(
+                    job.getUserId(), result.getRawText(), parsedData, job.getOriginalFilename());
+
+            job.markCompleted(ReceiptResponseBuilder.build(receiptId, parsedData));
+            logger.info("OCR job {} completed with receipt {}", job.getJobId(), receiptId);
+        } catch (OcrEngineUnavailableException | RejectedExecutionException e) {
+            // All OCR engines or CPU threads are busy, the image itself may be fine
+            logger.warn("OCR job {} could not get OCR capacity: {}", job.getJobId(), e.getMessage());
+            job.markFailed("The server is busy processing other receipts. Please try again shortly.");
+        } catch (Exception e) {
+            logger.error("OCR job {} failed: ", job.getJobId(), e);
+            storageService.logOcrFailure(job.getUserId(), job.getOriginalFilename(), e.getMessage());
+            job.markFailed("We couldn't process this receipt image. " +
+                    "Please ensure the image is clear and try again, or enter the details manually.");
+        }
+    }
+
+    // Finished jobs are kept for a while so clients can still poll for the result
+    private void purgeExpiredJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        jobs.values().removeIf(job -> isExpired(job, cutoff));
+    }
+
+    private static boolean isExpired(OcrJob job, long cutoff) {
+        return job.getStatus().isFinished() && job.getUpdatedAt().getTime() < cutoff;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        purger.shutdownNow();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,172 @@
+package com.splitshare.splitshare.service;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers for each stage of the receipt OCR pipeline.
+ * Every stage is recorded under one timer name with a stage tag and the preprocessing mode,
+ * with percentile histograms so p99 per stage can be read from Prometheus.
+ */
+@Component
+public class OcrMetrics {
+    public static final String STAGE_TIMER = "ocr.pipeline.stage";
+    public static final String MODE_COUNTER = "ocr.preprocess.mode";
+    public static final String REGION_COUNTER = "ocr.region";
+    public static final String SCALE_FACTOR = "ocr.scale.factor";
+    public static final String TEXT_HEIGHT = "ocr.scale.text_height";
+    public static final String STRIPS = "ocr.strips";
+    public static final String QUALITY_GATE = "ocr.quality.gate";
+    public static final String PDF_PAGES = "ocr.pdf.pages";
+    public static final String TIERS = "ocr.tiers";
+
+    // Stage names
+    public static final String QUALITY_CHECK = "quality_check";
+    public static final String DECODE = "decode";
+    public static final String PDF_TEXT = "pdf_text";
+    public static final String PDF_RENDER = "pdf_render";
+    public static final String REGION = "region";
+    public static final String SCALE = "scale";
+    public static final String BLUR_CHECK = "blur_check";
+    public static final String PREPROCESS = "preprocess";
+    public static final String OCR = "ocr";
+    // One OCR tier from preprocessing to validation, tagged with the tier instead of a mode
+    public static final String TIER = "tier";
+    public static final String PARSE = "parse";
+    public static final String STORE_TEXT = "store_text";
+    public static final String STORE_JSON = "store_json";
+
+    // Used for stages that run before or without a preprocessing mode
+    public static final String NO_MODE = "none";
+
+    private final MeterRegistry registry;
+
+    @Autowired
+    public OcrMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public Timer stageTimer(String stage, String mode) {
+        return Timer.builder(STAGE_TIMER)
+                .description("Time spent in each stage of the receipt OCR pipeline")
+                .tag("stage", stage)
+                .tag("mode", mode)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Runs a stage and records how long it took, whether or not it succeeded
+     */
+    public <T> T time(String stage, String mode, Callable<T> work) throws Exception {
+        return stageTimer(stage, mode).recordCallable(work);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void stop(Timer.Sample sample, String stage, String mode) {
+        sample.stop(stageTimer(stage, mode));
+    }
+
+    /**
+     * Counts which preprocessing branch was chosen for an image
+     */
+    public void countMode(String mode) {
+        Counter.builder(MODE_COUNTER)
+                .description("Images processed per preprocessing mode")
+                .tag("mode", mode)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records the resampling factor chosen for an image, tagged with its direction and whether
+     * it came from the measured text height or the fallback rule
+     * @param textHeight Measured median character height in pixels, NaN if unknown
+     */
+    public void recordScale(double factor, double textHeight) {
+        boolean estimated = !Double.isNaN(textHeight);
+        DistributionSummary.builder(SCALE_FACTOR)
+                .description("Factor images are resampled by before OCR")
+                .tag("direction", factor > 1 ? "up" : factor < 1 ? "down" : "none")
+                .tag("basis", estimated ? "text_height" : "fallback")
+                .register(registry)
+                .record(factor);
+        if (estimated) {
+            DistributionSummary.builder(TEXT_HEIGHT)
+                    .description("Median character height measured before resampling")
+                    .baseUnit("pixels")
+                    .register(registry)
+                    .record(textHeight);
+        }
+    }
+
+    /**
+     * Counts whether an image was cropped to the detected receipt or processed in full
+     */
+    public void countRegion(boolean cropped) {
+        Counter.builder(REGION_COUNTER)
+                .description("Images cropped to the detected receipt versus processed in full")
+                .tag("result", cropped ? "cropped" : "full_frame")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Records how many strips an image was OCR'd in, 1 for a single pass
+     */
+    public void recordStrips(int strips) {
+        DistributionSummary.builder(STRIPS)
+                .description("Strips each image was cut into for OCR, 1 for a single pass")
+                .register(registry)
+                .record(strips);
+    }
+
+    /**
+     * Counts images the /extract quality gate let through or turned away
+     */
+    public void countQualityGate(boolean passed) {
+        Counter.builder(QUALITY_GATE)
+                .description("Images passed or rejected by the quality gate before OCR")
+                .tag("result", passed ? "passed" : "rejected")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts OCR tiers whose text passed or failed validation, so each tier's hit rate is
+     * accepted / (accepted + rejected)
+     */
+    public void countTier(String tier, boolean accepted) {
+        Counter.builder(TIERS)
+                .description("OCR tiers whose parsed totals were consistent versus escalated")
+                .tag("tier", tier)
+                .tag("result", accepted ? "accepted" : "rejected")
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Counts PDF pages read from their text layer versus rendered and OCR'd
+     */
+    public void countPdfPage(boolean textLayer) {
+        Counter.builder(PDF_PAGES)
+                .description("PDF pages read from their text layer versus rendered for OCR")
+                .tag("source", textLayer ? "text_layer" : "ocr")
+                .register(registry)
+                .increment();
+    }
+}
@@ -0,0 +1,311 @@
+package com.splitshare.splitshare.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.splitshare.splitshare.dto.OcrResult;
+
+/**
+ * Cache of OCR results keyed by the content of the uploaded image.
+ * The key is a SHA-256 of the image bytes plus the preprocessing mode and pipeline version,
+ * so the same photo uploaded twice only pays for Tesseract once.
+ *
+ * Results live in a size-bounded in-memory LRU tier backed by a size-bounded disk tier
+ * under receipt.storage.path. Entries are stored serialized so callers always get their own copy.
+ */
+@Component
+public class OcrResultCache {
+    private static final Logger logger = LoggerFactory.getLogger(OcrResultCache.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final boolean enabled;
+    private final long memoryMaxBytes;
+    private final long diskMaxBytes;
+    private final Path diskDir;
+
+    // Access ordered, so iteration starts with the least recently used entry
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+    // Insertion ordered, so iteration starts with the oldest file
+    private final LinkedHashMap<String, Long> diskEntries = new LinkedHashMap<>();
+    private long diskBytes;
+
+    // Cache metrics
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong memoryEvictions = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+
+    @Autowired
+    public OcrResultCache(@Value("${ocr.cache.enabled:true}") boolean enabled,
+                          @Value("${ocr.cache.memory-max-bytes:16777216}") long memoryMaxBytes,
+                          @Value("${ocr.cache.disk-max-bytes:268435456}") long diskMaxBytes,
+                          @Value("${receipt.storage.path:/tmp/receipts}") String storageBasePath) {
+        this.enabled = enabled;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        this.diskDir = Paths.get(storageBasePath, "ocr-cache");
+        if (enabled && diskMaxBytes > 0) {
+            loadDiskIndex();
+        }
+    }
+
+    /**
+     * Builds the cache key for an image.
+     *
+     * @param imageBytes The encoded image bytes
+     * @param mode The OCR mode the image is processed with
+     * @return Hex key that identifies the image content and processing mode
+     */
+    public static String key(byte[] imageBytes, String mode) {
+        return key(sha256(imageBytes), mode);
+    }
+
+    /**
+     * Builds the cache key from an already computed SHA-256 of the image bytes
+     */
+    public static String key(String contentHash, String mode) {
+        return contentHash + "-" + mode + "-v" + ImageHandlingService.PIPELINE_VERSION;
+    }
+
+    public static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Hashes a file in fixed-size chunks, so large images are never held in memory
+     */
+    public static String sha256(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return A copy of the cached result, or null if there is none
+     */
+    public OcrResult get(String key) {
+        if (!enabled) return null;
+        byte[] data;
+        synchronized (this) {
+            data = memory.get(key);
+        }
+        if (data != null) {
+            memoryHits.incrementAndGet();
+            return deserialize(key, data);
+        }
+
+        data = readFromDisk(key);
+        if (data != null) {
+            diskHits.incrementAndGet();
+            putInMemory(key, data);
+            return deserialize(key, data);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, OcrResult result) {
+        if (!enabled) return;
+        byte[] data;
+        try {
+            data = mapper.writeValueAsBytes(result);
+        } catch (IOException e) {
+            logger.warn("Could not serialize OCR result for cache key {}", key, e);
+            return;
+        }
+        putInMemory(key, data);
+        writeToDisk(key, data);
+    }
+
+    private synchronized void putInMemory(String key, byte[] data) {
+        if (data.length > memoryMaxBytes) return;
+        byte[] previous = memory.put(key, data);
+        memoryBytes += data.length - (previous == null ? 0 : previous.length);
+        Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            memoryBytes -= eldest.getValue().length;
+            it.remove();
+            memoryEvictions.incrementAndGet();
+        }
+    }
+
+    private OcrResult deserialize(String key, byte[] data) {
+        try {
+            return mapper.readValue(data, OcrResult.class);
+        } catch (IOException e) {
+            logger.warn("Dropping unreadable OCR cache entry {}", key, e);
+            invalidate(key);
+            return null;
+        }
+    }
+
+    public void invalidate(String key) {
+        synchronized (this) {
+            byte[] removed = memory.remove(key);
+            if (removed != null) memoryBytes -= removed.length;
+            Long size = diskEntries.remove(key);
+            if (size != null) diskBytes -= size;
+        }
+        try {
+            Files.deleteIfExists(diskPath(key));
+        } catch (IOException e) {
+            logger.warn("Could not delete OCR cache file for {}", key, e);
+        }
+    }
+
+    private Path diskPath(String key) {
+        return diskDir.resolve(key.substring(0, 2)).resolve(key + ".json");
+    }
+
+    private byte[] readFromDisk(String key) {
+        if (diskMaxBytes <= 0) return null;
+        synchronized (this) {
+            if (!diskEntries.containsKey(key)) return null;
+        }
+        try {
+            return Files.readAllBytes(diskPath(key));
+        } catch (IOException e) {
+            logger.warn("Could not read OCR cache file for {}", key, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, byte[] data) {
+        if (diskMaxBytes <= 0 || data.length > diskMaxBytes) return;
+        Path target = diskPath(key);
+        try {
+            Files.createDirectories(target.getParent());
+            // Write then rename so readers never see a half written entry
+            Path temp = Files.createTempFile(target.getParent(), key, ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not write OCR cache file for {}", key, e);
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (this) {
+            Long previous = diskEntries.remove(key);
+            diskBytes += data.length - (previous == null ? 0 : previous);
+            diskEntries.put(key, (long) data.length);
+            Iterator<Map.Entry<String, Long>> it = diskEntries.entrySet().iterator();
+            while (diskBytes > diskMaxBytes && it.hasNext()) {
+                Map.Entry<String, Long> oldest = it.next();
+                diskBytes -= oldest.getValue();
+                evicted.add(oldest.getKey());
+                it.remove();
+                diskEvictions.incrementAndGet();
+            }
+        }
+        for (String oldKey : evicted) {
+            try {
+                Files.deleteIfExists(diskPath(oldKey));
+            } catch (IOException e) {
+                logger.warn("Could not delete evicted OCR cache file for {}", oldKey, e);
+            }
+        }
+    }
+
+    // Rebuilds the disk tier bookkeeping from files left by a previous run, oldest first
+    private void loadDiskIndex() {
+        if (!Files.isDirectory(diskDir)) return;
+        try (Stream<Path> files = Files.walk(diskDir, 2)) {
+            files.filter(path -> path.getFileName().toString().endsWith(".json"))
+                    .sorted(Comparator.comparingLong(this::lastModified))
+                    .forEach(path -> {
+                        String name = path.getFileName().toString();
+                        long size = path.toFile().length();
+                        diskEntries.put(name.substring(0, name.length() - ".json".length()), size);
+                        diskBytes += size;
+                    });
+            logger.info("Loaded {} OCR cache entries ({} bytes) from {}", diskEntries.size(), diskBytes, diskDir);
+        } catch (IOException e) {
+            logger.warn("Could not load OCR cache directory {}", diskDir, e);
+        }
+    }
+
+    private long lastModified(Path path) {
+        return path.toFile().lastModified();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getMemoryEvictions() {
+        return memoryEvictions.get();
+    }
+
+    public long getDiskEvictions() {
+        return diskEvictions.get();
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized int getMemoryEntries() {
+        return memory.size();
+    }
+
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    public synchronized int getDiskEntries() {
+        return diskEntries.size();
+    }
+}
@@ -0,0 +1,97 @@
+package com.splitshare.splitshare.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.splitshare.splitshare.dto.ReceiptData;
+
+/**
+ * Settings and validation for tiered OCR, where each image is read as cheaply as possible first and
+ * only escalated to heavier preprocessing when the text does not add up.
+ *
+ * FAST reads a smaller image with minimal preprocessing and the engine's fast setting, STANDARD is
+ * the preprocessing the blur score asks for at the measured scale, INTENSIVE is increased
+ * preprocessing at a larger scale. A tier's text is accepted when it prints a total and its parsed
+ * item prices add up to the subtotal, or to the total once tax and tip are added. Every tier run is
+ * counted, so each tier's hit rate can be weighed against its latency.
+ */
+@Component
+public class OcrTierPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(OcrTierPolicy.class);
+
+    public static final String TIER_FAST = "fast";
+    public static final String TIER_STANDARD = "standard";
+    public static final String TIER_INTENSIVE = "intensive";
+
+    private final ReceiptExtractionHelper extractor;
+    private final OcrMetrics metrics;
+    private final boolean enabled;
+    private final double fastScale;
+    private final double intensiveScale;
+    private final double tolerance;
+
+    /**
+     * @param enabled Whether images go through the tiers, otherwise only STANDARD runs
+     * @param fastScale Multiplies the measured scale factor for FAST
+     * @param intensiveScale Multiplies the measured scale factor for INTENSIVE
+     * @param tolerance Largest difference in currency units between totals that still counts as consistent
+     */
+    @Autowired
+    public OcrTierPolicy(ReceiptExtractionHelper extractor, OcrMetrics metrics,
+                         @Value("${ocr.tiers.enabled:true}") boolean enabled,
+                         @Value("${ocr.tiers.fast-scale:0.75}") double fastScale,
+                         @Value("${ocr.tiers.intensive-scale:1.25}") double intensiveScale,
+                         @Value("${ocr.tiers.tolerance:0.05}") double tolerance) {
+        this.extractor = extractor;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.fastScale = fastScale;
+        this.intensiveScale = intensiveScale;
+        this.tolerance = tolerance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public double getFastScale() {
+        return fastScale;
+    }
+
+    public double getIntensiveScale() {
+        return intensiveScale;
+    }
+
+    /**
+     * Parses the text of one tier, decides whether it can be returned without escalating and counts the outcome
+     */
+    public boolean accept(String tier, String rawText) {
+        ReceiptData data = extractor.parseReceiptText(rawText);
+        // Without a total line the parser falls back to the last amount, which a single
+        // misread item would always match. A subtotal line alone does not count either
+        boolean accepted = extractor.hasTotalLine(rawText) && isConsistent(data, tolerance);
+        logger.debug("OCR tier {} {}: {} items summing to {}, subtotal {}, total {}", tier,
+                accepted ? "accepted" : "rejected", data.getItems().size(), data.expectedSubTotal(),
+                data.getSubtotal(), data.getTotal());
+        metrics.countTier(tier, accepted);
+        return accepted;
+    }
+
+    /**
+     * Whether the parsed receipt checks out against itself: it has items and a total, and the item
+     * prices add up to the subtotal when one was printed, otherwise to the total less tax and tip
+     */
+    public static boolean isConsistent(ReceiptData data, double tolerance) {
+        if (data.getItems().isEmpty() || data.getTotal() <= 0) {
+            return false;
+        }
+        double items = data.expectedSubTotal();
+        if (data.getSubtotal() > 0) {
+            return Math.abs(items - data.getSubtotal()) <= tolerance && data.getSubtotal() <= data.getTotal() + tolerance;
+        }
+        return Math.abs(items + data.getTax() + data.getTip() - data.getTotal()) <= tolerance;
+    }
+}
@@ -0,0 +1,277 @@
+package com.splitshare.splitshare.service;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Rect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Runs OCR on long receipts as several horizontal strips in parallel, one pooled engine per strip.
+ *
+ * The preprocessed image is cut only where a whole row is blank, in the middle of the gap between
+ * two text lines, so every line lands in exactly one strip and no glyph is cut in half. The strips
+ * are views over the same pixels, nothing is copied. The calling thread always works through strips
+ * itself; helper threads join in only when they find an idle engine, so under load a request simply
+ * falls back to running its strips one after another instead of waiting on other requests' engines.
+ * The strip texts are joined in top to bottom order.
+ */
+@Component
+public class ParallelStripOcr {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelStripOcr.class);
+
+    // OCR modes a request can ask for
+    public static final String MODE_AUTO = "auto";
+    public static final String MODE_SINGLE = "single";
+    public static final String MODE_STRIPS = "strips";
+
+    // Rows with fewer dark pixels than this share of the width count as blank, which tolerates specks
+    private static final double BLANK_ROW_INK = 0.005;
+    // Gaps thinner than this are taken for the space inside a line (between accents, dots and letters)
+    private static final int MIN_GAP_ROWS = 3;
+
+    private final OcrEnginePool ocrEnginePool;
+    private final OcrMetrics metrics;
+    private final int minHeight;
+    private final int minStripHeight;
+    private final int maxStrips;
+    private final ExecutorService helpers;
+
+    /**
+     * @param minHeight Height in pixels from which auto mode cuts a preprocessed receipt into strips
+     * @param minStripHeight Smallest strip worth a Tesseract call of its own
+     * @param maxStrips Most strips per image, or 0 for one per pooled engine
+     */
+    @Autowired
+    public ParallelStripOcr(OcrEnginePool ocrEnginePool, OcrMetrics metrics,
+                            @Value("${ocr.strips.min-height:2000}") int minHeight,
+                            @Value("${ocr.strips.min-strip-height:300}") int minStripHeight,
+                            @Value("${ocr.strips.max-strips:0}") int maxStrips) {
+        this.ocrEnginePool = ocrEnginePool;
+        this.metrics = metrics;
+        this.minHeight = minHeight;
+        this.minStripHeight = Math.max(1, minStripHeight);
+        this.maxStrips = maxStrips > 0 ? maxStrips : ocrEnginePool.getSize();
+
+        // The calling thread is always one of the workers, so one helper fewer than engines is enough
+        int threads = Math.max(1, Math.min(this.maxStrips, ocrEnginePool.getSize()) - 1);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.helpers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ocr-strip-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static boolean isMode(String ocrMode) {
+        return MODE_AUTO.equals(ocrMode) || MODE_SINGLE.equals(ocrMode) || MODE_STRIPS.equals(ocrMode);
+    }
+
+    /**
+     * Runs OCR on a preprocessed grayscale image, in strips or in a single pass depending on the mode.
+     * In auto mode only tall, narrow images are cut into strips.
+     * The image must stay open until this returns.
+     */
+    public String extractText(Mat preprocessed, String ocrMode) throws Exception {
+        return extractText(preprocessed, ocrMode, false);
+    }
+
+    /**
+     * @param fast Whether the engines skip their inverted text pass, see {@link OcrEngine#extractText(Mat, boolean)}
+     */
+    public String extractText(Mat preprocessed, String ocrMode, boolean fast) throws Exception {
+        int[] cuts = null;
+        if (wantsStrips(preprocessed, ocrMode)) {
+            int strips = MODE_STRIPS.equals(ocrMode) ? Math.max(2, maxStrips) : maxStrips;
+            cuts = findCuts(preprocessed, strips, minStripHeight);
+        }
+        if (cuts == null || cuts.length <= 2) {
+            metrics.recordStrips(1);
+            return ocrEnginePool.extractText(preprocessed, fast);
+        }
+        metrics.recordStrips(cuts.length - 1);
+        return extractStrips(preprocessed, cuts, fast);
+    }
+
+    private boolean wantsStrips(Mat preprocessed, String ocrMode) {
+        if (MODE_STRIPS.equals(ocrMode)) return true;
+        if (MODE_SINGLE.equals(ocrMode)) return false;
+        return maxStrips > 1 && preprocessed.rows() >= minHeight && preprocessed.rows() >= 2 * preprocessed.cols();
+    }
+
+    /**
+     * Picks the rows a text image is cut at, each in the middle of a blank gap between text lines and
+     * as close as the gaps allow to dividing the image into equal strips.
+     *
+     * @param strips Number of strips wanted
+     * @param minStripHeight No strip is cut shorter than this
+     * @return Strip boundaries from 0 to the image height, strip i covers rows cuts[i] to cuts[i + 1].
+     *         Only 0 and the height when no suitable gap was found
+     */
+    public static int[] findCuts(Mat gray, int strips, int minStripHeight) {
+        int rows = gray.rows();
+        int[] gaps = gapCenters(gray);
+        int[] cuts = new int[Math.max(2, strips + 1)];
+        int count = 1;
+        int candidate = 0;
+        for (int strip = 1; strip < strips; strip++) {
+            int ideal = (int) ((long) rows * strip / strips);
+            int previous = cuts[count - 1];
+            int best = -1;
+            for (int i = candidate; i < gaps.length; i++) {
+                int gap = gaps[i];
+                if (gap - previous < minStripHeight) continue;
+                if (rows - gap < minStripHeight) break;
+                if (best < 0 || Math.abs(gap - ideal) < Math.abs(gaps[best] - ideal)) {
+                    best = i;
+                } else {
+                    // Gaps are sorted, so they only get further from the ideal row from here
+                    break;
+                }
+            }
+            if (best >= 0) {
+                cuts[count++] = gaps[best];
+                candidate = best + 1;
+            }
+        }
+        cuts[count++] = rows;
+        return Arrays.copyOf(cuts, count);
+    }
+
+    // Middle row of every run of blank rows at least MIN_GAP_ROWS high, top to bottom
+    private static int[] gapCenters(Mat gray) {
+        int rows = gray.rows();
+        int[] centers = new int[rows / (MIN_GAP_ROWS + 1) + 1];
+        int count = 0;
+        try (Mat ink = new Mat(); Mat profile = new Mat()) {
+            // Dark text becomes 1 and paper 0, so the row sums count the dark pixels of each row
+            opencv_imgproc.threshold(gray, ink, 0, 1, opencv_imgproc.THRESH_BINARY_INV | opencv_imgproc.THRESH_OTSU);
+            opencv_core.reduce(ink, profile, 1, opencv_core.REDUCE_SUM, opencv_core.CV_32S);
+            int blankInk = (int) (gray.cols() * BLANK_ROW_INK);
+            try (IntIndexer indexer = profile.createIndexer()) {
+                int runStart = -1;
+                for (int row = 0; row <= rows; row++) {
+                    boolean blank = row < rows && indexer.get(row, 0) <= blankInk;
+                    if (blank && runStart < 0) {
+                        runStart = row;
+                    } else if (!blank && runStart >= 0) {
+                        if (row - runStart >= MIN_GAP_ROWS) {
+                            centers[count++] = (runStart + row) / 2;
+                        }
+                        runStart = -1;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(centers, count);
+    }
+
+    private String extractStrips(Mat preprocessed, int[] cuts, boolean fast) throws Exception {
+        int strips = cuts.length - 1;
+        Mat[] views = new Mat[strips];
+        String[] texts = new String[strips];
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(strips);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            for (int i = 0; i < strips; i++) {
+                try (Rect rect = new Rect(0, cuts[i], preprocessed.cols(), cuts[i + 1] - cuts[i])) {
+                    views[i] = new Mat(preprocessed, rect);
+                }
+            }
+
+            // The caller waits for an engine like a single pass would, helpers only take idle ones
+            OcrEngine engine = ocrEnginePool.borrow();
+            try {
+                for (int i = 1; i < Math.min(strips, ocrEnginePool.getSize()); i++) {
+                    try {
+                        helpers.execute(() -> help(fast, views, texts, next, done, failure));
+                    } catch (RejectedExecutionException e) {
+                        break;
+                    }
+                }
+                work(engine, fast, views, texts, next, done, failure);
+            } finally {
+                ocrEnginePool.release(engine);
+            }
+
+            // Strips a helper already started must finish before their pixels can be released
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            for (Mat view : views) {
+                if (view != null) view.close();
+            }
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof Exception) throw (Exception) error;
+        if (error != null) throw new IllegalStateException("Strip OCR failed", error);
+
+        StringBuilder merged = new StringBuilder();
+        for (String text : texts) {
+            if (text.isBlank()) continue;
+            merged.append(text);
+            if (!text.endsWith("\n")) merged.append('\n');
+        }
+        logger.debug("OCR'd {}x{} image in {} strips", preprocessed.cols(), preprocessed.rows(), strips);
+        return merged.toString();
+    }
+
+    private void help(boolean fast, Mat[] views, String[] texts, AtomicInteger next, CountDownLatch done,
+                      AtomicReference<Throwable> failure) {
+        if (next.get() >= views.length) return;
+        OcrEngine engine = ocrEnginePool.tryBorrow();
+        if (engine == null) return;
+        try {
+            work(engine, fast, views, texts, next, done, failure);
+        } finally {
+            ocrEnginePool.release(engine);
+        }
+    }
+
+    // Takes strips off the shared counter until none are left
+    private static void work(OcrEngine engine, boolean fast, Mat[] views, String[] texts, AtomicInteger next,
+                             CountDownLatch done, AtomicReference<Throwable> failure) {
+        int i;
+        while ((i = next.getAndIncrement()) < views.length) {
+            try {
+                texts[i] = failure.get() == null ? engine.extractText(views[i], fast) : "";
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        helpers.shutdownNow();
+    }
+}
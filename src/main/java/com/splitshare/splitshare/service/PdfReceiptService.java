@@ -0,0 +1,179 @@
+package com.splitshare.splitshare.service;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Reads the text of PDF receipts.
+ *
+ * E-receipts carry their text in the PDF, so pages with a text layer are read directly and never
+ * reach Tesseract. Pages without one (scans saved as PDF) are rendered to grayscale one at a time
+ * at ocr.pdf.dpi, lowered for pages that would exceed ocr.pdf.max-page-pixels, and run through the
+ * usual OCR pipeline; each page's raster is released before the next one is rendered, so a long
+ * PDF never holds more than one page in memory.
+ */
+@Service
+public class PdfReceiptService {
+    private static final Logger logger = LoggerFactory.getLogger(PdfReceiptService.class);
+
+    private static final float POINTS_PER_INCH = 72f;
+
+    private final ImageHandlingService imageHandlingService;
+    private final NativeMemoryBudget memoryBudget;
+    private final OcrMetrics metrics;
+    private final float dpi;
+    private final long maxPagePixels;
+    private final int maxPages;
+    private final int minTextChars;
+
+    /**
+     * @param dpi Resolution scanned pages are rendered at
+     * @param maxPagePixels Pixel count a rendered page is kept under by lowering its resolution
+     * @param maxPages Pages read at most, the rest of a longer document is ignored
+     * @param minTextChars Non-blank characters a page's text layer needs to be used instead of OCR
+     */
+    @Autowired
+    public PdfReceiptService(ImageHandlingService imageHandlingService, NativeMemoryBudget memoryBudget, OcrMetrics metrics,
+                             @Value("${ocr.pdf.dpi:300}") float dpi,
+                             @Value("${ocr.pdf.max-page-pixels:20000000}") long maxPagePixels,
+                             @Value("${ocr.pdf.max-pages:20}") int maxPages,
+                             @Value("${ocr.pdf.min-text-chars:20}") int minTextChars) {
+        this.imageHandlingService = imageHandlingService;
+        this.memoryBudget = memoryBudget;
+        this.metrics = metrics;
+        this.dpi = dpi;
+        this.maxPagePixels = maxPagePixels;
+        this.maxPages = maxPages;
+        this.minTextChars = minTextChars;
+    }
+
+    /**
+     * Extracts the text of a PDF on disk. The document is parsed with its buffers in temporary files
+     * rather than on the heap.
+     *
+     * @param ocrMode OCR mode for pages without a text layer, see {@link ParallelStripOcr}
+     * @throws UnreadableImageException if the file is not a readable PDF
+     */
+    public String extractText(Path pdfFile, String ocrMode) throws Exception {
+        PDDocument document;
+        try {
+            document = PDDocument.load(pdfFile.toFile(), MemoryUsageSetting.setupTempFileOnly());
+        } catch (IOException e) {
+            throw new UnreadableImageException("Could not read PDF: " + e.getMessage());
+        }
+        try (document) {
+            return extractText(document, ocrMode);
+        }
+    }
+
+    public String extractText(byte[] pdfBytes, String ocrMode) throws Exception {
+        PDDocument document;
+        try {
+            document = PDDocument.load(pdfBytes);
+        } catch (IOException e) {
+            throw new UnreadableImageException("Could not read PDF: " + e.getMessage());
+        }
+        try (document) {
+            return extractText(document, ocrMode);
+        }
+    }
+
+    private String extractText(PDDocument document, String ocrMode) throws Exception {
+        int pages = document.getNumberOfPages();
+        if (pages == 0) {
+            throw new UnreadableImageException("PDF has no pages");
+        }
+        if (pages > maxPages) {
+            logger.warn("PDF has {} pages, reading the first {}", pages, maxPages);
+            pages = maxPages;
+        }
+
+        PDFTextStripper stripper = new PDFTextStripper();
+        // Keeps an item and its price on one line however the PDF was written
+        stripper.setSortByPosition(true);
+        PDFRenderer renderer = null;
+        StringBuilder text = new StringBuilder();
+        for (int page = 0; page < pages; page++) {
+            int pageNumber = page + 1;
+            stripper.setStartPage(pageNumber);
+            stripper.setEndPage(pageNumber);
+            String pageText = metrics.time(OcrMetrics.PDF_TEXT, OcrMetrics.NO_MODE, () -> stripper.getText(document));
+            if (hasTextLayer(pageText)) {
+                metrics.countPdfPage(true);
+            } else {
+                if (renderer == null) {
+                    renderer = new PDFRenderer(document);
+                }
+                pageText = ocrPage(document, renderer, page, ocrMode);
+                metrics.countPdfPage(false);
+            }
+            text.append(pageText);
+            if (!pageText.endsWith("\n")) {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private boolean hasTextLayer(String pageText) {
+        int characters = 0;
+        for (int i = 0; i < pageText.length() && characters < minTextChars; i++) {
+            if (!Character.isWhitespace(pageText.charAt(i))) {
+                characters++;
+            }
+        }
+        return characters >= minTextChars;
+    }
+
+    // Renders one page to grayscale and runs it through the OCR pipeline
+    private String ocrPage(PDDocument document, PDFRenderer renderer, int page, String ocrMode) throws Exception {
+        PDRectangle box = document.getPage(page).getCropBox();
+        float pageDpi = renderDpi(box.getWidth(), box.getHeight());
+        long width = Math.round(box.getWidth() * pageDpi / POINTS_PER_INCH);
+        long height = Math.round(box.getHeight() * pageDpi / POINTS_PER_INCH);
+        logger.debug("Rendering PDF page {} at {} dpi ({}x{})", page + 1, Math.round(pageDpi), width, height);
+
+        try (NativeMemoryBudget.Reservation reservation = memoryBudget.reserve(
+                     width * height * NativeMemoryBudget.PIPELINE_BYTES_PER_PIXEL);
+             PointerScope scope = new PointerScope()) {
+            Mat gray = metrics.time(OcrMetrics.PDF_RENDER, OcrMetrics.NO_MODE, () -> {
+                BufferedImage image = renderer.renderImageWithDPI(page, pageDpi, org.apache.pdfbox.rendering.ImageType.GRAY);
+                // Fresh TYPE_BYTE_GRAY images are one byte per pixel with no row padding
+                byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                Mat rendered = new Mat(image.getHeight(), image.getWidth(), opencv_core.CV_8UC1);
+                rendered.data().put(pixels);
+                return rendered;
+            });
+            // A page of a longer receipt cannot be validated on its own, only single pages go through the OCR tiers
+            boolean wholeReceipt = document.getNumberOfPages() == 1;
+            try (ImagePipelineContext context = ImagePipelineContext.ofGray(gray)) {
+                return imageHandlingService.handleImage(context, ocrMode, wholeReceipt);
+            }
+        }
+    }
+
+    // The configured resolution, lowered so the page stays under the pixel limit
+    float renderDpi(float widthPoints, float heightPoints) {
+        double pixelsAtDpi = (widthPoints * dpi / POINTS_PER_INCH) * (heightPoints * dpi / POINTS_PER_INCH);
+        if (pixelsAtDpi <= maxPagePixels) {
+            return dpi;
+        }
+        return (float) (dpi * Math.sqrt(maxPagePixels / pixelsAtDpi));
+    }
+}
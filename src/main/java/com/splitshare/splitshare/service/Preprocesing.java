@@ -4,66 +4,102 @@ package com.splitshare.splitshare.service;
 import org.bytedeco.javacv.Java2DFrameConverter;
 import org.bytedeco.javacv.OpenCVFrameConverter;
 
-import org.bytedeco.opencv.global.opencv_imgcodecs;
 import org.bytedeco.opencv.global.opencv_imgproc;
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.global.opencv_core;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 
 public class Preprocesing {
+    private static final Logger logger = LoggerFactory.getLogger(Preprocesing.class);
 
     public static BufferedImage preprocessIncreased(String inputPath) {
-        Mat image = opencv_imgcodecs.imread(inputPath, opencv_imgcodecs.IMREAD_COLOR);
-        if (image.empty()) throw new IllegalArgumentException("Could not read image: " + inputPath);
-        // Grayscale only
-        Mat gray = new Mat();
-        opencv_imgproc.cvtColor(image, gray, opencv_imgproc.COLOR_BGR2GRAY);
+        try (ImagePipelineContext context = ImagePipelineContext.read(inputPath);
+             Mat result = preprocessIncreased(context.getGray())) {
+            return matToBufferedImage(result);
+        }
+    }
+
+    public static BufferedImage preprocessMinimal(String inputPath) {
+        try (ImagePipelineContext context = ImagePipelineContext.read(inputPath);
+             Mat result = preprocessMinimal(context.getGray())) {
+            return matToBufferedImage(result);
+        }
+    }
+
+    // Scale factor used when the text size is unknown: only small images are enlarged
+    public static double legacyScale(Mat gray) {
+        return gray.cols() < 1000 && gray.rows() < 1000 ? 2 : 1;
+    }
+
+    // Expects an already decoded grayscale image, the caller closes the returned Mat
+    public static Mat preprocessIncreased(Mat gray) {
+        return preprocessIncreased(gray, legacyScale(gray));
+    }
+
+    // Resamples by the given factor, see ResolutionNormalizer. The caller closes the returned Mat
+    public static Mat preprocessIncreased(Mat gray, double scale) {
+        return preprocessIncreased(gray, scale, ImageQualityChecker.analyze(gray).getContrast());
+    }
+
+    // Uses the contrast already measured by ImageQualityChecker.analyze instead of measuring it again
+    public static Mat preprocessIncreased(Mat gray, double scale, double contrast) {
+        // Shrink first, so the filters below run on fewer pixels
+        if (scale < 1) {
+            try (Mat shrunk = scaleImage(gray, scale)) {
+                return preprocessIncreased(shrunk, 1, contrast);
+            }
+        }
         // Light blur
         Mat blurred = new Mat();
-        opencv_imgproc.GaussianBlur(gray, blurred, new Size(3, 3), 0);
-        // Contrast analysis
-        Mat mean = new Mat();
-        Mat stddev = new Mat();
-        opencv_core.meanStdDev(blurred, mean, stddev);
-        double contrast = stddev.createIndexer().getDouble(0);
+        try (Size kernel = new Size(3, 3)) {
+            opencv_imgproc.GaussianBlur(gray, blurred, kernel, 0);
+        }
         // Threshold on low contrast
         Mat result = blurred;
         if (contrast < 25) {
             Mat thresholded = new Mat();
             opencv_imgproc.adaptiveThreshold(blurred, thresholded, 255, opencv_imgproc.ADAPTIVE_THRESH_MEAN_C, opencv_imgproc.THRESH_BINARY, 15, 5);
+            blurred.close();
             result = thresholded;
         }
-        BufferedImage buffered = matToBufferedImage(result);
-        BufferedImage padded = addWhiteSpace(buffered, 20);
-        if (image.cols() < 1000 && image.rows() < 1000) {
-            return scaleImage(padded, 2);
+        Mat padded = addWhiteSpace(result, 20);
+        result.close();
+        if (scale > 1) {
+            Mat scaled = scaleImage(padded, scale);
+            padded.close();
+            return scaled;
         }
         return padded;
     }
 
-    public static BufferedImage preprocessMinimal(String inputPath) {
-        Mat image = opencv_imgcodecs.imread(inputPath, opencv_imgcodecs.IMREAD_COLOR);
-        if (image.empty()) throw new IllegalArgumentException("Could not read image: " + inputPath);
-        // Convert to grayscale
-        Mat gray = new Mat();
-        opencv_imgproc.cvtColor(image, gray, opencv_imgproc.COLOR_BGR2GRAY);
-        BufferedImage buffered = matToBufferedImage(gray);
-        // Scale ONLY if image is small
-        if (image.cols() < 1000 && image.rows() < 1000) {
-            BufferedImage padded = addWhiteSpace(buffered, 20);
-            System.out.println("Image is small, scaling up.");
-            return scaleImage(padded, 2);
+    // Expects an already decoded grayscale image, the caller closes the returned Mat
+    public static Mat preprocessMinimal(Mat gray) {
+        return preprocessMinimal(gray, legacyScale(gray));
+    }
+
+    // Resamples by the given factor, see ResolutionNormalizer. The caller closes the returned Mat
+    public static Mat preprocessMinimal(Mat gray, double scale) {
+        if (scale > 1) {
+            logger.debug("Text is small, scaling up by {}.", scale);
+            try (Mat padded = addWhiteSpace(gray, 20)) {
+                return scaleImage(padded, scale);
+            }
+        }
+        if (scale < 1) {
+            logger.debug("Text is large, scaling down by {}.", scale);
+            return scaleImage(gray, scale);
         }
-        return buffered;
+        // New header over the same pixels, so closing it leaves the caller's Mat alone
+        return new Mat(gray);
     }
-    
 
-    private static BufferedImage matToBufferedImage(Mat mat) {
+    // Only used where a BufferedImage is still needed (tests and debugging)
+    public static BufferedImage matToBufferedImage(Mat mat) {
         try (
             OpenCVFrameConverter.ToMat toMat = new OpenCVFrameConverter.ToMat();
             Java2DFrameConverter toBuffered = new Java2DFrameConverter()
@@ -72,29 +108,26 @@ public class Preprocesing {
         }
     }
 
-    // Method to scale up the image
-    private static BufferedImage scaleImage(BufferedImage originalImage, int scaleFactor) {
-        int scaledWidth = originalImage.getWidth() * scaleFactor;
-        int scaledHeight = originalImage.getHeight() * scaleFactor;
-        BufferedImage scaledImage = new BufferedImage(scaledWidth, scaledHeight, originalImage.getType());
-        Graphics2D g2d = scaledImage.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(originalImage, 0, 0, scaledWidth, scaledHeight, null);
-        g2d.dispose();
-        return scaledImage;
+    // Method to scale the image, area averaging when shrinking keeps thin strokes from breaking up
+    private static Mat scaleImage(Mat original, double scaleFactor) {
+        Mat scaled = new Mat();
+        int width = Math.max(1, (int) Math.round(original.cols() * scaleFactor));
+        int height = Math.max(1, (int) Math.round(original.rows() * scaleFactor));
+        try (Size size = new Size(width, height)) {
+            opencv_imgproc.resize(original, scaled, size, 0, 0,
+                    scaleFactor < 1 ? opencv_imgproc.INTER_AREA : opencv_imgproc.INTER_LINEAR);
+        }
+        return scaled;
     }
 
     // Method to add white space around the image
-    private static BufferedImage addWhiteSpace(BufferedImage originalImage, int padding) {
-        int paddedWidth = originalImage.getWidth() + 2 * padding;
-        int paddedHeight = originalImage.getHeight() + 2 * padding;
-        BufferedImage paddedImage = new BufferedImage(paddedWidth, paddedHeight, originalImage.getType());
-        Graphics2D g2d = paddedImage.createGraphics();
-        g2d.setColor(Color.WHITE);
-        g2d.fillRect(0, 0, paddedWidth, paddedHeight);
-        g2d.drawImage(originalImage, padding, padding, null);
-        g2d.dispose();
-        return paddedImage;
+    private static Mat addWhiteSpace(Mat original, int padding) {
+        Mat padded = new Mat();
+        try (Scalar white = new Scalar(255.0)) {
+            opencv_core.copyMakeBorder(original, padded, padding, padding, padding, padding,
+                    opencv_core.BORDER_CONSTANT, white);
+        }
+        return padded;
     }
 
 }
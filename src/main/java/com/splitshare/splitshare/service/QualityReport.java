@@ -0,0 +1,67 @@
+package com.splitshare.splitshare.service;
+
+/**
+ * Image quality measured by {@link ImageQualityChecker#analyze} on reduced copies of the image.
+ */
+public class QualityReport {
+    private final double sharpness;
+    private final double contrast;
+    private final double brightness;
+    private final double glare;
+    private final int level;
+    private final boolean blurry;
+
+    public QualityReport(double sharpness, double contrast, double brightness, double glare, int level, boolean blurry) {
+        this.sharpness = sharpness;
+        this.contrast = contrast;
+        this.brightness = brightness;
+        this.glare = glare;
+        this.level = level;
+        this.blurry = blurry;
+    }
+
+    /**
+     * @return Variance of the Laplacian on the half size image, higher is sharper
+     */
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    /**
+     * @return Standard deviation of the gray levels
+     */
+    public double getContrast() {
+        return contrast;
+    }
+
+    /**
+     * @return Mean gray level, 0 to 255
+     */
+    public double getBrightness() {
+        return brightness;
+    }
+
+    /**
+     * @return Share of pixels blown out to near white, 0 to 1
+     */
+    public double getGlare() {
+        return glare;
+    }
+
+    /**
+     * @return Pyramid level contrast, brightness and glare were measured at, 0 for full resolution, each level halves the size
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isBlurry() {
+        return blurry;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("sharpness=%.1f contrast=%.1f brightness=%.1f glare=%.3f level=%d blurry=%s",
+                sharpness, contrast, brightness, glare, level, blurry);
+    }
+}
@@ -3,7 +3,6 @@ package com.splitshare.splitshare.service;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -19,14 +18,52 @@ import com.splitshare.splitshare.dto.ReceiptItem;
 @Service
 public class ReceiptExtractionHelper {
     private static final Logger logger = LoggerFactory.getLogger(ReceiptExtractionHelper.class);
+    // Bump whenever parsing rules change, cached results are then parsed again
+    public static final int PARSER_VERSION = 1;
     // Pattern 1: Qty + Item Name + Price
-    private final static String QTY_NAME_PRICE = "(?i)(\\d+)\\s+([A-Za-z &]+?)\\s+\\$?((?:\\d+)?\\.\\d{2}|\\d{1,4})\\b";
+    private final static Pattern QTY_NAME_PRICE = Pattern.compile("(?i)(\\d+)\\s+([A-Za-z &]+?)\\s+\\$?((?:\\d+)?\\.\\d{2}|\\d{1,4})\\b");
 
     // Pattern 2: Just Item Name + Price
-    private final static String NAME_PRICE = "(?i)([A-Za-z &]+?)\\s+\\$?((?:\\d+)?\\.\\d{2}|\\d{1,4})\\b";
+    private final static Pattern NAME_PRICE = Pattern.compile("(?i)([A-Za-z &]+?)\\s+\\$?((?:\\d+)?\\.\\d{2}|\\d{1,4})\\b");
+
+    // Common date patterns used in receipts, tried in this order
+    // The patterns account for variations in separators and digit counts
+    private final static Pattern[] DATE_PATTERNS = {
+            // MM/DD/YYYY format (e.g., 05/12/2023)
+            Pattern.compile("(0?[1-9]|1[0-2])/(0?[1-9]|[12][0-9]|3[01])/([0-9]{4})"),
+
+            // DD-MM-YYYY format (e.g., 12-05-2023)
+            Pattern.compile("(0?[1-9]|[12][0-9]|3[01])-(0?[1-9]|1[0-2])-([0-9]{4})"),
+
+            // DD/MM/YYYY format (e.g., 12/05/2023)
+            Pattern.compile("(0?[1-9]|[12][0-9]|3[01])/(0?[1-9]|1[0-2])/([0-9]{4})"),
+
+            // YYYY-MM-DD format (e.g., 2023-05-12)
+            Pattern.compile("([0-9]{4})-(0?[1-9]|1[0-2])-(0?[1-9]|[12][0-9]|3[01])")
+    };
+    // Separator each date pattern needs, used to skip lines that cannot hold that date
+    private final static char[] DATE_SEPARATORS = {'/', '-', '/', '-'};
+
+    // Date format parsers corresponding to each pattern above, SimpleDateFormat is not thread safe
+    private final static ThreadLocal<SimpleDateFormat[]> DATE_FORMATS = ThreadLocal.withInitial(() -> new SimpleDateFormat[] {
+            new SimpleDateFormat("MM/dd/yyyy"),
+            new SimpleDateFormat("dd-MM-yyyy"),
+            new SimpleDateFormat("dd/MM/yyyy"),
+            new SimpleDateFormat("yyyy-MM-dd")
+    });
+
+    // Words that mark a line as not being a purchased item
+    // ("sub total" and "sales tax" are covered by "total" and "tax")
+    private final static String[] NON_ITEM_KEYWORDS = {
+            "total", "tax", "tip", "gratuity", "authorization", "payment", "card reader",
+            "visa", "mastercard", "transaction", "order", "host"
+    };
+
     /**
      * Main method for parsing raw OCR text into structured receipt data.
-     * Coordinates the extraction of different receipt components.
+     * The text is walked once: every line is classified as header, date, item or
+     * non-item line, and keyword amounts (total, subtotal, tax, tip) are read while
+     * passing over their keyword.
      *
      * @param rawText The raw text extracted by OCR
      * @return A ReceiptData object containing structured information
@@ -38,254 +75,153 @@ public class ReceiptExtractionHelper {
         // Different receipt components are often on different lines
         String[] lines = rawText.split("\n");
 
-        // Extract store name (usually found in the first few lines of a receipt)
-        receiptData.setStoreName(extractStoreName(lines));
-
-        // Extract transaction date (using various date formats commonly found on receipts)
-        receiptData.setDate(extractDate(rawText));
-
-        // Extract the total amount paid (usually contains "total" keyword)
-        receiptData.setTotal(extractTotal(rawText));
-
-        // Extract individual items purchased (the most complex part)
-        receiptData.setItems(extractItems(lines));
-
-        receiptData.setSubtotal(extractSubtotal(rawText));
-        receiptData.setTax(extractTax(rawText));
-        receiptData.setTip(extractTip(rawText));
+        AmountScanner amounts = new AmountScanner(rawText);
+        String storeName = null;
+        String[] dateMatches = new String[DATE_PATTERNS.length];
+        List<ReceiptItem> items = new ArrayList<>();
+        Matcher qtyMatcher = QTY_NAME_PRICE.matcher("");
+        Matcher namePriceMatcher = NAME_PRICE.matcher("");
+
+        int offset = 0;
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            String lower = line.toLowerCase();
+
+            // Amount keywords may be followed by their value on the next line,
+            // so they are read from the full text at this line's position
+            amounts.scan(offset, offset + line.length());
+
+            // Store name: the first of the first five lines without digits, total or tax
+            if (storeName == null && i < 5) {
+                String header = line.trim();
+                if (isStoreNameLine(header, lower)) {
+                    storeName = header;
+                }
+            }
 
-        return receiptData;
-    }
+            // Transaction date candidates, first match of each pattern
+            findDates(line, dateMatches);
 
-    private double extractSubtotal(String text) {
-        Pattern pattern = Pattern.compile("(?i)sub\\s*total[:\\s]*[€$]?([0-9]+\\.[0-9]{2})");
-        Matcher matcher = pattern.matcher(text);
-        
-        double subtotal = 0.0;
-        while (matcher.find()) {
-            try {
-                subtotal = Double.parseDouble(matcher.group(1));
-            } catch (NumberFormatException e) {
-                logger.warn("Could not parse subtotal from: {}", matcher.group(1));
+            // Individual items purchased (the most complex part)
+            // Skip lines that are likely not items
+            // This includes empty lines, subtotal/total lines, and date lines
+            if (!line.isEmpty() && !isDateLine(line) && !isNonItemLine(lower)) {
+                ReceiptItem item = parseItem(line, qtyMatcher, namePriceMatcher);
+                if (item != null) {
+                    items.add(item);
+                }
             }
+
+            offset += line.length() + 1;
         }
-        return subtotal;
-    }
 
-    private double extractTax(String text) {
-        Pattern pattern = Pattern.compile("(?i)(sales\\s*)?tax[:\\s]*[€$]?([0-9]+\\.[0-9]{2})");
-        Matcher matcher = pattern.matcher(text);
+        // If no suitable line found, use default value
+        receiptData.setStoreName(storeName != null ? storeName : "Unknown Store");
+        receiptData.setDate(parseDate(dateMatches));
+        receiptData.setTotal(amounts.getTotal());
+        receiptData.setItems(items);
+        receiptData.setSubtotal(amounts.getSubtotal());
+        receiptData.setTax(amounts.getTax());
+        receiptData.setTip(amounts.getTip());
 
-        double totalTax = 0.0;
-        while (matcher.find()) {
-            try {
-                totalTax += Double.parseDouble(matcher.group(2));
-            } catch (NumberFormatException e) {
-                logger.warn("Could not parse tax from: {}", matcher.group(2));
-            }
-        }
-        return totalTax;
-    }
-    
-    private double extractTip(String text) {
-        Pattern pattern = Pattern.compile("(?i)(tip|gratuity|t\\s*1\\s*p)[:\\s]*\\$?([0-9]+\\.[0-9]{2})");
-        return extractAmountFromText(pattern, text, 2);
+        return receiptData;
     }
 
-    private double extractAmountFromText(Pattern pattern, String text, int group) {
-        Matcher matcher = pattern.matcher(text);
-        if (matcher.find()) {
-            try {
-                return Double.parseDouble(matcher.group(group));
-            } catch (NumberFormatException e) {
-                logger.warn("Could not parse amount from: {}", matcher.group(group));
-            }
-        }
-        return 0.0;
+    /**
+     * Whether the text prints a total of its own. Totals are matched the way the parser matches them,
+     * but the "total" in "subtotal" or "sub total", which the parser's total pattern also matches, does not count.
+     */
+    public boolean hasTotalLine(String rawText) {
+        AmountScanner amounts = new AmountScanner(rawText);
+        amounts.scan(0, rawText.length());
+        return amounts.hasStandaloneTotal();
     }
 
-
     /**
-     * Extracts the store name from the receipt text.
+     * Checks whether a header line can be the store name.
      * Store names are typically found in the header, within the first few lines.
+     * Skips date lines, lines that just contain a price and lines with any number.
+     * In production, this could be enhanced with a database of known store names
      *
-     * @param lines Array of text lines from the receipt
-     * @return The extracted store name or "Unknown Store" if not found
+     * @param line The trimmed line
+     * @param lower The lower-cased line (surrounding whitespace does not change the keyword checks)
      */
-    private String extractStoreName(String[] lines) {
-        if (lines.length == 0) return "Unknown Store";
-
-        // Strategy: Check the first few lines (typically header contains store info)
-        // Skip lines that look like dates or just prices
-        // In production, this could be enhanced with a database of known store names
-        for (int i = 0; i < Math.min(5, lines.length); i++) {
-            String line = lines[i].trim();
-            // Skip empty lines, date lines, or lines that just contain a price
-             if (!isDateLine(line) &&
+    private boolean isStoreNameLine(String line, String lower) {
+        return !isDateLine(line) &&
                 !isPriceLine(line) &&
-                !line.toLowerCase().contains("total") &&
-                !line.toLowerCase().contains("tax") &&
-                !line.matches(".*\\d+(\\.\\d{2})?.*")) {
-                return line;
+                !lower.contains("total") &&
+                !lower.contains("tax") &&
+                // Same as line.matches(".*\\d+(\\.\\d{2})?.*"), which cannot match across a line terminator
+                !(hasDigit(line) && !hasLineTerminator(line));
+    }
+
+    private void findDates(String line, String[] dateMatches) {
+        for (int p = 0; p < DATE_PATTERNS.length; p++) {
+            if (dateMatches[p] != null || line.indexOf(DATE_SEPARATORS[p]) < 0) continue;
+            Matcher matcher = DATE_PATTERNS[p].matcher(line);
+            if (matcher.find()) {
+                dateMatches[p] = matcher.group();
             }
         }
-
-        // If no suitable line found, return default value
-        return "Unknown Store";
     }
 
     /**
-     * Extracts the transaction date from the receipt text.
-     * Looks for common date formats found on receipts.
+     * Parses the transaction date from the first match of each date pattern.
+     * Date patterns never span lines, so the first match on a line is the first match in the text.
      *
-     * @param rawText The complete raw text from the receipt
      * @return The parsed date or current date if no date found
      */
-    private Date extractDate(String rawText) {
-        // Define common date patterns used in receipts
-        // The patterns account for variations in separators and digit counts
-        List<Pattern> datePatterns = Arrays.asList(
-                // MM/DD/YYYY format (e.g., 05/12/2023)
-                Pattern.compile("(0?[1-9]|1[0-2])/(0?[1-9]|[12][0-9]|3[01])/([0-9]{4})"),
-
-                // DD-MM-YYYY format (e.g., 12-05-2023)
-                Pattern.compile("(0?[1-9]|[12][0-9]|3[01])-(0?[1-9]|1[0-2])-([0-9]{4})"),
-
-                // DD/MM/YYYY format (e.g., 12/05/2023)
-                Pattern.compile("(0?[1-9]|[12][0-9]|3[01])/(0?[1-9]|1[0-2])/([0-9]{4})"),
-
-                // YYYY-MM-DD format (e.g., 2023-05-12)
-                Pattern.compile("([0-9]{4})-(0?[1-9]|1[0-2])-(0?[1-9]|[12][0-9]|3[01])")
-        );
-
-        // Define date format parsers corresponding to each pattern above
-        List<SimpleDateFormat> dateFormats = Arrays.asList(
-                new SimpleDateFormat("MM/dd/yyyy"),
-                new SimpleDateFormat("dd-MM-yyyy"),
-                new SimpleDateFormat("dd/MM/yyyy"),
-                new SimpleDateFormat("yyyy-MM-dd")
-        );
+    private Date parseDate(String[] dateMatches) {
+        SimpleDateFormat[] dateFormats = DATE_FORMATS.get();
         // Try each pattern in sequence
-        for (int i = 0; i < datePatterns.size(); i++) {
-            Matcher matcher = datePatterns.get(i).matcher(rawText);
-            if (matcher.find()) {
-                try {
-                    // If pattern matches, attempt to parse it with the corresponding format
-                    return dateFormats.get(i).parse(matcher.group());
-                } catch (ParseException e) {
-                    // Log warning if date format is recognized but parsing fails
-                    logger.warn("Found date pattern but couldn't parse date: {}", matcher.group());
-                }
+        for (int i = 0; i < dateMatches.length; i++) {
+            if (dateMatches[i] == null) continue;
+            try {
+                // If pattern matches, attempt to parse it with the corresponding format
+                return dateFormats[i].parse(dateMatches[i]);
+            } catch (ParseException e) {
+                // Log warning if date format is recognized but parsing fails
+                logger.warn("Found date pattern but couldn't parse date: {}", dateMatches[i]);
             }
         }
         // Default to current date if no valid date found in the receipt
         // In a production app, you might want to require manual entry instead
         return new Date();
     }
+
     /**
-     * Extracts the total amount from the receipt text.
-     * Looks for "total" keyword followed by a numeric value.
-     * Falls back to searching for the largest dollar amount if "total" pattern fails.
+     * Extracts a purchased item from a single line.
      *
-     * @param rawText The complete raw text from the receipt
-     * @return The extracted total amount as a double
+     * @return The item, or null if the line does not look like one
      */
-    private double extractTotal(String rawText) {
-        // First strategy: Look for variations of "total" followed by a price
-        // This handles formats like "TOTAL $XX.XX", "TOTAL: $XX.XX", etc.
-        // The (?i) makes the pattern case-insensitive
-        Pattern totalPattern = Pattern.compile("(?i)total\\s*[:€$]?\\s*\\$?([0-9]+\\.[0-9]{2})");
-
-        Matcher matcher = totalPattern.matcher(rawText);
-
+    private ReceiptItem parseItem(String line, Matcher qtyMatcher, Matcher namePriceMatcher) {
+        // qty & name & price
+        Matcher matcher = qtyMatcher.reset(line);
         if (matcher.find()) {
+            String itemName = matcher.group(2).trim();
+            Double price = safeParsePrice(matcher.group(3));
             try {
-                // Extract and parse the numeric part
-                return Double.parseDouble(matcher.group(1));
-            } catch (NumberFormatException e) {
-                logger.warn("Found total pattern but couldn't parse amount: {}", matcher.group(1));
-            }
-        }
-        // Second strategy (fallback): Find the largest dollar amount
-        // This assumes the total is likely the largest monetary value on the receipt
-        // This is less reliable but can work when the "total" keyword is not recognized
-        Pattern pricePattern = Pattern.compile("\\$?([0-9]+\\.[0-9]{2})");
-        matcher = pricePattern.matcher(rawText);
-
-        double lastMatch = 0.0;
-        while (matcher.find()) {
-            try {
-                lastMatch = Double.parseDouble(matcher.group(1));
+                int quantity = Integer.parseInt(matcher.group(1));
+                if (price != null && !itemName.isEmpty() && price > 0 && price < 1000 && quantity > 0) {
+                    return new ReceiptItem(itemName, price, quantity);
+                }
             } catch (NumberFormatException e) {
-                logger.warn("Failed to parse total amount: {}", matcher.group(1));
+                logger.warn("Failed to parse quantity: {}", matcher.group(1));
             }
         }
-        return lastMatch;
-    }
-    /**
-     * Extracts individual purchased items from the receipt text.
-     * This is the most complex extraction due to variations in receipt formats.
-     *
-     * @param lines Array of text lines from the receipt
-     * @return List of ReceiptItem objects representing individual purchases
-     */
-    private List<ReceiptItem> extractItems(String[] lines) {
-        List<ReceiptItem> items = new ArrayList<>();
-
-        
-        // Pattern 1: Qty + Item Name + Price
-        Pattern qtyPattern = Pattern.compile(QTY_NAME_PRICE);
-
-
-        // Pattern 2: Just Item Name + Price
-        Pattern namePricePattern = Pattern.compile(NAME_PRICE);
 
-        // Skip the header and footer lines
-        // Items are typically in the middle section of a receipt
-        // This is a heuristic approach - real receipts vary greatly
-        // int startLine = Math.min(5, lines.length / 4);
-        // int endLine = Math.max(lines.length - 5, lines.length * 3 / 4);
-
-        // for (int i = startLine; i < endLine; i++) {
-        //     String line = lines[i].trim();
-        for (String line : lines) {
-            line.trim();
-            // Skip lines that are likely not items
-            // This includes empty lines, subtotal/total lines, and date lines
-            if (line.isEmpty()) continue;
-            if (line.isEmpty() || isDateLine(line) || isNonItemLine(line)) continue;
-
-            
-            Matcher matcher = qtyPattern.matcher(line);
-            // qty & name & price
-            if (matcher.find()) {
-                String itemName = matcher.group(2).trim();
-                Double price = safeParsePrice(matcher.group(3));
-                try {
-                    int quantity = Integer.parseInt(matcher.group(1));
-                    if (price != null && !itemName.isEmpty() && price > 0 && price < 1000 && quantity > 0) {
-                        items.add(new ReceiptItem(itemName, price, quantity));
-                        continue;
-                    }
-                } catch (NumberFormatException e) {
-                    logger.warn("Failed to parse quantity: {}", matcher.group(1));
-                }
-            }
-            
-            //Name & Price 
-            matcher = namePricePattern.matcher(line);
-            if (matcher.find()) {
-                String itemName = matcher.group(1).trim();
-                Double price = safeParsePrice(matcher.group(2));
-                // Basic validation to filter out non-item entries
-                // Items should have a non-empty name and reasonable price
-                if (price != null && !itemName.isEmpty() && price > 0 && price < 1000) {
-                    items.add(new ReceiptItem(itemName, price, 1));
-                }
+        //Name & Price
+        matcher = namePriceMatcher.reset(line);
+        if (matcher.find()) {
+            String itemName = matcher.group(1).trim();
+            Double price = safeParsePrice(matcher.group(2));
+            // Basic validation to filter out non-item entries
+            // Items should have a non-empty name and reasonable price
+            if (price != null && !itemName.isEmpty() && price > 0 && price < 1000) {
+                return new ReceiptItem(itemName, price, 1);
             }
         }
-
-        return items;
+        return null;
     }
 
     private Double safeParsePrice(String raw) {
@@ -304,35 +240,324 @@ public class ReceiptExtractionHelper {
         return null;
     }
 
-    //helper method for extractItems
-    private boolean isNonItemLine(String line) {
-        String lower = line.toLowerCase();
-        return lower.matches(".*(sub\\s*total|total|tax|sales[-\\s]*tax|tip|gratuity|authorization|payment|card reader|visa|mastercard|transaction|order|host).*");
+    //helper method for item lines
+    private boolean isNonItemLine(String lower) {
+        int firstCr = -1;
+        int lastCr = -1;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (c == '\r') {
+                if (firstCr < 0) firstCr = i;
+                lastCr = i;
+            } else if (isLineTerminator(c)) {
+                return false;
+            }
+        }
+        if (firstCr < 0) {
+            for (String keyword : NON_ITEM_KEYWORDS) {
+                if (lower.contains(keyword)) return true;
+            }
+            return false;
+        }
+        // The old ".*(...).*" regex cannot step over '\r' except inside the whitespace of
+        // "sub total" or "sales tax", keep that behaviour so parsed results do not change
+        return keywordGapCovers(lower, firstCr, lastCr, "sub", "total", false)
+                || keywordGapCovers(lower, firstCr, lastCr, "sales", "tax", true);
+    }
+
+    private boolean keywordGapCovers(String lower, int first, int last, String before, String after, boolean allowDash) {
+        for (int i = first; i <= last; i++) {
+            if (!isGapChar(lower.charAt(i), allowDash)) return false;
+        }
+        int start = first;
+        while (start > 0 && isGapChar(lower.charAt(start - 1), allowDash)) start--;
+        int end = last + 1;
+        while (end < lower.length() && isGapChar(lower.charAt(end), allowDash)) end++;
+        return start >= before.length() && lower.startsWith(before, start - before.length()) && lower.startsWith(after, end);
+    }
+
+    private static boolean isGapChar(char c, boolean allowDash) {
+        return isRegexSpace(c) || (allowDash && c == '-');
     }
 
     /**
      * Utility method to check if a line contains a date.
      * Used to filter out date lines when looking for store names and items.
+     * Detects patterns like MM/DD/YYYY, DD-MM-YYYY, etc. (digits{1,2} [/-] digits{1,2} [/-] digits{2,4})
      *
      * @param line A single line of text from the receipt
      * @return true if the line appears to contain a date
      */
     private boolean isDateLine(String line) {
-        // Basic regex to detect common date formats with digits and separators
-        // This detects patterns like MM/DD/YYYY, DD-MM-YYYY, etc.
-        return line.matches(".*\\d{1,2}[/-]\\d{1,2}[/-]\\d{2,4}.*");
+        if (hasLineTerminator(line)) return false;
+        int length = line.length();
+        for (int sep = 1; sep < length; sep++) {
+            if (!isDateSeparator(line.charAt(sep)) || !isDigit(line.charAt(sep - 1))) continue;
+            // one or two digits between the separators
+            int next = sep + 1;
+            while (next < length && next - sep <= 3 && isDigit(line.charAt(next))) next++;
+            int middleDigits = next - sep - 1;
+            if (middleDigits < 1 || middleDigits > 2 || next >= length || !isDateSeparator(line.charAt(next))) continue;
+            // at least two digits for the year
+            if (next + 2 < length && isDigit(line.charAt(next + 1)) && isDigit(line.charAt(next + 2))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Utility method to check if a line contains only a price.
      * Used to filter out price-only lines when looking for store names.
+     * This matches formats like "$12.34" or "12.34"
      *
      * @param line A single line of text from the receipt
      * @return true if the line appears to contain only a price
      */
     private boolean isPriceLine(String line) {
-        // Regex to detect lines that contain just a dollar amount
-        // This matches formats like "$12.34" or "12.34"
-        return line.matches("\\s*\\$?\\d+\\.\\d{2}\\s*");
+        int start = 0;
+        int end = line.length();
+        while (start < end && isRegexSpace(line.charAt(start))) start++;
+        while (end > start && isRegexSpace(line.charAt(end - 1))) end--;
+        if (start < end && line.charAt(start) == '$') start++;
+        return AmountScanner.readDecimal(line, start) == end;
+    }
+
+    private static boolean hasDigit(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (isDigit(line.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    // Characters the regex '.' does not match
+    private static boolean hasLineTerminator(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (isLineTerminator(line.charAt(i))) return true;
+        }
+        return false;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isDateSeparator(char c) {
+        return c == '/' || c == '-';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Same characters as the regex \s
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Reads keyword amounts while the parser walks the text.
+     * Matches the same text as the former regexes, case-insensitive for ASCII letters:
+     * <ul>
+     *     <li>total: {@code total\s*[:€$]?\s*\$?([0-9]+\.[0-9]{2})}, first match, falling back to the last plain price</li>
+     *     <li>subtotal: {@code sub\s*total[:\s]*[€$]?([0-9]+\.[0-9]{2})}, last match</li>
+     *     <li>tax: {@code (sales\s*)?tax[:\s]*[€$]?([0-9]+\.[0-9]{2})}, sum of all matches</li>
+     *     <li>tip: {@code (tip|gratuity|t\s*1\s*p)[:\s]*\$?([0-9]+\.[0-9]{2})}, first match</li>
+     * </ul>
+     * Whitespace after a keyword may include line breaks, so amounts are read from the full text.
+     */
+    private static final class AmountScanner {
+        private final String text;
+
+        private int totalStart = -1, totalEnd;
+        private int subtotalStart = -1, subtotalEnd;
+        private int tipStart = -1, tipEnd;
+        private int priceStart = -1, priceEnd;
+        private double tax;
+        // Whether a total match was not the end of a subtotal keyword
+        private boolean standaloneTotal;
+
+        // Where the next match may start, matches of one kind never overlap
+        private int subtotalResume, taxResume, priceResume;
+
+        AmountScanner(String text) {
+            this.text = text;
+        }
+
+        void scan(int from, int to) {
+            for (int p = from; p < to; p++) {
+                char c = text.charAt(p);
+                if (p >= priceResume) {
+                    // Fallback: plain prices, "$12.34" or "12.34"
+                    int start = c == '$' ? p + 1 : p;
+                    int end = readDecimal(text, start);
+                    if (end > 0) {
+                        priceStart = start;
+                        priceEnd = end;
+                        priceResume = end;
+                    }
+                }
+                if (isLetter(c, 't')) {
+                    if ((totalStart < 0 || !standaloneTotal) && startsWithIgnoreCase(p, "total")) {
+                        readTotal(p);
+                    }
+                    if (p >= taxResume && startsWithIgnoreCase(p, "tax")) {
+                        readTax(p + 3);
+                    }
+                    if (tipStart < 0) {
+                        readTip(tipKeywordEnd(p));
+                    }
+                } else if (isLetter(c, 's')) {
+                    if (p >= subtotalResume && startsWithIgnoreCase(p, "sub")) {
+                        int q = skipSpaces(p + 3);
+                        if (startsWithIgnoreCase(q, "total")) {
+                            readSubtotal(q + 5);
+                        }
+                    }
+                } else if (isLetter(c, 'g')) {
+                    if (tipStart < 0 && startsWithIgnoreCase(p, "gratuity")) {
+                        readTip(p + 8);
+                    }
+                }
+            }
+        }
+
+        private void readTotal(int keyword) {
+            int p = skipSpaces(keyword + 5);
+            if (p < text.length() && (text.charAt(p) == ':' || text.charAt(p) == '€' || text.charAt(p) == '$')) p++;
+            p = skipSpaces(p);
+            if (p < text.length() && text.charAt(p) == '$') p++;
+            int end = readDecimal(text, p);
+            if (end > 0) {
+                if (totalStart < 0) {
+                    totalStart = p;
+                    totalEnd = end;
+                }
+                standaloneTotal |= !followsSub(keyword);
+            }
+        }
+
+        // Whether "sub" and optional whitespace come right before p
+        private boolean followsSub(int p) {
+            while (p > 0 && isRegexSpace(text.charAt(p - 1))) p--;
+            return p >= 3 && startsWithIgnoreCase(p - 3, "sub");
+        }
+
+        private void readSubtotal(int p) {
+            p = skipColonsAndSpaces(p);
+            if (p < text.length() && (text.charAt(p) == '€' || text.charAt(p) == '$')) p++;
+            int end = readDecimal(text, p);
+            if (end > 0) {
+                subtotalStart = p;
+                subtotalEnd = end;
+                subtotalResume = end;
+            }
+        }
+
+        private void readTax(int p) {
+            p = skipColonsAndSpaces(p);
+            if (p < text.length() && (text.charAt(p) == '€' || text.charAt(p) == '$')) p++;
+            int end = readDecimal(text, p);
+            if (end > 0) {
+                String amount = text.substring(p, end);
+                try {
+                    tax += Double.parseDouble(amount);
+                } catch (NumberFormatException e) {
+                    logger.warn("Could not parse tax from: {}", amount);
+                }
+                taxResume = end;
+            }
+        }
+
+        private void readTip(int p) {
+            if (p < 0) return;
+            p = skipColonsAndSpaces(p);
+            if (p < text.length() && text.charAt(p) == '$') p++;
+            int end = readDecimal(text, p);
+            if (end > 0) {
+                tipStart = p;
+                tipEnd = end;
+            }
+        }
+
+        // "tip" or "t 1 p" (OCR often reads the i as a 1), returns -1 if neither is at p
+        private int tipKeywordEnd(int p) {
+            if (startsWithIgnoreCase(p, "tip")) return p + 3;
+            int q = skipSpaces(p + 1);
+            if (q >= text.length() || text.charAt(q) != '1') return -1;
+            q = skipSpaces(q + 1);
+            return q < text.length() && isLetter(text.charAt(q), 'p') ? q + 1 : -1;
+        }
+
+        double getTotal() {
+            if (totalStart >= 0) {
+                return parse(totalStart, totalEnd, "Found total pattern but couldn't parse amount: {}");
+            }
+            // Fallback: the last dollar amount on the receipt
+            // This is less reliable but can work when the "total" keyword is not recognized
+            return priceStart >= 0 ? parse(priceStart, priceEnd, "Failed to parse total amount: {}") : 0.0;
+        }
+
+        boolean hasStandaloneTotal() {
+            return standaloneTotal;
+        }
+
+        double getSubtotal() {
+            return subtotalStart >= 0 ? parse(subtotalStart, subtotalEnd, "Could not parse subtotal from: {}") : 0.0;
+        }
+
+        double getTax() {
+            return tax;
+        }
+
+        double getTip() {
+            return tipStart >= 0 ? parse(tipStart, tipEnd, "Could not parse amount from: {}") : 0.0;
+        }
+
+        private double parse(int start, int end, String warning) {
+            String amount = text.substring(start, end);
+            try {
+                return Double.parseDouble(amount);
+            } catch (NumberFormatException e) {
+                logger.warn(warning, amount);
+                return 0.0;
+            }
+        }
+
+        private int skipSpaces(int p) {
+            while (p < text.length() && isRegexSpace(text.charAt(p))) p++;
+            return p;
+        }
+
+        private int skipColonsAndSpaces(int p) {
+            while (p < text.length() && (text.charAt(p) == ':' || isRegexSpace(text.charAt(p)))) p++;
+            return p;
+        }
+
+        private boolean startsWithIgnoreCase(int p, String lowerKeyword) {
+            if (p + lowerKeyword.length() > text.length()) return false;
+            for (int i = 0; i < lowerKeyword.length(); i++) {
+                if (!isLetter(text.charAt(p + i), lowerKeyword.charAt(i))) return false;
+            }
+            return true;
+        }
+
+        // Case-insensitive for ASCII only, like (?i) without UNICODE_CASE
+        private static boolean isLetter(char c, char lower) {
+            return c == lower || c == (char) (lower - 32);
+        }
+
+        /**
+         * Reads [0-9]+\.[0-9]{2} starting exactly at p
+         *
+         * @return The index after the amount, or -1 if there is none at p
+         */
+        static int readDecimal(String s, int p) {
+            int i = p;
+            while (i < s.length() && isDigit(s.charAt(i))) i++;
+            if (i == p || i + 2 >= s.length()) return -1;
+            if (s.charAt(i) != '.' || !isDigit(s.charAt(i + 1)) || !isDigit(s.charAt(i + 2))) return -1;
+            return i + 3;
+        }
     }
 }
@@ -0,0 +1,275 @@
+package com.splitshare.splitshare.service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.dto.ReceiptPage;
+import com.splitshare.splitshare.dto.ReceiptSummary;
+
+/**
+ * Per-user index of stored receipts, newest first, so a user's receipt list can be paged
+ * without reading every receipt.
+ *
+ * Each user's index is an append-only journal of JSON lines under receipt.storage.path/index,
+ * loaded into memory the first time the user is seen. Later lines for the same receipt replace
+ * earlier ones, and the journal is rewritten on load once it is mostly superseded lines.
+ * A receipt is indexed before its record is written, so a crash in between can leave an entry
+ * without a record but never a record without an entry; such entries are dropped on load.
+ * Users without a journal are indexed once from what the {@link ReceiptStore} already holds.
+ */
+@Component
+public class ReceiptIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptIndex.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final Path indexDir;
+    private final ReceiptStore store;
+    private final Map<Long, UserIndex> users = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ReceiptIndex(@Value("${receipt.storage.path:/tmp/receipts}") String storageBasePath, ReceiptStore store) {
+        this.indexDir = Paths.get(storageBasePath, "index");
+        this.store = store;
+    }
+
+    /**
+     * Adds a receipt that is about to be stored
+     */
+    public void add(Long userId, String receiptId, ReceiptData receiptData) {
+        user(userId).put(new ReceiptSummary(receiptId, receiptData, new Date()), true);
+    }
+
+    /**
+     * Takes back an entry whose record could not be written. Its journal line stays
+     * until the next load, which drops it because the record is missing.
+     */
+    public void remove(Long userId, String receiptId) {
+        user(userId).remove(receiptId);
+    }
+
+    /**
+     * Refreshes the entry of an updated receipt, keeping its place in the list
+     */
+    public void update(Long userId, String receiptId, ReceiptData receiptData) {
+        UserIndex index = user(userId);
+        synchronized (index) {
+            ReceiptSummary existing = index.byId.get(receiptId);
+            Date createdAt = existing != null ? existing.getCreatedAt() : new Date();
+            index.put(new ReceiptSummary(receiptId, receiptData, createdAt), true);
+        }
+    }
+
+    /**
+     * Returns the receipts that come after the cursor, newest first.
+     * Costs O(log n + limit) regardless of how many receipts the user has.
+     *
+     * @param cursor nextCursor of the previous page, or null for the first page
+     * @param limit Page size, between 1 and {@link #MAX_PAGE_SIZE}
+     * @throws IllegalArgumentException if the cursor cannot be decoded
+     */
+    public ReceiptPage page(Long userId, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        UserIndex index = user(userId);
+        Map<Position, ReceiptSummary> remaining = cursor == null || cursor.isEmpty()
+                ? index.ordered
+                : index.ordered.tailMap(Position.decode(cursor), false);
+
+        List<ReceiptSummary> receipts = new ArrayList<>(limit);
+        Iterator<Map.Entry<Position, ReceiptSummary>> it = remaining.entrySet().iterator();
+        Position last = null;
+        while (receipts.size() < limit && it.hasNext()) {
+            Map.Entry<Position, ReceiptSummary> entry = it.next();
+            receipts.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new ReceiptPage(receipts, it.hasNext() ? last.encode() : null);
+    }
+
+    private UserIndex user(Long userId) {
+        return users.computeIfAbsent(userId, this::load);
+    }
+
+    private UserIndex load(Long userId) {
+        UserIndex index = new UserIndex(indexDir.resolve(userId + ".ndjson"));
+        try {
+            if (Files.exists(index.journal)) {
+                int lines = 0;
+                boolean damaged = false;
+                for (String line : Files.readAllLines(index.journal, StandardCharsets.UTF_8)) {
+                    if (line.isEmpty()) continue;
+                    try {
+                        index.put(mapper.readValue(line, ReceiptSummary.class), false);
+                        lines++;
+                    } catch (IOException e) {
+                        // A torn last line from a crash mid-append
+                        logger.warn("Skipping unreadable line in receipt index {}", index.journal);
+                        damaged = true;
+                    }
+                }
+                // Entries of receipts whose record was never written, e.g. after a crash mid-store
+                int orphans = 0;
+                for (String receiptId : new ArrayList<>(index.byId.keySet())) {
+                    if (!store.hasData(userId, receiptId)) {
+                        index.remove(receiptId);
+                        orphans++;
+                    }
+                }
+                if (orphans > 0) {
+                    logger.warn("Dropped {} receipts without a stored record from the index of user {}", orphans, userId);
+                }
+                // Rewriting also drops a torn line, which the next append would otherwise run into
+                if (damaged || orphans > 0 || lines > 2 * index.byId.size() + 16) {
+                    index.rewriteJournal();
+                }
+            } else {
+                backfill(userId, index);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load receipt index for user " + userId, e);
+        }
+        return index;
+    }
+
+    private void backfill(Long userId, UserIndex index) throws IOException {
+        Map<String, Long> stored = store.listReceipts(userId);
+        for (Map.Entry<String, Long> receipt : stored.entrySet()) {
+            byte[] json = store.readData(userId, receipt.getKey());
+            if (json == null) continue;
+            try {
+                ReceiptData data = mapper.readValue(json, ReceiptData.class);
+                index.put(new ReceiptSummary(receipt.getKey(), data, new Date(receipt.getValue())), false);
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable receipt {} of user {} while building its index", receipt.getKey(), userId);
+            }
+        }
+        if (!stored.isEmpty()) {
+            index.rewriteJournal();
+            logger.info("Indexed {} existing receipts for user {}", index.byId.size(), userId);
+        }
+    }
+
+    private final class UserIndex {
+        final Path journal;
+        final Map<String, ReceiptSummary> byId = new HashMap<>();
+        final ConcurrentSkipListMap<Position, ReceiptSummary> ordered = new ConcurrentSkipListMap<>();
+
+        UserIndex(Path journal) {
+            this.journal = journal;
+        }
+
+        synchronized void put(ReceiptSummary summary, boolean persist) {
+            ReceiptSummary previous = byId.put(summary.getReceiptId(), summary);
+            if (previous != null) {
+                ordered.remove(Position.of(previous));
+            }
+            ordered.put(Position.of(summary), summary);
+            if (persist) {
+                try {
+                    Files.createDirectories(journal.getParent());
+                    Files.write(journal, (mapper.writeValueAsString(summary) + "\n").getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                } catch (IOException e) {
+                    // The in-memory entry is kept; the receipt itself is already stored
+                    logger.error("Failed to append to receipt index {}", journal, e);
+                }
+            }
+        }
+
+        synchronized void remove(String receiptId) {
+            ReceiptSummary previous = byId.remove(receiptId);
+            if (previous != null) {
+                ordered.remove(Position.of(previous));
+            }
+        }
+
+        synchronized void rewriteJournal() throws IOException {
+            Files.createDirectories(journal.getParent());
+            Path temp = Files.createTempFile(journal.getParent(), journal.getFileName().toString(), ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                // Oldest first, so appends keep the journal in creation order
+                for (ReceiptSummary summary : ordered.descendingMap().values()) {
+                    writer.write(mapper.writeValueAsString(summary));
+                    writer.write('\n');
+                }
+            }
+            Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Sort key of an entry, newest first with the receipt ID as tie breaker. Also the cursor format.
+     */
+    private static final class Position implements Comparable<Position> {
+        final long createdAt;
+        final String receiptId;
+
+        Position(long createdAt, String receiptId) {
+            this.createdAt = createdAt;
+            this.receiptId = receiptId;
+        }
+
+        static Position of(ReceiptSummary summary) {
+            return new Position(summary.getCreatedAt() == null ? 0 : summary.getCreatedAt().getTime(), summary.getReceiptId());
+        }
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((createdAt + ":" + receiptId).getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Position decode(String cursor) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf(':');
+                return new Position(Long.parseLong(decoded.substring(0, separator)), decoded.substring(separator + 1));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                // Also covers NumberFormatException
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int byTime = Long.compare(other.createdAt, createdAt);
+            return byTime != 0 ? byTime : receiptId.compareTo(other.receiptId);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Position && compareTo((Position) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(createdAt) * 31 + receiptId.hashCode();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.splitshare.splitshare.service;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.splitshare.splitshare.dto.OcrResult;
+import com.splitshare.splitshare.dto.ReceiptData;
+
+/**
+ * Turns receipt image bytes into raw OCR text and parsed receipt data.
+ * PDFs are handed to {@link PdfReceiptService}, everything else goes through the image pipeline.
+ * Results are cached by image content, so re-uploads of the same photo skip Tesseract.
+ */
+@Service
+public class ReceiptProcessingService {
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptProcessingService.class);
+
+    // Preprocessing is always chosen from the blur score, the mode only decides how OCR runs
+    static final String DEFAULT_MODE = ParallelStripOcr.MODE_AUTO;
+
+    private final ImageHandlingService imageHandlingService;
+    private final ReceiptExtractionHelper extractor;
+    private final OcrResultCache cache;
+    private final OcrMetrics metrics;
+    private final PdfReceiptService pdfService;
+
+    @Autowired
+    public ReceiptProcessingService(ImageHandlingService imageHandlingService,
+                                    ReceiptExtractionHelper extractor,
+                                    OcrResultCache cache,
+                                    OcrMetrics metrics,
+                                    PdfReceiptService pdfService) {
+        this.imageHandlingService = imageHandlingService;
+        this.pdfService = pdfService;
+        this.extractor = extractor;
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs OCR and parsing on an image, or returns the cached result for identical bytes.
+     *
+     * @param imageBytes The encoded image bytes
+     * @return The raw OCR text and parsed receipt data
+     * @throws UnreadableImageException if the bytes are not a readable image
+     */
+    public OcrResult process(byte[] imageBytes) throws Exception {
+        return process(imageBytes, DEFAULT_MODE);
+    }
+
+    /**
+     * Same as {@link #process(byte[])} in one of the {@link ParallelStripOcr} modes
+     */
+    public OcrResult process(byte[] imageBytes, String ocrMode) throws Exception {
+        if (ImageType.sniff(imageBytes) == ImageType.PDF) {
+            return process(OcrResultCache.sha256(imageBytes), ocrMode, () -> pdfService.extractText(imageBytes, ocrMode));
+        }
+        return process(OcrResultCache.sha256(imageBytes), ocrMode, () -> imageHandlingService.handleImage(imageBytes, ocrMode));
+    }
+
+    /**
+     * Same as {@link #process(byte[])} for an image file, which is decoded straight from disk.
+     *
+     * @param imageFile The image file
+     * @param contentHash SHA-256 of the file, when it was already computed while storing the file
+     */
+    public OcrResult process(Path imageFile, String contentHash) throws Exception {
+        return process(imageFile, contentHash, DEFAULT_MODE);
+    }
+
+    /**
+     * @param contentHash SHA-256 of the file, or null to hash it here
+     * @param ocrMode One of the {@link ParallelStripOcr} modes, results are cached per mode
+     */
+    public OcrResult process(Path imageFile, String contentHash, String ocrMode) throws Exception {
+        String hash = contentHash != null ? contentHash : OcrResultCache.sha256(imageFile);
+        if (ImageType.sniff(imageFile) == ImageType.PDF) {
+            return process(hash, ocrMode, () -> pdfService.extractText(imageFile, ocrMode));
+        }
+        return process(hash, ocrMode, () -> imageHandlingService.handleImage(imageFile.toString(), ocrMode));
+    }
+
+    public OcrResult process(Path imageFile) throws Exception {
+        return process(imageFile, null, DEFAULT_MODE);
+    }
+
+    private OcrResult process(String contentHash, String ocrMode, Callable<String> ocr) throws Exception {
+        String key = OcrResultCache.key(contentHash, ocrMode);
+        OcrResult cached = cache.get(key);
+        if (cached != null) {
+            if (cached.getParserVersion() == ReceiptExtractionHelper.PARSER_VERSION) {
+                logger.info("Using cached OCR result {}", key);
+                return cached;
+            }
+            // The OCR text is still good, only the parsed data is out of date
+            logger.info("Re-parsing cached OCR result {} with parser version {}", key, ReceiptExtractionHelper.PARSER_VERSION);
+            return parseAndCache(key, cached.getRawText());
+        }
+
+        String rawText = ocr.call();
+        return parseAndCache(key, rawText);
+    }
+
+    private OcrResult parseAndCache(String key, String rawText) throws Exception {
+        ReceiptData parsedData = metrics.time(OcrMetrics.PARSE, OcrMetrics.NO_MODE,
+                () -> extractor.parseReceiptText(rawText));
+        OcrResult result = new OcrResult(rawText, parsedData, ReceiptExtractionHelper.PARSER_VERSION);
+        cache.put(key, result);
+        return result;
+    }
+}
@@ -0,0 +1,221 @@
+package com.splitshare.splitshare.service;
+
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_core.Point2f;
+import org.bytedeco.opencv.opencv_core.RotatedRect;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Finds the receipt paper in a photo and cuts it out, so OCR does not spend its time on the
+ * table, hands and background around it.
+ *
+ * Detection runs on a copy scaled down to ocr.region.working-size: the paper is separated from the
+ * background with an Otsu threshold, text is closed into the paper blob, and the largest blob is
+ * approximated by a quadrilateral (or its minimum area rectangle when the outline is not a clean quad).
+ * The corners are scaled back and the full resolution image is perspective corrected to an upright
+ * rectangle. When no blob is large enough, or the paper already fills the frame, the full frame is used.
+ */
+@Component
+public class ReceiptRegionDetector {
+    private static final Logger logger = LoggerFactory.getLogger(ReceiptRegionDetector.class);
+
+    private final boolean enabled;
+    private final int workingSize;
+    private final double minAreaRatio;
+    private final double maxAreaRatio;
+
+    /**
+     * @param workingSize Longest side of the scaled down copy detection runs on
+     * @param minAreaRatio Smallest share of the frame a blob must cover to be taken for the receipt
+     * @param maxAreaRatio Share of the frame above which cropping is skipped, as it would save little
+     */
+    @Autowired
+    public ReceiptRegionDetector(@Value("${ocr.region.enabled:true}") boolean enabled,
+                                 @Value("${ocr.region.working-size:512}") int workingSize,
+                                 @Value("${ocr.region.min-area-ratio:0.2}") double minAreaRatio,
+                                 @Value("${ocr.region.max-area-ratio:0.9}") double maxAreaRatio) {
+        this.enabled = enabled;
+        this.workingSize = Math.max(64, workingSize);
+        this.minAreaRatio = minAreaRatio;
+        this.maxAreaRatio = maxAreaRatio;
+    }
+
+    /**
+     * Crops a grayscale image to the receipt in it.
+     *
+     * @return The upright receipt, or a new header over the same pixels when the full frame is used.
+     *         Either way the caller closes the returned Mat, and {@link #isCropped} tells which it is
+     */
+    public Mat crop(Mat gray) {
+        if (enabled) {
+            Point2f corners = findCorners(gray);
+            if (corners != null) {
+                try (corners) {
+                    return warp(gray, corners);
+                }
+            }
+        }
+        return new Mat(gray);
+    }
+
+    /**
+     * @return Whether crop returned a cut out region rather than the full frame
+     */
+    public static boolean isCropped(Mat gray, Mat region) {
+        return region.data().address() != gray.data().address();
+    }
+
+    // Corners of the receipt in full resolution coordinates, ordered top left, top right,
+    // bottom right, bottom left, or null if no receipt was found
+    private Point2f findCorners(Mat gray) {
+        double scale = Math.min(1.0, (double) workingSize / Math.max(gray.cols(), gray.rows()));
+        try (Mat small = new Mat(); Mat mask = new Mat(); MatVector contours = new MatVector()) {
+            try (Size size = new Size((int) Math.round(gray.cols() * scale), (int) Math.round(gray.rows() * scale));
+                 Size blurKernel = new Size(5, 5)) {
+                opencv_imgproc.resize(gray, small, size, 0, 0, opencv_imgproc.INTER_AREA);
+                opencv_imgproc.GaussianBlur(small, small, blurKernel, 0);
+            }
+            // Paper is brighter than what it lies on
+            opencv_imgproc.threshold(small, mask, 0, 255, opencv_imgproc.THRESH_BINARY | opencv_imgproc.THRESH_OTSU);
+            // Close the dark text lines so the receipt is one solid blob
+            int closeSize = Math.max(3, Math.max(small.cols(), small.rows()) / 40) | 1;
+            try (Size closeKernel = new Size(closeSize, closeSize);
+                 Mat kernel = opencv_imgproc.getStructuringElement(opencv_imgproc.MORPH_RECT, closeKernel)) {
+                opencv_imgproc.morphologyEx(mask, mask, opencv_imgproc.MORPH_CLOSE, kernel);
+            }
+            opencv_imgproc.findContours(mask, contours, opencv_imgproc.RETR_EXTERNAL, opencv_imgproc.CHAIN_APPROX_SIMPLE);
+
+            Mat largest = null;
+            double largestArea = 0;
+            for (long i = 0; i < contours.size(); i++) {
+                Mat contour = contours.get(i);
+                double area = opencv_imgproc.contourArea(contour);
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = contour;
+                }
+            }
+            double frameArea = (double) small.cols() * small.rows();
+            if (largest == null || largestArea < minAreaRatio * frameArea) {
+                logger.debug("No receipt region found, using the full frame");
+                return null;
+            }
+
+            float[] points = quad(largest);
+            double quadArea = polygonArea(points);
+            if (quadArea > maxAreaRatio * frameArea) {
+                logger.debug("Receipt covers {}% of the frame, not cropping", Math.round(100 * quadArea / frameArea));
+                return null;
+            }
+            for (int i = 0; i < points.length; i++) {
+                points[i] /= scale;
+            }
+            return ordered(points);
+        }
+    }
+
+    // Four corners of the contour as x0, y0 .. x3, y3
+    private static float[] quad(Mat contour) {
+        float[] points = new float[8];
+        try (Mat approx = new Mat()) {
+            opencv_imgproc.approxPolyDP(contour, approx, 0.02 * opencv_imgproc.arcLength(contour, true), true);
+            if (approx.rows() == 4 && opencv_imgproc.isContourConvex(approx)) {
+                try (IntIndexer indexer = approx.createIndexer()) {
+                    for (int i = 0; i < 4; i++) {
+                        points[2 * i] = indexer.get(i, 0, 0);
+                        points[2 * i + 1] = indexer.get(i, 0, 1);
+                    }
+                }
+                return points;
+            }
+        }
+        // Torn or curled paper, fall back to the rotated bounding box
+        try (RotatedRect box = opencv_imgproc.minAreaRect(contour); Point2f corners = new Point2f(4)) {
+            box.points(corners);
+            for (int i = 0; i < 4; i++) {
+                corners.position(i);
+                points[2 * i] = corners.x();
+                points[2 * i + 1] = corners.y();
+            }
+        }
+        return points;
+    }
+
+    private static double polygonArea(float[] points) {
+        double area = 0;
+        for (int i = 0; i < 4; i++) {
+            int next = (i + 1) % 4;
+            area += (double) points[2 * i] * points[2 * next + 1] - (double) points[2 * next] * points[2 * i + 1];
+        }
+        return Math.abs(area) / 2;
+    }
+
+    // The top left corner has the smallest x + y and the bottom right the largest,
+    // the top right has the smallest y - x and the bottom left the largest
+    private static Point2f ordered(float[] points) {
+        int topLeft = 0, bottomRight = 0, topRight = 0, bottomLeft = 0;
+        for (int i = 1; i < 4; i++) {
+            float sum = points[2 * i] + points[2 * i + 1];
+            float diff = points[2 * i + 1] - points[2 * i];
+            if (sum < points[2 * topLeft] + points[2 * topLeft + 1]) topLeft = i;
+            if (sum > points[2 * bottomRight] + points[2 * bottomRight + 1]) bottomRight = i;
+            if (diff < points[2 * topRight + 1] - points[2 * topRight]) topRight = i;
+            if (diff > points[2 * bottomLeft + 1] - points[2 * bottomLeft]) bottomLeft = i;
+        }
+        Point2f corners = new Point2f(4);
+        int[] order = {topLeft, topRight, bottomRight, bottomLeft};
+        for (int i = 0; i < 4; i++) {
+            corners.position(i).x(points[2 * order[i]]).y(points[2 * order[i] + 1]);
+        }
+        return corners.position(0);
+    }
+
+    private static Mat warp(Mat gray, Point2f corners) {
+        float[] c = new float[8];
+        for (int i = 0; i < 4; i++) {
+            corners.position(i);
+            c[2 * i] = corners.x();
+            c[2 * i + 1] = corners.y();
+        }
+        corners.position(0);
+        int width = (int) Math.round(Math.max(distance(c, 0, 1), distance(c, 3, 2)));
+        int height = (int) Math.round(Math.max(distance(c, 0, 3), distance(c, 1, 2)));
+
+        Mat warped = new Mat();
+        try (Mat source = new Mat(4, 1, opencv_core.CV_32FC2);
+             Mat target = new Mat(4, 1, opencv_core.CV_32FC2)) {
+            try (FloatIndexer sourceIndexer = source.createIndexer(); FloatIndexer targetIndexer = target.createIndexer()) {
+                float[] rectangle = {0, 0, width - 1, 0, width - 1, height - 1, 0, height - 1};
+                for (int i = 0; i < 4; i++) {
+                    sourceIndexer.put(i, 0, 0, c[2 * i]);
+                    sourceIndexer.put(i, 0, 1, c[2 * i + 1]);
+                    targetIndexer.put(i, 0, 0, rectangle[2 * i]);
+                    targetIndexer.put(i, 0, 1, rectangle[2 * i + 1]);
+                }
+            }
+            try (Mat transform = opencv_imgproc.getPerspectiveTransform(source, target);
+                 Size size = new Size(width, height);
+                 Scalar white = new Scalar(255.0)) {
+                opencv_imgproc.warpPerspective(gray, warped, transform, size,
+                        opencv_imgproc.INTER_LINEAR, opencv_core.BORDER_CONSTANT, white);
+            }
+        }
+        logger.debug("Cropped receipt region {}x{} out of {}x{}", width, height, gray.cols(), gray.rows());
+        return warped;
+    }
+
+    private static double distance(float[] c, int from, int to) {
+        return Math.hypot(c[2 * to] - c[2 * from], c[2 * to + 1] - c[2 * from + 1]);
+    }
+}
@@ -0,0 +1,37 @@
+package com.splitshare.splitshare.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.splitshare.splitshare.dto.ReceiptData;
+
+/**
+ * Builds the response body returned to clients after a receipt has been extracted.
+ * Shared by the synchronous endpoints and the background OCR jobs so both return the same shape.
+ */
+public class ReceiptResponseBuilder {
+
+    private ReceiptResponseBuilder() {
+    }
+
+    /**
+     * @param receiptId The ID the receipt was stored under
+     * @param parsedData The parsed receipt data
+     * @return Structured response with the receipt ID and parsed fields
+     */
+    public static Map<String, Object> build(String receiptId, ReceiptData parsedData) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("receiptId", receiptId);
+        response.put("storeName", parsedData.getStoreName());
+        response.put("date", parsedData.getDate());
+        response.put("total", parsedData.getTotal());
+        response.put("items", parsedData.getItems());
+        //sub total
+        response.put("subtotal", parsedData.getSubtotal());
+        //expected sub total
+        response.put("expectedSubtotal", parsedData.expectedSubTotal());
+        response.put("tax", parsedData.getTax());
+        response.put("tip", parsedData.getTip());
+        return response;
+    }
+}
@@ -1,35 +1,90 @@
 package com.splitshare.splitshare.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.splitshare.splitshare.dto.AssignmentDelta;
 import com.splitshare.splitshare.dto.ReceiptData;
 import com.splitshare.splitshare.dto.ReceiptItem;
+import com.splitshare.splitshare.dto.ReceiptPage;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 import org.springframework.stereotype.Service;
 
-import java.io.FileWriter;
-
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 
 /**
  * Service for storing OCR text data from receipts
- * This handles the persistence of extracted receipt text
+ * This handles the persistence of extracted receipt text through the configured {@link ReceiptStore}
+ *
+ * Every receipt carries a version that each change bumps. Changes to the same receipt are serialized
+ * by striped locks, and callers can pass the version they last saw to reject a change that would
+ * silently overwrite someone else's. Item assignments are appended to the receipt's delta journal
+ * instead of rewriting the JSON; reads apply the journal and a background task folds it into the
+ * JSON once it grows past receipt.assignments.compact-threshold entries.
  */
 @Service
 public class ReceiptStorageService {
     private static final Logger logger = LoggerFactory.getLogger(ReceiptStorageService.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAX_CACHED_HEADS = 10000;
 
-    @Value("${receipt.storage.path:/tmp/receipts}")
-    private String storageBasePath;
+    private final ReceiptStore store;
+    private final ReceiptIndex index;
+    private final OcrMetrics metrics;
+    private final SplitResultCache splitCache;
+    private final int compactThreshold;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // Version and item count of recently changed receipts, so assigning does not reload the receipt
+    private final Map<String, ReceiptHead> heads = Collections.synchronizedMap(
+            new LinkedHashMap<String, ReceiptHead>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ReceiptHead> eldest) {
+                    return size() > MAX_CACHED_HEADS;
+                }
+            });
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "receipt-delta-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param compactThreshold Journal entries after which a receipt's deltas are folded into its JSON
+     */
+    @Autowired
+    public ReceiptStorageService(ReceiptStore store, ReceiptIndex index, OcrMetrics metrics, SplitResultCache splitCache,
+                                 @Value("${receipt.assignments.compact-threshold:16}") int compactThreshold) {
+        this.store = store;
+        this.index = index;
+        this.metrics = metrics;
+        this.splitCache = splitCache;
+        this.compactThreshold = Math.max(1, compactThreshold);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
 
     /**
      * Stores the extracted OCR text and receipt metadata
@@ -42,45 +97,51 @@ public class ReceiptStorageService {
     public String storeReceiptText(Long userId, String rawText, ReceiptData receiptData, String originalFilename) {
         String receiptId = UUID.randomUUID().toString();
         try {
-            // Create user directory if it doesn't exist
-            Path userDir = Paths.get(storageBasePath, userId.toString());
-            if (!Files.exists(userDir)) {
-                Files.createDirectories(userDir);
-            }
+            StringBuilder text = new StringBuilder();
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
-            // Create receipt data file
-            Path receiptFile = userDir.resolve(receiptId + ".txt");
+            text.append("Receipt ID: ").append(receiptId).append("\n");
+            text.append("User ID: ").append(userId).append("\n");
+            text.append("Original Filename: ").append(originalFilename).append("\n");
+            text.append("Processed: ").append(dateFormat.format(new Date())).append("\n\n");
 
-            // Write receipt data to file
-            try (FileWriter writer = new FileWriter(receiptFile.toFile())) {
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-
-                writer.write("Receipt ID: " + receiptId + "\n");
-                writer.write("User ID: " + userId + "\n");
-                writer.write("Original Filename: " + originalFilename + "\n");
-                writer.write("Processed: " + dateFormat.format(new Date()) + "\n\n");
+            text.append("Store: ").append(receiptData.getStoreName()).append("\n");
+            if (receiptData.getDate() != null) {
+                text.append("Date: ").append(dateFormat.format(receiptData.getDate())).append("\n");
+            }
+            text.append("Total: $").append(String.format("%.2f", receiptData.getTotal())).append("\n\n");
 
-                writer.write("Store: " + receiptData.getStoreName() + "\n");
-                if (receiptData.getDate() != null) {
-                    writer.write("Date: " + dateFormat.format(receiptData.getDate()) + "\n");
+            text.append("Items:\n");
+            if (receiptData.getItems() != null) {
+                for (ReceiptItem item : receiptData.getItems()) {
+                    text.append("- ").append(item.getName()).append(": $").append(String.format("%.2f", item.getPrice())).append("\n");
                 }
-                writer.write("Total: $" + String.format("%.2f", receiptData.getTotal()) + "\n\n");
+            }
 
-                writer.write("Items:\n");
-                if (receiptData.getItems() != null) {
-                    for (ReceiptItem item : receiptData.getItems()) {
-                        writer.write("- " + item.getName() + ": $" + String.format("%.2f", item.getPrice()) + "\n");
-                    }
+            text.append("\n---- RAW OCR TEXT ----\n\n");
+            text.append(rawText);
+
+            // Indexed first: an entry whose record is missing is dropped when the index is loaded,
+            // while a record without an entry would never be listed
+            index.add(userId, receiptId, receiptData);
+            try {
+                // Write receipt text
+                Timer.Sample textWrite = metrics.start();
+                try {
+                    store.writeText(userId, receiptId, text.toString());
+                } finally {
+                    metrics.stop(textWrite, OcrMetrics.STORE_TEXT, OcrMetrics.NO_MODE);
                 }
 
-                writer.write("\n---- RAW OCR TEXT ----\n\n");
-                writer.write(rawText);
+                metrics.time(OcrMetrics.STORE_JSON, OcrMetrics.NO_MODE, () -> {
+                    store.writeData(userId, receiptId, mapper.writeValueAsBytes(receiptData));
+                    return null;
+                });
+            } catch (Exception e) {
+                index.remove(userId, receiptId);
+                throw e;
             }
 
-            ObjectMapper mapper = new ObjectMapper();
-            Path jsonFile = userDir.resolve(receiptId + ".json");
-            mapper.writeValue(jsonFile.toFile(), receiptData);
-
             logger.info("Successfully stored receipt text for user {} with ID {}", userId, receiptId);
             return receiptId;
 
@@ -97,23 +158,15 @@ public class ReceiptStorageService {
      */
     public void logOcrFailure(Long userId, String originalFilename, String errorMessage) {
         try {
-            // Create user directory if it doesn't exist
-            Path userDir = Paths.get(storageBasePath, userId.toString());
-            if (!Files.exists(userDir)) {
-                Files.createDirectories(userDir);
-            }
-            // Create failure log file with timestamp
+            // Failure entries are named by timestamp
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
             String timestamp = dateFormat.format(new Date());
-            Path failureFile = userDir.resolve("ocr_failure_" + timestamp + ".log");
-            // Write failure details to file
-            try (FileWriter writer = new FileWriter(failureFile.toFile())) {
-                writer.write("OCR Failure Log\n");
-                writer.write("User ID: " + userId + "\n");
-                writer.write("Original Filename: " + originalFilename + "\n");
-                writer.write("Timestamp: " + new Date() + "\n");
-                writer.write("Error: " + errorMessage + "\n");
-            }
+            String log = "OCR Failure Log\n"
+                    + "User ID: " + userId + "\n"
+                    + "Original Filename: " + originalFilename + "\n"
+                    + "Timestamp: " + new Date() + "\n"
+                    + "Error: " + errorMessage + "\n";
+            store.writeFailureLog(userId, "ocr_failure_" + timestamp, log);
             logger.info("Logged OCR failure for user {} with file {}", userId, originalFilename);
         } catch (Exception e) {
             logger.error("Failed to log OCR failure for user {}", userId, e);
@@ -127,10 +180,10 @@ public class ReceiptStorageService {
      */
     public String getReceiptText(Long userId, String receiptId) {
         try {
-            Path receiptFile = Paths.get(storageBasePath, userId.toString(), receiptId + ".txt");
+            String text = store.readText(userId, receiptId);
 
-            if (Files.exists(receiptFile)) {
-                return new String(Files.readAllBytes(receiptFile));
+            if (text != null) {
+                return text;
             } else {
                 logger.warn("Receipt file not found for user {} with ID {}", userId, receiptId);
                 return null;
@@ -141,43 +194,274 @@ public class ReceiptStorageService {
         }
     }
 
-    
+
+    /**
+     * Loads the structured receipt with any pending assignment deltas applied
+     * @return The receipt, or null if not found
+     */
     public ReceiptData getReceiptById(Long userId, String receiptId) {
         try {
-            Path receiptJsonFile = Paths.get(storageBasePath, userId.toString(), receiptId + ".json");
+            ReceiptData receiptData = load(userId, receiptId);
 
-            if (!Files.exists(receiptJsonFile)) {
+            if (receiptData == null) {
                 logger.warn("JSON receipt file not found for user {} with ID {}", userId, receiptId);
                 return null;
             }
 
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.readValue(receiptJsonFile.toFile(), ReceiptData.class);
+            return receiptData;
 
         } catch (Exception e) {
             logger.error("Failed to load structured receipt for user {} with ID {}", userId, receiptId, e);
             return null;
         }
     }
-    
+
+    /**
+     * Current version of a receipt, served from memory for recently used receipts,
+     * so callers can tell whether a receipt changed without loading it
+     * @return The version, or null if the receipt does not exist
+     */
+    public Long getReceiptVersion(Long userId, String receiptId) {
+        String key = userId + "/" + receiptId;
+        synchronized (lockFor(key)) {
+            try {
+                ReceiptHead head = head(userId, receiptId, key);
+                return head == null ? null : head.version;
+            } catch (Exception e) {
+                logger.error("Failed to load structured receipt for user {} with ID {}", userId, receiptId, e);
+                return null;
+            }
+        }
+    }
+
     public void updateReceipt(Long userId, String receiptId, ReceiptData updatedReceiptData) {
-        try {
-            Path userDir = Paths.get(storageBasePath, userId.toString());
-            if (!Files.exists(userDir)) {
-                Files.createDirectories(userDir);
+        updateReceipt(userId, receiptId, updatedReceiptData, null);
+    }
+
+    /**
+     * Replaces the structured receipt, folding away its delta journal
+     * @param expectedVersion Version the caller's copy was read at, or null to overwrite unconditionally
+     * @throws ReceiptVersionConflictException if the receipt has changed since expectedVersion
+     */
+    public void updateReceipt(Long userId, String receiptId, ReceiptData updatedReceiptData, Long expectedVersion) {
+        String key = userId + "/" + receiptId;
+        synchronized (lockFor(key)) {
+            try {
+                ReceiptHead head = head(userId, receiptId, key);
+                long currentVersion = head != null ? head.version : updatedReceiptData.getVersion();
+                if (expectedVersion != null && expectedVersion != currentVersion) {
+                    throw new ReceiptVersionConflictException(expectedVersion, currentVersion);
+                }
+                updatedReceiptData.setVersion(currentVersion + 1);
+                store.writeData(userId, receiptId, mapper.writeValueAsBytes(updatedReceiptData));
+                store.clearDeltas(userId, receiptId);
+                heads.put(key, new ReceiptHead(updatedReceiptData.getVersion(), itemCount(updatedReceiptData), 0));
+                splitCache.invalidate(userId, receiptId);
+                index.update(userId, receiptId, updatedReceiptData);
+
+                logger.info("Updated structured receipt for user {} with ID {}", userId, receiptId);
+            } catch (ReceiptVersionConflictException e) {
+                throw e;
+            } catch (Exception e) {
+                logger.error("Failed to update structured receipt for user {} with ID {}", userId, receiptId, e);
+                throw new RuntimeException("Failed to update receipt data", e);
+            }
+        }
+    }
+
+    /**
+     * Assigns users to items by appending a single delta to the receipt's journal,
+     * without reading or rewriting the receipt JSON.
+     *
+     * @param assignments Item index to the users assigned to that item
+     * @param expectedVersion Version the caller last saw, or null to skip the check
+     * @return The receipt version after the change, or null if the receipt does not exist
+     * @throws ReceiptVersionConflictException if the receipt has changed since expectedVersion
+     * @throws IllegalArgumentException if an item index is out of range
+     */
+    public Long assignUsers(Long userId, String receiptId, Map<Integer, List<Integer>> assignments, Long expectedVersion) {
+        String key = userId + "/" + receiptId;
+        synchronized (lockFor(key)) {
+            ReceiptHead head;
+            try {
+                head = head(userId, receiptId, key);
+            } catch (IOException e) {
+                logger.error("Failed to load structured receipt for user {} with ID {}", userId, receiptId, e);
+                throw new RuntimeException("Failed to update receipt data", e);
+            }
+            if (head == null) {
+                return null;
             }
+            if (expectedVersion != null && expectedVersion != head.version) {
+                throw new ReceiptVersionConflictException(expectedVersion, head.version);
+            }
+            for (Integer itemIndex : assignments.keySet()) {
+                if (itemIndex == null || itemIndex < 0 || itemIndex >= head.itemCount) {
+                    throw new IllegalArgumentException("Invalid item index");
+                }
+            }
+
+            long version = head.version + 1;
+            try {
+                store.appendDelta(userId, receiptId, mapper.writeValueAsBytes(new AssignmentDelta(version, assignments)));
+            } catch (IOException e) {
+                logger.error("Failed to append assignment for user {} with ID {}", userId, receiptId, e);
+                throw new RuntimeException("Failed to update receipt data", e);
+            }
+            head.version = version;
+            head.pendingDeltas++;
+            splitCache.invalidate(userId, receiptId);
+            if (head.pendingDeltas >= compactThreshold && !head.foldQueued) {
+                head.foldQueued = true;
+                compactor.execute(() -> fold(userId, receiptId));
+            }
+            return version;
+        }
+    }
+
+    /**
+     * Applies assignments that depend on the receipt's current state, such as "split everything
+     * still unassigned". The receipt is read once under the receipt's lock, all assignments are
+     * validated and applied in memory, and the result is persisted as a single delta.
+     *
+     * @param resolver Computes item index to users from the current receipt, may throw IllegalArgumentException
+     * @param expectedVersion Version the caller last saw, or null to skip the check
+     * @return The receipt with the assignments applied, or null if it does not exist
+     * @throws ReceiptVersionConflictException if the receipt has changed since expectedVersion
+     * @throws IllegalArgumentException if the resolver rejects the request or returns an invalid item index
+     */
+    public ReceiptData applyAssignments(Long userId, String receiptId, Long expectedVersion,
+                                        Function<ReceiptData, Map<Integer, List<Integer>>> resolver) {
+        String key = userId + "/" + receiptId;
+        synchronized (lockFor(key)) {
+            ReceiptData receiptData;
+            try {
+                receiptData = loadHead(userId, receiptId, key);
+            } catch (IOException e) {
+                logger.error("Failed to load structured receipt for user {} with ID {}", userId, receiptId, e);
+                throw new RuntimeException("Failed to update receipt data", e);
+            }
+            if (receiptData == null) {
+                return null;
+            }
+            Map<Integer, List<Integer>> assignments = resolver.apply(receiptData);
+            Long version = assignUsers(userId, receiptId, assignments, expectedVersion);
+            if (version == null) {
+                return null;
+            }
+            assignments.forEach((itemIndex, userIds) -> receiptData.getItems().get(itemIndex).setAssignedUsers(new ArrayList<>(userIds)));
+            receiptData.setVersion(version);
+            return receiptData;
+        }
+    }
 
-            Path receiptJsonFile = userDir.resolve(receiptId + ".json");
+    private Object lockFor(String key) {
+        return locks[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
+    }
 
-            ObjectMapper mapper = new ObjectMapper();
-            mapper.writeValue(receiptJsonFile.toFile(), updatedReceiptData);
+    // Caller holds the receipt's lock
+    private ReceiptHead head(Long userId, String receiptId, String key) throws IOException {
+        ReceiptHead head = heads.get(key);
+        if (head == null && loadHead(userId, receiptId, key) != null) {
+            head = heads.get(key);
+        }
+        return head;
+    }
 
-            logger.info("Updated structured receipt for user {} with ID {}", userId, receiptId);
-        } catch (Exception e) {
-            logger.error("Failed to update structured receipt for user {} with ID {}", userId, receiptId, e);
-            throw new RuntimeException("Failed to update receipt data", e);
+    // Loads the receipt and caches its head, caller holds the receipt's lock
+    private ReceiptData loadHead(Long userId, String receiptId, String key) throws IOException {
+        List<byte[]> journal = store.readDeltas(userId, receiptId);
+        byte[] json = store.readData(userId, receiptId);
+        if (json == null) return null;
+        ReceiptData receiptData = applyDeltas(mapper.readValue(json, ReceiptData.class), journal);
+        ReceiptHead cached = heads.get(key);
+        ReceiptHead head = new ReceiptHead(receiptData.getVersion(), itemCount(receiptData), journal.size());
+        head.foldQueued = cached != null && cached.foldQueued;
+        heads.put(key, head);
+        return receiptData;
+    }
+
+    private ReceiptData load(Long userId, String receiptId) throws IOException {
+        // The journal is read before the JSON record, so a fold running in between still yields
+        // a complete receipt: either the old record plus the deltas, or the folded record
+        List<byte[]> journal = store.readDeltas(userId, receiptId);
+        byte[] json = store.readData(userId, receiptId);
+        return json == null ? null : applyDeltas(mapper.readValue(json, ReceiptData.class), journal);
+    }
+
+    private static ReceiptData applyDeltas(ReceiptData receiptData, List<byte[]> journal) {
+        List<AssignmentDelta> deltas = new ArrayList<>(journal.size());
+        for (byte[] entry : journal) {
+            try {
+                deltas.add(mapper.readValue(entry, AssignmentDelta.class));
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable assignment delta", e);
+            }
+        }
+        deltas.sort(Comparator.comparingLong(AssignmentDelta::getVersion));
+        List<ReceiptItem> items = receiptData.getItems();
+        for (AssignmentDelta delta : deltas) {
+            // Deltas at or below the record's version were already folded into it
+            if (delta.getVersion() <= receiptData.getVersion()) continue;
+            delta.getAssignments().forEach((itemIndex, userIds) -> {
+                if (items != null && itemIndex >= 0 && itemIndex < items.size()) {
+                    items.get(itemIndex).setAssignedUsers(new ArrayList<>(userIds));
+                }
+            });
+            receiptData.setVersion(delta.getVersion());
+        }
+        return receiptData;
+    }
+
+    private static int itemCount(ReceiptData receiptData) {
+        return receiptData.getItems() == null ? 0 : receiptData.getItems().size();
+    }
+
+    // Writes the receipt with its journal applied and drops the journal
+    private void fold(Long userId, String receiptId) {
+        String key = userId + "/" + receiptId;
+        synchronized (lockFor(key)) {
+            ReceiptHead head = heads.get(key);
+            try {
+                ReceiptData receiptData = load(userId, receiptId);
+                if (receiptData != null) {
+                    store.writeData(userId, receiptId, mapper.writeValueAsBytes(receiptData));
+                    store.clearDeltas(userId, receiptId);
+                    if (head != null) head.pendingDeltas = 0;
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to fold assignment deltas for user {} with ID {}", userId, receiptId, e);
+            } finally {
+                if (head != null) head.foldQueued = false;
+            }
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        compactor.shutdown();
+    }
 
-}
\ No newline at end of file
+    /**
+     * Lists a user's receipts newest first, one page at a time
+     * @param cursor nextCursor of the previous page, or null for the first page
+     * @param limit Page size, between 1 and {@link ReceiptIndex#MAX_PAGE_SIZE}
+     * @throws IllegalArgumentException if the cursor or limit is invalid
+     */
+    public ReceiptPage listReceipts(Long userId, String cursor, int limit) {
+        return index.page(userId, cursor, limit);
+    }
+
+    private static final class ReceiptHead {
+        long version;
+        final int itemCount;
+        int pendingDeltas;
+        boolean foldQueued;
+
+        ReceiptHead(long version, int itemCount, int pendingDeltas) {
+            this.version = version;
+            this.itemCount = itemCount;
+            this.pendingDeltas = pendingDeltas;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.splitshare.splitshare.service;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage engine behind {@link ReceiptStorageService}.
+ * Each receipt has a human readable text record and a JSON record, both keyed by user and receipt ID,
+ * plus a journal of small deltas that are applied on top of the JSON record until they are folded into it.
+ * The engine is picked with receipt.storage.engine: "file" keeps one file per record,
+ * "log" appends records to segmented log files.
+ */
+public interface ReceiptStore {
+
+    void writeText(Long userId, String receiptId, String text) throws IOException;
+
+    /**
+     * @return The stored text, or null if there is none
+     */
+    String readText(Long userId, String receiptId) throws IOException;
+
+    void writeData(Long userId, String receiptId, byte[] json) throws IOException;
+
+    /**
+     * @return The stored JSON, or null if there is none
+     */
+    byte[] readData(Long userId, String receiptId) throws IOException;
+
+    /**
+     * @return Whether the receipt has a JSON record, without reading it
+     */
+    default boolean hasData(Long userId, String receiptId) throws IOException {
+        return readData(userId, receiptId) != null;
+    }
+
+    /**
+     * Appends an entry to the receipt's delta journal
+     */
+    void appendDelta(Long userId, String receiptId, byte[] delta) throws IOException;
+
+    /**
+     * @return The receipt's journal entries, empty if there are none. Entries may come back
+     *         out of append order, so they must carry their own sequence number
+     */
+    List<byte[]> readDeltas(Long userId, String receiptId) throws IOException;
+
+    /**
+     * Drops the receipt's journal once its entries are folded into the JSON record
+     */
+    void clearDeltas(Long userId, String receiptId) throws IOException;
+
+    /**
+     * Keeps the details of a failed OCR attempt for later troubleshooting
+     * @param name Unique name of the failure entry, e.g. ocr_failure_20250101_120000
+     */
+    void writeFailureLog(Long userId, String name, String text) throws IOException;
+
+    /**
+     * Lists the receipts already stored for a user, used once per user to build the receipt
+     * index for data written before the index existed. Engines that were always indexed return nothing.
+     * @return Receipt ID to the time it was stored, in epoch milliseconds
+     */
+    default Map<String, Long> listReceipts(Long userId) throws IOException {
+        return Collections.emptyMap();
+    }
+}
@@ -0,0 +1,23 @@
+package com.splitshare.splitshare.service;
+
+/**
+ * Thrown when a receipt change was based on a version that someone else has already replaced.
+ */
+public class ReceiptVersionConflictException extends RuntimeException {
+    private final long expectedVersion;
+    private final long currentVersion;
+
+    public ReceiptVersionConflictException(long expectedVersion, long currentVersion) {
+        super("Receipt is at version " + currentVersion + ", not " + expectedVersion);
+        this.expectedVersion = expectedVersion;
+        this.currentVersion = currentVersion;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getCurrentVersion() {
+        return currentVersion;
+    }
+}
@@ -0,0 +1,167 @@
+package com.splitshare.splitshare.service;
+
+import java.util.Arrays;
+
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Picks the factor a receipt is resampled by before OCR, so its text reaches Tesseract at about
+ * ocr.scale.target-text-height pixels whatever resolution the photo was taken at.
+ *
+ * Character height is estimated from connected components: the image is binarized with a local
+ * threshold (text darker than the paper around it), and the median height of components shaped
+ * like characters is taken, weighted by their ink so specks of paper texture count for little.
+ * Large photos are analyzed on a copy scaled down to ocr.scale.analysis-size. When too few
+ * characters are found the old rule applies: images under 1000x1000 are doubled, others kept as is.
+ */
+@Component
+public class ResolutionNormalizer {
+    private static final Logger logger = LoggerFactory.getLogger(ResolutionNormalizer.class);
+
+    // Fewer character-like components than this and the median is not trusted
+    private static final int MIN_CHARACTERS = 15;
+    // Smallest component height, in analysis pixels, that can be a character rather than noise
+    private static final int MIN_CHARACTER_HEIGHT = 5;
+
+    private final boolean enabled;
+    private final double targetTextHeight;
+    private final int analysisSize;
+    private final double minFactor;
+    private final double maxFactor;
+    private final double tolerance;
+
+    /**
+     * @param targetTextHeight Median character height, in pixels, text is scaled to
+     * @param analysisSize Longest side of the copy characters are measured on
+     * @param minFactor Strongest downscale allowed
+     * @param maxFactor Strongest upscale allowed
+     * @param tolerance Factors within this ratio of 1 leave the image alone, as resampling would gain little
+     */
+    @Autowired
+    public ResolutionNormalizer(@Value("${ocr.scale.enabled:true}") boolean enabled,
+                                @Value("${ocr.scale.target-text-height:32}") double targetTextHeight,
+                                @Value("${ocr.scale.analysis-size:1600}") int analysisSize,
+                                @Value("${ocr.scale.min-factor:0.25}") double minFactor,
+                                @Value("${ocr.scale.max-factor:4}") double maxFactor,
+                                @Value("${ocr.scale.tolerance:0.2}") double tolerance) {
+        this.enabled = enabled;
+        this.targetTextHeight = targetTextHeight;
+        this.analysisSize = Math.max(200, analysisSize);
+        this.minFactor = minFactor;
+        this.maxFactor = maxFactor;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Decides how much to scale a grayscale receipt by
+     */
+    public Decision decide(Mat gray) {
+        double textHeight = enabled ? estimateTextHeight(gray) : Double.NaN;
+        if (Double.isNaN(textHeight)) {
+            double factor = Preprocesing.legacyScale(gray);
+            logger.debug("Text height unknown for {}x{} image, scaling by {}", gray.cols(), gray.rows(), factor);
+            return new Decision(Double.NaN, factor);
+        }
+        double factor = Math.max(minFactor, Math.min(maxFactor, targetTextHeight / textHeight));
+        if (factor > 1 - tolerance && factor < 1 + tolerance) {
+            factor = 1;
+        }
+        logger.debug("Text height {} px in {}x{} image, scaling by {}",
+                String.format("%.1f", textHeight), gray.cols(), gray.rows(), String.format("%.2f", factor));
+        return new Decision(textHeight, factor);
+    }
+
+    /**
+     * @return Median character height in pixels of the given image, or NaN if too few characters were found
+     */
+    public double estimateTextHeight(Mat gray) {
+        double scale = Math.min(1.0, (double) analysisSize / Math.max(gray.cols(), gray.rows()));
+        try (Mat small = new Mat(); Mat binary = new Mat(); Mat labels = new Mat();
+             Mat stats = new Mat(); Mat centroids = new Mat()) {
+            Mat source = gray;
+            if (scale < 1) {
+                try (Size size = new Size((int) Math.round(gray.cols() * scale), (int) Math.round(gray.rows() * scale))) {
+                    opencv_imgproc.resize(gray, small, size, 0, 0, opencv_imgproc.INTER_AREA);
+                }
+                source = small;
+            }
+            // Text becomes the foreground. A local threshold, as a global one splits paper from
+            // background in photos and turns background texture into specks
+            int blockSize = Math.max(31, Math.max(source.cols(), source.rows()) / 16) | 1;
+            opencv_imgproc.adaptiveThreshold(source, binary, 255, opencv_imgproc.ADAPTIVE_THRESH_MEAN_C,
+                    opencv_imgproc.THRESH_BINARY_INV, blockSize, 15);
+            int count = opencv_imgproc.connectedComponentsWithStats(binary, labels, stats, centroids);
+
+            int maxHeight = Math.max(MIN_CHARACTER_HEIGHT, source.rows() / 8);
+            // Height in the upper 32 bits and ink area in the lower, so sorting orders by height
+            long[] components = new long[count];
+            long totalArea = 0;
+            int characters = 0;
+            try (IntIndexer indexer = stats.createIndexer()) {
+                // Label 0 is the background
+                for (int label = 1; label < count; label++) {
+                    int width = indexer.get(label, opencv_imgproc.CC_STAT_WIDTH);
+                    int height = indexer.get(label, opencv_imgproc.CC_STAT_HEIGHT);
+                    int area = indexer.get(label, opencv_imgproc.CC_STAT_AREA);
+                    // Characters are not much wider than tall and fill a fair part of their box,
+                    // which leaves out specks, rules, borders and large shadows
+                    if (height < MIN_CHARACTER_HEIGHT || height > maxHeight) continue;
+                    if (width > 2 * height) continue;
+                    double fill = (double) area / ((long) width * height);
+                    if (fill < 0.1 || fill > 0.9) continue;
+                    components[characters++] = ((long) height << 32) | area;
+                    totalArea += area;
+                }
+            }
+            if (characters < MIN_CHARACTERS) {
+                return Double.NaN;
+            }
+            // Median weighted by ink, so paper texture that survives the filters cannot outvote the text
+            Arrays.sort(components, 0, characters);
+            long seen = 0;
+            for (int i = 0; i < characters; i++) {
+                seen += components[i] & 0xFFFFFFFFL;
+                if (2 * seen >= totalArea) {
+                    return (components[i] >>> 32) / scale;
+                }
+            }
+            return (components[characters - 1] >>> 32) / scale;
+        }
+    }
+
+    /**
+     * Scale factor for an image together with the character height it was derived from
+     */
+    public static final class Decision {
+        private final double textHeight;
+        private final double factor;
+
+        Decision(double textHeight, double factor) {
+            this.textHeight = textHeight;
+            this.factor = factor;
+        }
+
+        /**
+         * @return Median character height in pixels, or NaN when it could not be measured
+         */
+        public double getTextHeight() {
+            return textHeight;
+        }
+
+        public double getFactor() {
+            return factor;
+        }
+
+        public boolean isEstimated() {
+            return !Double.isNaN(textHeight);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.splitshare.splitshare.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Memoized split results, keyed by receipt and the receipt version they were computed at.
+ *
+ * Group members refresh their totals far more often than assignments change, so a split is only
+ * recomputed after the receipt's version moves. Each receipt keeps one entry holding the results
+ * for its latest version (with and without tax and tip); {@link ReceiptStorageService} drops the
+ * entry whenever it changes the receipt, and the version in the key keeps a result computed
+ * concurrently with a change from being served for the newer version.
+ */
+@Component
+public class SplitResultCache {
+
+    private final boolean enabled;
+    private final int maxEntries;
+
+    // Access ordered, so iteration starts with the least recently used receipt
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @Autowired
+    public SplitResultCache(@Value("${split.cache.enabled:true}") boolean enabled,
+                            @Value("${split.cache.max-entries:10000}") int maxEntries) {
+        this.enabled = enabled;
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Entity tag of a split, changes whenever the receipt or the requested split does
+     */
+    public static String etag(String receiptId, long version, boolean includeTaxAndTip) {
+        return "\"" + receiptId + "-v" + version + (includeTaxAndTip ? "-tt" : "") + "\"";
+    }
+
+    /**
+     * @return The split computed at exactly this version, or null if there is none.
+     *         The map is unmodifiable and shared between callers
+     */
+    public Map<Integer, Double> get(Long userId, String receiptId, long version, boolean includeTaxAndTip) {
+        if (!enabled) return null;
+        Map<Integer, Double> result;
+        synchronized (this) {
+            Entry entry = entries.get(key(userId, receiptId));
+            result = entry != null && entry.version == version ? entry.result(includeTaxAndTip) : null;
+        }
+        (result != null ? hits : misses).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Remembers a split computed from the receipt at the given version. Results for an older
+     * version are replaced, results for a version older than the cached one are ignored.
+     */
+    public void put(Long userId, String receiptId, long version, boolean includeTaxAndTip, Map<Integer, Double> result) {
+        if (!enabled) return;
+        Map<Integer, Double> copy = Map.copyOf(result);
+        synchronized (this) {
+            String key = key(userId, receiptId);
+            Entry entry = entries.get(key);
+            if (entry == null || entry.version < version) {
+                entry = new Entry(version);
+                entries.put(key, entry);
+            } else if (entry.version > version) {
+                return;
+            }
+            if (includeTaxAndTip) {
+                entry.withTaxAndTip = copy;
+            } else {
+                entry.itemsOnly = copy;
+            }
+            while (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops the cached splits of a receipt, called whenever the receipt changes
+     */
+    public void invalidate(Long userId, String receiptId) {
+        if (!enabled) return;
+        synchronized (this) {
+            if (entries.remove(key(userId, receiptId)) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    private static String key(Long userId, String receiptId) {
+        return userId + "/" + receiptId;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        final long version;
+        Map<Integer, Double> itemsOnly;
+        Map<Integer, Double> withTaxAndTip;
+
+        Entry(long version) {
+            this.version = version;
+        }
+
+        Map<Integer, Double> result(boolean includeTaxAndTip) {
+            return includeTaxAndTip ? withTaxAndTip : itemsOnly;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.splitshare.splitshare.service;
+
+/**
+ * Thrown when uploaded bytes cannot be decoded as an image.
+ * This is a problem with the input, not with the server.
+ */
+public class UnreadableImageException extends IllegalArgumentException {
+
+    public UnreadableImageException(String message) {
+        super(message);
+    }
+}
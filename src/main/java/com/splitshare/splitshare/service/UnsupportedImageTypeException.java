@@ -0,0 +1,11 @@
+package com.splitshare.splitshare.service;
+
+/**
+ * Thrown when the magic bytes of an upload do not match any accepted file type.
+ */
+public class UnsupportedImageTypeException extends RuntimeException {
+
+    public UnsupportedImageTypeException(String message) {
+        super(message);
+    }
+}
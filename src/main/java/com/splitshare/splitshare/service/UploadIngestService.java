@@ -0,0 +1,111 @@
+package com.splitshare.splitshare.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.splitshare.splitshare.dto.UploadedImage;
+
+/**
+ * Streams uploads straight to disk.
+ * One fixed-size buffer is used per upload, whatever the file size: while copying, the
+ * bytes are hashed, counted against the size limit and their type is sniffed from the
+ * magic bytes. Rejected uploads never reach their final file name.
+ */
+@Service
+public class UploadIngestService {
+    private static final Logger logger = LoggerFactory.getLogger(UploadIngestService.class);
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    @Value("${receipt.storage.path:/tmp/receipts}")
+    private String storageBasePath;
+
+    /**
+     * Streams an upload into a directory under a new random name with the sniffed extension.
+     *
+     * @param input The upload body, read to the end but not closed
+     * @param directory Where the file is stored, created if missing
+     * @param maxBytes Largest accepted upload
+     * @param allowedTypes File types that are accepted
+     * @return The stored file with its hash, size and type
+     * @throws UnsupportedImageTypeException if the content is not one of the allowed types
+     * @throws UploadTooLargeException if the content is larger than maxBytes
+     */
+    public UploadedImage ingest(InputStream input, Path directory, long maxBytes, Set<ImageType> allowedTypes)
+            throws IOException {
+        Files.createDirectories(directory);
+        Path partial = Files.createTempFile(directory, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long size = 0;
+            ImageType type;
+            ReadableByteChannel in = Channels.newChannel(input);
+            try (FileChannel out = FileChannel.open(partial, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // Fill the header before looking at it, a read may return just a few bytes
+                while (buffer.position() < ImageType.HEADER_BYTES && in.read(buffer) >= 0) {
+                }
+                type = ImageType.sniff(buffer.array(), buffer.position());
+                if (type == null || !allowedTypes.contains(type)) {
+                    throw new UnsupportedImageTypeException("Upload is not one of " + allowedTypes);
+                }
+                do {
+                    buffer.flip();
+                    size += buffer.remaining();
+                    if (size > maxBytes) {
+                        throw new UploadTooLargeException("Upload is larger than " + maxBytes + " bytes");
+                    }
+                    digest.update(buffer.array(), 0, buffer.limit());
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                } while (in.read(buffer) >= 0);
+            }
+
+            Path target = directory.resolve(UUID.randomUUID() + "." + type.getExtension());
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Stored {} upload of {} bytes at {}", type, size, target);
+            return new UploadedImage(target, HexFormat.of().formatHex(digest.digest()), size, type);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+    }
+
+    /**
+     * Streams an upload into the scratch directory under receipt.storage.path.
+     * The caller deletes the file once it has been processed.
+     */
+    public UploadedImage ingestTemporary(InputStream input, long maxBytes, Set<ImageType> allowedTypes)
+            throws IOException {
+        return ingest(input, Paths.get(storageBasePath, "incoming"), maxBytes, allowedTypes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.splitshare.splitshare.service;
+
+/**
+ * Thrown when an upload turns out to be larger than allowed while it is being streamed.
+ */
+public class UploadTooLargeException extends RuntimeException {
+
+    public UploadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -5,8 +5,11 @@ import com.splitshare.splitshare.controller.ItemSplitContoller;
 import com.splitshare.splitshare.controller.ReceiptOcrController;
 import com.splitshare.splitshare.dto.ReceiptData;
 import com.splitshare.splitshare.dto.ReceiptItem;
+import com.splitshare.splitshare.service.IntLongHashMap;
 import com.splitshare.splitshare.service.ItemSplitService;
 import com.splitshare.splitshare.service.ReceiptStorageService;
+import com.splitshare.splitshare.service.ReceiptVersionConflictException;
+import com.splitshare.splitshare.service.SplitResultCache;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -29,8 +32,12 @@ import java.util.Map;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -47,6 +54,10 @@ public class AssignUsersControllerTest {
     @Autowired
     private ReceiptStorageService storageService;
 
+    // Mock used by the controller, the tests below exercise a real instance directly
+    @Autowired
+    private ItemSplitService controllerSplitService;
+
     private ItemSplitService itemSplitService;
 
     private ReceiptData testReceipt;
@@ -64,6 +75,11 @@ public class AssignUsersControllerTest {
         public ItemSplitService itemSplitService() {
             return Mockito.mock(ItemSplitService.class);
         }
+
+        @Bean
+        public SplitResultCache splitResultCache() {
+            return new SplitResultCache(true, 100);
+        }
     }
 
     @BeforeEach
@@ -79,7 +95,7 @@ public class AssignUsersControllerTest {
     void testAssignUsersToItem_Success() throws Exception {
         List<Integer> assignedUsers = List.of(2, 3);
 
-        when(storageService.getReceiptById(userId, receiptId)).thenReturn(testReceipt);
+        when(storageService.assignUsers(userId, receiptId, Map.of(0, assignedUsers), null)).thenReturn(4L);
 
         mockMvc.perform(post("/api/split/assign-users")
                         .param("userId", userId.toString())
@@ -87,18 +103,32 @@ public class AssignUsersControllerTest {
                         .param("itemIndex", "0")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(assignedUsers)))
-                .andExpect(status().isOk());
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(4));
 
-        ReceiptItem item = testReceipt.getItems().get(0);
-        assert item.getAssignedUser().equals(assignedUsers);
+        verify(storageService).assignUsers(eq(userId), eq(receiptId), eq(Map.of(0, assignedUsers)), isNull());
+    }
+
+    @Test
+    void testAssignUsersToItem_VersionConflict() throws Exception {
+        when(storageService.assignUsers(userId, receiptId, Map.of(0, List.of(2)), 3L))
+                .thenThrow(new ReceiptVersionConflictException(3L, 5L));
 
-        verify(storageService).updateReceipt(eq(userId), eq(receiptId), eq(testReceipt));
+        mockMvc.perform(post("/api/split/assign-users")
+                        .param("userId", userId.toString())
+                        .param("receiptId", receiptId)
+                        .param("itemIndex", "0")
+                        .param("expectedVersion", "3")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(2))))
+                .andExpect(status().isConflict());
     }
 
     @Test
     void testAssignUsersToItem_InvalidItemIndex() throws Exception {
         List<Integer> assignedUsers = List.of(2, 3);
-        when(storageService.getReceiptById(userId, receiptId)).thenReturn(testReceipt);
+        when(storageService.assignUsers(eq(userId), eq(receiptId), any(), isNull()))
+                .thenThrow(new IllegalArgumentException("Invalid item index"));
 
         mockMvc.perform(post("/api/split/assign-users")
                         .param("userId", userId.toString())
@@ -112,7 +142,7 @@ public class AssignUsersControllerTest {
 
     @Test
     void testAssignUsersToItem_ReceiptNotFound() throws Exception {
-        Mockito.when(storageService.getReceiptById(userId, receiptId)).thenReturn(null);
+        Mockito.when(storageService.assignUsers(eq(userId), eq(receiptId), any(), isNull())).thenReturn(null);
 
         mockMvc.perform(post("/assign-users")
                         .param("userId", userId.toString())
@@ -123,6 +153,61 @@ public class AssignUsersControllerTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void testBulkAssignmentReturnsSplit() throws Exception {
+        testReceipt.setVersion(2);
+        when(storageService.applyAssignments(eq(userId), eq(receiptId), eq(1L), any())).thenReturn(testReceipt);
+        when(controllerSplitService.calculateUserOwedAmounts(testReceipt, false)).thenReturn(Map.of(2, 8.99));
+
+        mockMvc.perform(post("/api/split/assign-users/bulk")
+                        .param("userId", userId.toString())
+                        .param("receiptId", receiptId)
+                        .param("includeSplit", "true")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"assignments\":{\"0\":[2]},\"expectedVersion\":1}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(2))
+                .andExpect(jsonPath("$.split.2").value(8.99));
+    }
+
+    @Test
+    void testSplitIsMemoizedPerVersionAndConditional() throws Exception {
+        String cachedReceiptId = "cached-receipt";
+        testReceipt.setVersion(3);
+        when(storageService.getReceiptVersion(userId, cachedReceiptId)).thenReturn(3L);
+        when(storageService.getReceiptById(userId, cachedReceiptId)).thenReturn(testReceipt);
+        when(controllerSplitService.calculateUserOwedAmounts(testReceipt, false)).thenReturn(Map.of(1, 8.99));
+
+        String etag = mockMvc.perform(post("/api/split/calculate-split")
+                        .param("userId", userId.toString())
+                        .param("receiptId", cachedReceiptId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.1").value(8.99))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(post("/api/split/calculate-split")
+                        .param("userId", userId.toString())
+                        .param("receiptId", cachedReceiptId))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", etag));
+        mockMvc.perform(post("/api/split/calculate-split")
+                        .param("userId", userId.toString())
+                        .param("receiptId", cachedReceiptId)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        verify(storageService, times(1)).getReceiptById(userId, cachedReceiptId);
+
+        // A new version gets a new tag and a fresh split
+        testReceipt.setVersion(4);
+        when(storageService.getReceiptVersion(userId, cachedReceiptId)).thenReturn(4L);
+        mockMvc.perform(post("/api/split/calculate-split")
+                        .param("userId", userId.toString())
+                        .param("receiptId", cachedReceiptId)
+                        .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", SplitResultCache.etag(cachedReceiptId, 4, false)));
+        verify(storageService, times(2)).getReceiptById(userId, cachedReceiptId);
+    }
+
     @Test
     void testSplitAmongMultipleUsers() {
         ReceiptItem item1 = new ReceiptItem("Pizza", 12.00, 1);
@@ -172,5 +257,60 @@ public class AssignUsersControllerTest {
         assertEquals(5.0, result.get(2), 0.01);
         assertEquals(5.0, result.get(3), 0.01);
     }
-    
-}
\ No newline at end of file
+
+    @Test
+    void testSharesAddUpToTheCent() {
+        ReceiptItem item1 = new ReceiptItem("Pizza", 10.00, 1);
+        item1.setAssignedUsers(List.of(1, 2, 3));
+        ReceiptItem item2 = new ReceiptItem("Salad", 10.00, 1);
+        item2.setAssignedUsers(List.of(1, 2, 3));
+
+        ReceiptData receipt = new ReceiptData();
+        receipt.setItems(List.of(item1, item2));
+
+        IntLongHashMap cents = itemSplitService.calculateUserOwedCents(receipt, false);
+        assertEquals(2000, cents.sum());
+        // The leftover cent of each item goes to a different user
+        assertEquals(667, cents.get(1));
+        assertEquals(667, cents.get(2));
+        assertEquals(666, cents.get(3));
+
+        // Enough users to grow the map past its initial capacity
+        List<Integer> group = new ArrayList<>();
+        for (int user = 1; user <= 50; user++) {
+            group.add(user);
+        }
+        ReceiptItem dinner = new ReceiptItem("Dinner", 100.01, 1);
+        dinner.setAssignedUsers(group);
+        receipt.setItems(List.of(dinner));
+        cents = itemSplitService.calculateUserOwedCents(receipt, false);
+        assertEquals(50, cents.size());
+        assertEquals(10001, cents.sum());
+        assertEquals(201, cents.get(1));
+        assertEquals(200, cents.get(50));
+    }
+
+    @Test
+    void testTaxAndTipAreSharedProportionally() {
+        ReceiptItem steak = new ReceiptItem("Steak", 30.00, 1);
+        steak.setAssignedUsers(List.of(1));
+        ReceiptItem soup = new ReceiptItem("Soup", 10.00, 1);
+        soup.setAssignedUsers(List.of(2));
+        ReceiptItem bread = new ReceiptItem("Bread", 3.33, 1);
+        bread.setAssignedUsers(List.of(3));
+
+        ReceiptData receipt = new ReceiptData();
+        receipt.setItems(List.of(steak, soup, bread));
+        receipt.setTax(3.47);
+        receipt.setTip(6.50);
+
+        IntLongHashMap cents = itemSplitService.calculateUserOwedCents(receipt, true);
+        assertEquals(4333 + 347 + 650, cents.sum());
+        // 997 cents of tax and tip split 3000 : 1000 : 333
+        assertEquals(3000 + 690, cents.get(1));
+        assertEquals(1000 + 230, cents.get(2));
+        assertEquals(333 + 77, cents.get(3));
+
+        assertEquals(3.33, itemSplitService.calculateUserOwedAmounts(receipt).get(3), 0.001);
+    }
+}
@@ -0,0 +1,146 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.splitshare.splitshare.dto.OcrResult;
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.service.BatchExtractionService;
+import com.splitshare.splitshare.service.ExecutionModel;
+import com.splitshare.splitshare.service.ParallelStripOcr;
+import com.splitshare.splitshare.service.ReceiptProcessingService;
+import com.splitshare.splitshare.service.ReceiptStorageService;
+
+public class BatchExtractionServiceTest {
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+    private static final byte[] PDF_HEADER = {'%', 'P', 'D', 'F', '-', '1', '.', '4'};
+
+    private ReceiptProcessingService processingService;
+    private ReceiptStorageService storageService;
+    private ExecutionModel execution;
+    private BatchExtractionService batchService;
+
+    @BeforeEach
+    void setUp() {
+        processingService = mock(ReceiptProcessingService.class);
+        storageService = mock(ReceiptStorageService.class);
+        when(storageService.storeReceiptText(anyLong(), anyString(), any(ReceiptData.class), anyString())).thenReturn("receipt");
+        // 4 workers but only 2 images may be in flight
+        execution = new ExecutionModel(4, 10, ExecutionModel.IO_PLATFORM, 1, 10);
+        batchService = new BatchExtractionService(processingService, storageService, execution, 4, 2, 100, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+        execution.shutdown();
+    }
+
+    private static byte[] withHeader(byte[] header, int content) {
+        byte[] bytes = Arrays.copyOf(header, header.length + 1);
+        bytes[header.length] = (byte) content;
+        return bytes;
+    }
+
+    @Test
+    void testEveryFileIsReportedAndInFlightImagesAreCapped() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(processingService.process(any(byte[].class), anyString())).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            concurrent.decrementAndGet();
+            return new OcrResult("TOTAL 1.00", new ReceiptData(), 1);
+        });
+
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            files.add(new MockMultipartFile("files", "r" + i + ".png", "image/png", withHeader(PNG_HEADER, i)));
+        }
+        // PDFs are receipts too, and types are read from the bytes rather than the client's Content-Type
+        files.add(new MockMultipartFile("files", "e-receipt.pdf", "application/octet-stream", withHeader(PDF_HEADER, 0)));
+        files.add(new MockMultipartFile("files", "notes.txt", "image/png", "hello".getBytes()));
+
+        List<Map<String, Object>> lines = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        batchService.extractAll(1L, files, lines::add, done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Batch should finish");
+        assertEquals(11, lines.size());
+        assertTrue(maxConcurrent.get() <= 2, "At most 2 images in flight, saw " + maxConcurrent.get());
+        assertEquals(10, lines.stream().filter(line -> "ok".equals(line.get("status"))).count());
+        Map<String, Object> rejected = lines.stream().filter(line -> "notes.txt".equals(line.get("fileName"))).findFirst().orElseThrow();
+        assertEquals("error", rejected.get("status"));
+        assertEquals(10, rejected.get("index"));
+        assertEquals("ok", lines.stream().filter(line -> "e-receipt.pdf".equals(line.get("fileName"))).findFirst().orElseThrow().get("status"));
+        assertEquals(0, batchService.getInFlight());
+        // OCR ran on the shared CPU pool, not on the batch workers
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("ocr-cpu-")), threads.toString());
+    }
+
+    @Test
+    void testBatchRunsInTheRequestedOcrMode() throws Exception {
+        when(processingService.process(any(byte[].class), anyString())).thenReturn(new OcrResult("TOTAL 1.00", new ReceiptData(), 1));
+
+        CountDownLatch done = new CountDownLatch(1);
+        batchService.extractAll(1L, List.of(new MockMultipartFile("files", "long.png", "image/png", withHeader(PNG_HEADER, 0))),
+                ParallelStripOcr.MODE_STRIPS, line -> { }, done::countDown);
+
+        assertTrue(done.await(10, TimeUnit.SECONDS), "Batch should finish");
+        verify(processingService).process(any(byte[].class), eq(ParallelStripOcr.MODE_STRIPS));
+    }
+
+    @Test
+    void testFilesBeyondTheQueueAreReportedAsBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(processingService.process(any(byte[].class), anyString())).thenAnswer(invocation -> {
+            release.await(10, TimeUnit.SECONDS);
+            return new OcrResult("TOTAL 1.00", new ReceiptData(), 1);
+        });
+        // One worker and one queued file, so two of the four files find no room
+        BatchExtractionService small = new BatchExtractionService(processingService, storageService, execution, 1, 1, 100, 1);
+        try {
+            List<MultipartFile> files = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                files.add(new MockMultipartFile("files", "r" + i + ".png", "image/png", withHeader(PNG_HEADER, i)));
+            }
+            List<Map<String, Object>> lines = new CopyOnWriteArrayList<>();
+            CountDownLatch done = new CountDownLatch(1);
+            small.extractAll(1L, files, lines::add, done::countDown);
+
+            assertEquals(2, lines.size(), "Rejected files are reported right away");
+            assertTrue(lines.stream().allMatch(line -> "error".equals(line.get("status"))
+                    && line.get("error").toString().startsWith("The server is busy")), lines.toString());
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS), "Batch should finish");
+            assertEquals(4, lines.size());
+            assertEquals(2, lines.stream().filter(line -> "ok".equals(line.get("status"))).count());
+        } finally {
+            small.shutdown();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.splitshare.splitshare.dto.OcrResult;
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.service.ExecutionModel;
+import com.splitshare.splitshare.service.OcrJob;
+import com.splitshare.splitshare.service.OcrJobService;
+import com.splitshare.splitshare.service.ReceiptProcessingService;
+import com.splitshare.splitshare.service.ReceiptStorageService;
+
+/**
+ * Saturates OCR through the real server with synchronous, async and batch extractions, more than
+ * there are Tomcat threads, and checks that listing receipts from a real store still answers
+ * quickly and that no more OCR runs at once than the CPU pool has threads.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=4",
+        "execution.cpu.threads=1",
+        "execution.io.mode=platform"})
+public class ExecutionModelLoadTest {
+
+    private static final long OCR_MILLIS = 500;
+    private static final int EXTRACTS = 4;
+    private static final int BATCH_FILES = 4;
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+    private static final String BOUNDARY = "----receipt-boundary";
+    private static final int STORED_RECEIPTS = 50;
+
+    @TempDir
+    static Path storageDir;
+
+    @DynamicPropertySource
+    static void storage(DynamicPropertyRegistry registry) {
+        registry.add("receipt.storage.path", () -> storageDir.toString());
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ExecutionModel execution;
+
+    @Autowired
+    private OcrJobService jobService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ReceiptStorageService storageService;
+
+    @MockitoBean
+    private ReceiptProcessingService processingService;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    @Test
+    void testListingStaysFastWhileOcrIsSaturated() throws Exception {
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        Answer<OcrResult> ocr = invocation -> {
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(OCR_MILLIS);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+            return new OcrResult("TOTAL 1.00", new ReceiptData(), 1);
+        };
+        // /extract OCRs the scratch file, async jobs and batches the bytes
+        when(processingService.process(any(Path.class), anyString(), anyString())).thenAnswer(ocr);
+        when(processingService.process(any(byte[].class), anyString())).thenAnswer(ocr);
+        // Listing reads these back from disk
+        for (int i = 0; i < STORED_RECEIPTS; i++) {
+            storageService.storeReceiptText(1L, "TOTAL " + i + ".00", new ReceiptData(), "stored" + i + ".png");
+        }
+
+        List<CompletableFuture<HttpResponse<String>>> extracts = new ArrayList<>();
+        List<CompletableFuture<HttpResponse<String>>> asyncExtracts = new ArrayList<>();
+        for (int i = 0; i < EXTRACTS; i++) {
+            extracts.add(client.sendAsync(extractRequest("receipt" + i + ".png", false), HttpResponse.BodyHandlers.ofString()));
+            asyncExtracts.add(client.sendAsync(extractRequest("async" + i + ".png", true), HttpResponse.BodyHandlers.ofString()));
+        }
+        CompletableFuture<HttpResponse<String>> batch = client.sendAsync(batchRequest(BATCH_FILES),
+                HttpResponse.BodyHandlers.ofString());
+        // Wait until the single CPU thread is busy and the rest are queued behind it
+        long deadline = System.currentTimeMillis() + 5000;
+        while (execution.getCpuQueued() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(execution.getCpuQueued() >= 2, "OCR was never saturated");
+
+        long worst = 0;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            HttpResponse<String> listing = client.send(HttpRequest.newBuilder(uri("/api/receipts/1?limit=100")).GET().build(),
+                    HttpResponse.BodyHandlers.ofString());
+            worst = Math.max(worst, (System.nanoTime() - start) / 1_000_000);
+            assertEquals(200, listing.statusCode());
+            assertTrue(objectMapper.readTree(listing.body()).get("receipts").size() >= STORED_RECEIPTS, listing.body());
+            Thread.sleep(50);
+        }
+        // With OCR holding the Tomcat threads a listing would wait for whole OCR runs
+        assertTrue(worst < OCR_MILLIS, "Listing took " + worst + " ms while OCR was saturated");
+
+        for (CompletableFuture<HttpResponse<String>> extract : extracts) {
+            HttpResponse<String> response = extract.get();
+            assertEquals(200, response.statusCode(), response.body());
+            assertTrue(response.body().contains("receiptId"), response.body());
+        }
+        List<String> jobIds = new ArrayList<>();
+        for (CompletableFuture<HttpResponse<String>> extract : asyncExtracts) {
+            HttpResponse<String> response = extract.get();
+            assertEquals(202, response.statusCode(), response.body());
+            jobIds.add(objectMapper.readTree(response.body()).get("jobId").asText());
+        }
+        HttpResponse<String> batchResponse = batch.get();
+        assertEquals(200, batchResponse.statusCode());
+        assertEquals(BATCH_FILES, batchResponse.body().lines().filter(line -> line.contains("\"status\":\"ok\"")).count(),
+                batchResponse.body());
+        for (String jobId : jobIds) {
+            long jobDeadline = System.currentTimeMillis() + 30_000;
+            while (!jobService.getJob(jobId).getStatus().isFinished() && System.currentTimeMillis() < jobDeadline) {
+                Thread.sleep(50);
+            }
+            assertEquals(OcrJob.Status.COMPLETED, jobService.getJob(jobId).getStatus());
+        }
+        // Every kind of extraction shared the single CPU thread, and all of them were stored
+        assertEquals(1, maxConcurrent.get());
+        assertEquals(STORED_RECEIPTS + 2 * EXTRACTS + BATCH_FILES,
+                storageService.listReceipts(1L, null, 100).getReceipts().size());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private HttpRequest extractRequest(String fileName, boolean async) {
+        return multipartRequest("/api/receipts/extract?userId=1&async=" + async, "file", fileName);
+    }
+
+    private HttpRequest batchRequest(int files) {
+        String[] fileNames = new String[files];
+        for (int i = 0; i < files; i++) {
+            fileNames[i] = "batch" + i + ".png";
+        }
+        return multipartRequest("/api/receipts/extract-batch?userId=1", "files", fileNames);
+    }
+
+    // A multipart body with one small PNG part per file name
+    private HttpRequest multipartRequest(String path, String field, String... fileNames) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] image = Arrays.copyOf(PNG_HEADER, 64);
+        for (String fileName : fileNames) {
+            body.writeBytes(("--" + BOUNDARY + "\r\n"
+                    + "Content-Disposition: form-data; name=\"" + field + "\"; filename=\"" + fileName + "\"\r\n"
+                    + "Content-Type: image/png\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+            body.writeBytes(image);
+            body.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        body.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .timeout(Duration.ofSeconds(60))
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.splitshare.splitshare.service.ExecutionModel;
+
+public class ExecutionModelTest {
+
+    private ExecutionModel execution;
+
+    @AfterEach
+    void tearDown() {
+        if (execution != null) {
+            execution.shutdown();
+        }
+    }
+
+    @Test
+    void testWorkRunsOnItsOwnThreads() throws Exception {
+        execution = new ExecutionModel(2, 10, ExecutionModel.IO_PLATFORM, 4, 10);
+
+        assertEquals(2, execution.getCpuThreads());
+        assertFalse(execution.isVirtualIo());
+        assertTrue(execution.cpu(() -> Thread.currentThread().getName()).get().startsWith("ocr-cpu-"));
+        assertTrue(execution.io(() -> Thread.currentThread().getName()).get().startsWith("io-"));
+        // An I/O thread hands OCR to the CPU pool and waits for it
+        String cpuThread = execution.io(() -> execution.onCpu(() -> Thread.currentThread().getName())).get();
+        assertTrue(cpuThread.startsWith("ocr-cpu-"), cpuThread);
+    }
+
+    @Test
+    void testCpuThreadsDefaultToOnePerCore() {
+        execution = new ExecutionModel(0, 10, ExecutionModel.IO_PLATFORM, 4, 10);
+        assertEquals(Runtime.getRuntime().availableProcessors(), execution.getCpuThreads());
+    }
+
+    @Test
+    void testAutoUsesVirtualThreadsWhenTheRuntimeHasThem() throws Exception {
+        execution = new ExecutionModel(1, 10, ExecutionModel.IO_AUTO, 4, 10);
+
+        boolean supported = Runtime.version().feature() >= 21;
+        assertEquals(supported, execution.isVirtualIo());
+        // Either way requests still run
+        assertEquals("done", execution.io(() -> "done").get());
+    }
+
+    @Test
+    void testUnknownIoModeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ExecutionModel(1, 10, "green", 4, 10));
+    }
+
+    @Test
+    void testOnCpuRethrowsTheOriginalException() {
+        execution = new ExecutionModel(1, 10, ExecutionModel.IO_PLATFORM, 1, 10);
+        assertThrows(IOException.class, () -> execution.onCpu(() -> {
+            throw new IOException("unreadable");
+        }));
+    }
+
+    @Test
+    void testFullCpuQueueFailsTheFuture() throws Exception {
+        execution = new ExecutionModel(1, 1, ExecutionModel.IO_PLATFORM, 1, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = execution.cpu(() -> release.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = execution.cpu(() -> true);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> execution.cpu(() -> true).get());
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+        assertThrows(RejectedExecutionException.class, () -> execution.onCpu(() -> true));
+
+        release.countDown();
+        assertTrue(running.get());
+        assertTrue(queued.get());
+    }
+
+    @Test
+    void testFullIoQueueFailsTheFuture() throws Exception {
+        execution = new ExecutionModel(1, 1, ExecutionModel.IO_PLATFORM, 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> running = execution.io(() -> release.await(10, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = execution.io(() -> true);
+
+        // Requests beyond the queue are turned away rather than piling up
+        ExecutionException e = assertThrows(ExecutionException.class, () -> execution.io(() -> true).get());
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+
+        release.countDown();
+        assertTrue(running.get());
+        assertTrue(queued.get());
+    }
+
+    @Test
+    void testIoStaysResponsiveWhileCpuIsSaturated() throws Exception {
+        execution = new ExecutionModel(1, 100, ExecutionModel.IO_PLATFORM, 4, 10);
+        // Ten seconds of queued "OCR" on the only CPU thread
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            execution.cpu(() -> release.await(1, TimeUnit.SECONDS));
+        }
+
+        long start = System.nanoTime();
+        assertEquals("listed", execution.io(() -> "listed").get(1, TimeUnit.SECONDS));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(millis < 500, "I/O waited " + millis + " ms behind OCR");
+        assertEquals(9, execution.getCpuQueued());
+        release.countDown();
+    }
+}
@@ -7,9 +7,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.util.ResourceUtils;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import com.splitshare.splitshare.service.ImageHandlingService;
+import com.splitshare.splitshare.service.NativeMemoryBudget;
 import com.splitshare.splitshare.service.OcrEngine;
+import com.splitshare.splitshare.service.OcrEnginePool;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.OcrTierPolicy;
+import com.splitshare.splitshare.service.ParallelStripOcr;
 import com.splitshare.splitshare.service.Preprocesing;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+import com.splitshare.splitshare.service.ReceiptRegionDetector;
+import com.splitshare.splitshare.service.ResolutionNormalizer;
 import java.awt.image.BufferedImage;
 
 public class ImageHandlingTest {
@@ -18,7 +28,12 @@ public class ImageHandlingTest {
     @BeforeEach
     void setUp() {
         ocr = new OcrEngine();
-        imageHandlingService = new ImageHandlingService();
+        OcrMetrics metrics = new OcrMetrics(new SimpleMeterRegistry());
+        imageHandlingService = new ImageHandlingService(metrics,
+                new NativeMemoryBudget(0, 30000), new ReceiptRegionDetector(true, 512, 0.2, 0.9),
+                new ResolutionNormalizer(true, 32, 1600, 0.25, 4, 0.2),
+                new ParallelStripOcr(new OcrEnginePool(1, 30000), metrics, 2000, 300, 0),
+                new OcrTierPolicy(new ReceiptExtractionHelper(), metrics, true, 0.75, 1.25, 0.05));
     }
 
     @Test
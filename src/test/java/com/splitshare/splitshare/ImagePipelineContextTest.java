@@ -0,0 +1,64 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.ResourceUtils;
+
+import com.splitshare.splitshare.service.ImagePipelineContext;
+import com.splitshare.splitshare.service.ImageQualityChecker;
+
+public class ImagePipelineContextTest {
+
+    @Test
+    void testDecodeFromBytesMatchesFileRead() throws Exception {
+        File imageFile = ResourceUtils.getFile("classpath:receipt_3.png");
+        byte[] bytes = Files.readAllBytes(imageFile.toPath());
+
+        try (ImagePipelineContext decoded = ImagePipelineContext.decode(bytes);
+             ImagePipelineContext read = ImagePipelineContext.read(imageFile.getAbsolutePath())) {
+            assertEquals(read.getWidth(), decoded.getWidth());
+            assertEquals(read.getHeight(), decoded.getHeight());
+            assertSame(decoded.getGray(), decoded.getGray(), "Grayscale image should be converted only once");
+        }
+    }
+
+    @Test
+    void testBlurClassificationUnchangedForDecodedImages() throws Exception {
+        for (String name : new String[] {"clear_receipt.png", "blurry_receipt.png", "Blurry_1.png", "receipt1.png"}) {
+            File imageFile = ResourceUtils.getFile("classpath:" + name);
+            boolean expected = ImageQualityChecker.isBlurry(imageFile.getAbsolutePath());
+            try (ImagePipelineContext context = ImagePipelineContext.decode(Files.readAllBytes(imageFile.toPath()))) {
+                assertEquals(expected, ImageQualityChecker.isBlurry(context.getGray()), name);
+            }
+        }
+    }
+
+    @Test
+    void testGrayOutlivesTheScopeItWasFirstAskedForIn() throws Exception {
+        File imageFile = ResourceUtils.getFile("classpath:receipt1.png");
+        try (ImagePipelineContext context = ImagePipelineContext.read(imageFile.getAbsolutePath())) {
+            Mat gray;
+            try (PointerScope stage = new PointerScope()) {
+                gray = context.getGray();
+            }
+            assertNotEquals(0, gray.address(), "Grayscale image was freed with the stage scope");
+            assertSame(gray, context.getGray());
+            assertEquals(context.getWidth(), gray.cols());
+        }
+    }
+
+    @Test
+    void testDecodeRejectsNonImageBytes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ImagePipelineContext.decode("not an image".getBytes()));
+    }
+}
@@ -1,11 +1,20 @@
 package com.splitshare.splitshare;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import java.io.File;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.MatVector;
+import org.bytedeco.opencv.opencv_core.Scalar;
 import org.junit.jupiter.api.Test;
 import org.springframework.util.ResourceUtils;
+import com.splitshare.splitshare.service.ImagePipelineContext;
 import com.splitshare.splitshare.service.ImageQualityChecker;
+import com.splitshare.splitshare.service.QualityReport;
 
 public class ImageQualityCheckerTest {
     
@@ -43,4 +52,64 @@ public class ImageQualityCheckerTest {
         assertFalse(isBlurry, "Clear image should be detected as clear (variance=" + variance + ")");
     }
 
+    @Test
+    public void testReportClassifiesLikeFullSizeVariance() {
+        for (String name : new String[] {"clear_receipt.png", "blurry_receipt.png", "Blurry_1.png",
+                "receipt1.png", "receipt2.png", "receipt_3.png"}) {
+            String imagePath = "src/test/resources/" + name;
+            boolean expected = ImageQualityChecker.computeVariance(imagePath) < BLUR_THRESHOLD;
+            try (ImagePipelineContext context = ImagePipelineContext.read(imagePath)) {
+                QualityReport report = ImageQualityChecker.analyze(context.getGray());
+                assertEquals(expected, report.isBlurry(), name + ": " + report);
+                // The 1024x1536 photos are analyzed at half size
+                assertEquals(context.getHeight() > 1024 ? 1 : 0, report.getLevel(), name);
+            }
+        }
+    }
+
+    @Test
+    public void testLargePhotosAreClassifiedOnTheSameScale() {
+        for (String name : new String[] {"clear_receipt.png", "blurry_receipt.png", "Blurry_1.png", "receipt_3.png"}) {
+            try (Mat gray = opencv_imgcodecs.imread("src/test/resources/" + name, opencv_imgcodecs.IMREAD_GRAYSCALE)) {
+                double sharpness = ImageQualityChecker.analyze(gray).getSharpness();
+                // Tiling keeps the pixel-level detail but makes the photo as large as a phone camera's
+                for (int copies = 3; copies <= 4; copies++) {
+                    try (Mat large = tile(gray, copies)) {
+                        boolean expected = ImageQualityChecker.computeVariance(large) < BLUR_THRESHOLD;
+                        QualityReport report = ImageQualityChecker.analyze(large);
+                        assertTrue(report.getLevel() >= 2, name + " x" + copies + ": " + report);
+                        assertEquals(expected, report.isBlurry(), name + " x" + copies + ": " + report);
+                        assertEquals(sharpness, report.getSharpness(), sharpness * 0.05, name + " x" + copies);
+                    }
+                }
+            }
+        }
+    }
+
+    // copies x copies grid of the image
+    private static Mat tile(Mat image, int copies) {
+        try (MatVector row = new MatVector(copies); MatVector rows = new MatVector(copies); Mat strip = new Mat()) {
+            for (int i = 0; i < copies; i++) row.put(i, image);
+            opencv_core.hconcat(row, strip);
+            for (int i = 0; i < copies; i++) rows.put(i, strip);
+            Mat grid = new Mat();
+            opencv_core.vconcat(rows, grid);
+            return grid;
+        }
+    }
+
+    @Test
+    public void testReportMeasuresContrastBrightnessAndGlare() {
+        // Left half mid gray, right half blown out
+        try (Mat image = new Mat(400, 400, opencv_core.CV_8UC1, new Scalar(100.0))) {
+            try (Mat right = image.colRange(200, 400); Scalar white = new Scalar(255.0)) {
+                right.put(white);
+            }
+            QualityReport report = ImageQualityChecker.analyze(image);
+            assertEquals(177.5, report.getBrightness(), 0.01);
+            assertEquals(77.5, report.getContrast(), 0.01);
+            assertEquals(0.5, report.getGlare(), 0.01);
+            assertEquals(0, report.getLevel());
+        }
+    }
 }
@@ -0,0 +1,103 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.dto.QualityCheck;
+import com.splitshare.splitshare.service.ImagePipelineContext;
+import com.splitshare.splitshare.service.ImageQualityChecker;
+import com.splitshare.splitshare.service.ImageQualityService;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.UnreadableImageException;
+
+public class ImageQualityServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ImageQualityService service(OcrMetrics metrics, boolean gateEnabled) {
+        return new ImageQualityService(metrics, gateEnabled, 60, 0.05);
+    }
+
+    @Test
+    void testBlurryPhotoGetsARetakeHint() throws Exception {
+        ImageQualityService service = service(new OcrMetrics(new SimpleMeterRegistry()), false);
+
+        QualityCheck blurry = service.check(Paths.get("src/test/resources/blurry_receipt.png"));
+        assertTrue(blurry.isBlurry());
+        assertFalse(blurry.isUsable());
+        assertTrue(blurry.getHints().get(0).contains("blurry"));
+
+        QualityCheck clear = service.check(Paths.get("src/test/resources/clear_receipt.png"));
+        assertTrue(clear.isUsable());
+        assertTrue(clear.getHints().isEmpty(), "Got " + clear.getHints());
+
+        // The white background of a digital receipt is not glare
+        assertTrue(service.check(Paths.get("src/test/resources/receipt_3.png")).getHints().isEmpty());
+    }
+
+    @Test
+    void testDarkPhotoIsNotUsable() throws Exception {
+        Path dark = tempDir.resolve("dark.png");
+        try (ImagePipelineContext context = ImagePipelineContext.read("src/test/resources/receipt1.png");
+             Mat dimmed = new Mat()) {
+            context.getGray().convertTo(dimmed, -1, 0.2, 0);
+            opencv_imgcodecs.imwrite(dark.toString(), dimmed);
+        }
+        QualityCheck check = service(new OcrMetrics(new SimpleMeterRegistry()), false).check(dark);
+        assertFalse(check.isUsable());
+        assertTrue(check.getBrightness() < 60);
+        assertTrue(check.getHints().stream().anyMatch(hint -> hint.contains("too dark")), "Got " + check.getHints());
+    }
+
+    @Test
+    void testLargePhotoIsDecodedReducedWithTheSameVerdict() throws Exception {
+        // A 12 megapixel photo is decoded at a quarter of its size, blur must be judged as in the pipeline
+        Path large = tempDir.resolve("large.jpg");
+        try (ImagePipelineContext context = ImagePipelineContext.read("src/test/resources/clear_receipt.png");
+             Mat enlarged = new Mat(); Size size = new Size(3072, 4608)) {
+            opencv_imgproc.resize(context.getGray(), enlarged, size, 0, 0, opencv_imgproc.INTER_CUBIC);
+            opencv_imgcodecs.imwrite(large.toString(), enlarged);
+        }
+        boolean expected;
+        try (ImagePipelineContext context = ImagePipelineContext.read(large.toString())) {
+            expected = ImageQualityChecker.isBlurry(context.getGray());
+        }
+        assertEquals(expected, service(new OcrMetrics(new SimpleMeterRegistry()), false).check(large).isBlurry());
+    }
+
+    @Test
+    void testGateOnlyRunsWhenEnabled() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        Path blurry = Paths.get("src/test/resources/blurry_receipt.png");
+
+        assertNull(service(new OcrMetrics(registry), false).gate(blurry));
+
+        QualityCheck check = service(new OcrMetrics(registry), true).gate(blurry);
+        assertFalse(check.isUsable());
+        assertEquals(1.0, registry.get(OcrMetrics.QUALITY_GATE).tag("result", "rejected").counter().count());
+    }
+
+    @Test
+    void testUnreadableFileIsRejected() throws Exception {
+        Path junk = Files.write(tempDir.resolve("junk.png"), new byte[] {1, 2, 3});
+        assertThrows(UnreadableImageException.class,
+                () -> service(new OcrMetrics(new SimpleMeterRegistry()), false).check(junk));
+    }
+}
@@ -0,0 +1,161 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.splitshare.splitshare.service.LogStructuredReceiptStore;
+
+public class LogStructuredReceiptStoreTest {
+
+    @TempDir
+    Path storageDir;
+
+    private LogStructuredReceiptStore open(long segmentMaxBytes) throws IOException {
+        return new LogStructuredReceiptStore(storageDir.toString(), segmentMaxBytes, 0, 0.5, false);
+    }
+
+    private Path lastSegment() throws IOException {
+        try (Stream<Path> files = Files.list(storageDir.resolve("log"))) {
+            return files.sorted().reduce((first, second) -> second).orElseThrow();
+        }
+    }
+
+    @Test
+    void testRecordsSurviveRestart() throws Exception {
+        LogStructuredReceiptStore store = open(1024 * 1024);
+        store.writeText(1L, "r1", "Store: Walmart");
+        store.writeData(1L, "r1", "{\"v\":1}".getBytes(StandardCharsets.UTF_8));
+        store.writeData(1L, "r1", "{\"v\":2}".getBytes(StandardCharsets.UTF_8));
+        store.writeData(2L, "r1", "{\"user\":2}".getBytes(StandardCharsets.UTF_8));
+        store.shutdown();
+
+        LogStructuredReceiptStore reopened = open(1024 * 1024);
+        assertEquals("Store: Walmart", reopened.readText(1L, "r1"));
+        assertArrayEquals("{\"v\":2}".getBytes(StandardCharsets.UTF_8), reopened.readData(1L, "r1"), "Latest write wins");
+        assertArrayEquals("{\"user\":2}".getBytes(StandardCharsets.UTF_8), reopened.readData(2L, "r1"));
+        assertNull(reopened.readText(2L, "r1"));
+        assertEquals(3, reopened.getRecordCount());
+        reopened.shutdown();
+    }
+
+    @Test
+    void testTornTailIsTruncatedOnRecovery() throws Exception {
+        LogStructuredReceiptStore store = open(1024 * 1024);
+        store.writeText(1L, "r1", "complete");
+        store.shutdown();
+
+        // Simulate a crash halfway through the next append
+        Path segment = lastSegment();
+        long intactSize = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {12, 34, 56, 78, 2, 0, 0, 0}));
+        }
+
+        LogStructuredReceiptStore reopened = open(1024 * 1024);
+        assertEquals("complete", reopened.readText(1L, "r1"));
+        assertEquals(intactSize, Files.size(segment));
+
+        reopened.writeText(1L, "r2", "after crash");
+        reopened.shutdown();
+        LogStructuredReceiptStore again = open(1024 * 1024);
+        assertEquals("after crash", again.readText(1L, "r2"));
+        assertEquals("complete", again.readText(1L, "r1"));
+        again.shutdown();
+    }
+
+    @Test
+    void testCompactionKeepsLatestRecordsAndRemovesSegments() throws Exception {
+        LogStructuredReceiptStore store = open(256);
+        for (int round = 0; round < 20; round++) {
+            for (int edit = 0; edit < 3; edit++) {
+                store.writeData(7L, "receipt", ("{\"round\":" + round + "}").getBytes(StandardCharsets.UTF_8));
+            }
+            store.writeText(7L, "round-" + round, "kept " + round);
+        }
+        int segmentsBefore = store.getSegmentCount();
+        assertTrue(segmentsBefore > 2);
+
+        assertTrue(store.compact() > 0);
+        assertTrue(store.getSegmentCount() < segmentsBefore);
+        assertTrue(store.getReclaimedBytes() > 0);
+        assertArrayEquals("{\"round\":19}".getBytes(StandardCharsets.UTF_8), store.readData(7L, "receipt"));
+        store.shutdown();
+
+        LogStructuredReceiptStore reopened = open(256);
+        assertArrayEquals("{\"round\":19}".getBytes(StandardCharsets.UTF_8), reopened.readData(7L, "receipt"));
+        for (int round = 0; round < 20; round++) {
+            assertEquals("kept " + round, reopened.readText(7L, "round-" + round));
+        }
+        reopened.shutdown();
+    }
+
+    @Test
+    void testDeltaJournalSurvivesRestartAndCompaction() throws Exception {
+        LogStructuredReceiptStore store = open(256);
+        store.appendDelta(1L, "r1", "{\"version\":1}".getBytes(StandardCharsets.UTF_8));
+        store.appendDelta(1L, "r1", "{\"version\":2}".getBytes(StandardCharsets.UTF_8));
+        store.appendDelta(1L, "r2", "{\"version\":1}".getBytes(StandardCharsets.UTF_8));
+        store.clearDeltas(1L, "r2");
+        for (int i = 0; i < 20; i++) {
+            store.writeData(1L, "filler", new byte[32]);
+        }
+        store.compact();
+        store.shutdown();
+
+        LogStructuredReceiptStore reopened = open(256);
+        List<String> deltas = new ArrayList<>();
+        reopened.readDeltas(1L, "r1").forEach(delta -> deltas.add(new String(delta, StandardCharsets.UTF_8)));
+        deltas.sort(null);
+        assertEquals(List.of("{\"version\":1}", "{\"version\":2}"), deltas);
+        assertTrue(reopened.readDeltas(1L, "r2").isEmpty(), "Cleared journals stay cleared after recovery");
+        reopened.shutdown();
+    }
+
+    @Test
+    void testTombstoneOutlivesCompactionWhileOlderDeltasRemain() throws Exception {
+        LogStructuredReceiptStore store = open(256);
+        // Segment 1 holds the deltas and enough live data not to be compacted
+        store.appendDelta(1L, "r1", "{\"version\":1}".getBytes(StandardCharsets.UTF_8));
+        store.appendDelta(1L, "r1", "{\"version\":2}".getBytes(StandardCharsets.UTF_8));
+        store.writeData(1L, "kept", new byte[110]);
+        store.writeData(1L, "filler", new byte[32]);
+        assertEquals(2, store.getSegmentCount());
+        // The tombstone lands in segment 2, whose other records are all overwritten later
+        store.clearDeltas(1L, "r1");
+        for (int i = 0; i < 10; i++) {
+            store.writeData(1L, "filler", new byte[32]);
+        }
+        assertTrue(store.getSegmentCount() > 2);
+
+        store.compact();
+        store.shutdown();
+
+        LogStructuredReceiptStore reopened = open(256);
+        assertTrue(reopened.readDeltas(1L, "r1").isEmpty(), "The cleared deltas in segment 1 stay cleared");
+        // Once segment 1 is gone the tombstone has nothing left to clear and is compacted away too
+        reopened.writeData(1L, "kept", new byte[110]);
+        int before = reopened.getSegmentCount();
+        assertTrue(reopened.compact() >= 2, "Removed " + (before - reopened.getSegmentCount()) + " segments");
+        reopened.shutdown();
+
+        LogStructuredReceiptStore compacted = open(256);
+        assertTrue(compacted.readDeltas(1L, "r1").isEmpty());
+        compacted.shutdown();
+    }
+}
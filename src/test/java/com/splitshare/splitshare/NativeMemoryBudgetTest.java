@@ -0,0 +1,70 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.ResourceUtils;
+
+import com.splitshare.splitshare.service.ImagePipelineContext;
+import com.splitshare.splitshare.service.NativeMemoryBudget;
+import com.splitshare.splitshare.service.OcrEngineUnavailableException;
+
+public class NativeMemoryBudgetTest {
+
+    @Test
+    void testReservationWaitsUntilBudgetIsReleased() throws Exception {
+        NativeMemoryBudget budget = new NativeMemoryBudget(10 * 1024, 5000);
+
+        NativeMemoryBudget.Reservation first = budget.reserve(8 * 1024);
+        assertEquals(8 * 1024, budget.getReservedBytes());
+
+        CompletableFuture<NativeMemoryBudget.Reservation> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return budget.reserve(8 * 1024);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertEquals(1, budget.getWaiting(), "Second image should wait for budget");
+
+        first.close();
+        first.close();
+        try (NativeMemoryBudget.Reservation reservation = second.get(5, TimeUnit.SECONDS)) {
+            assertEquals(8 * 1024, budget.getReservedBytes(), "Closing twice must not release twice");
+        }
+        assertEquals(0, budget.getReservedBytes());
+    }
+
+    @Test
+    void testReservationTimesOutAndOversizedImagesStillRun() throws Exception {
+        NativeMemoryBudget budget = new NativeMemoryBudget(4 * 1024, 50);
+
+        try (NativeMemoryBudget.Reservation whole = budget.reserve(1024L * 1024 * 1024)) {
+            assertEquals(4 * 1024, whole.getBytes(), "Oversized reservations are capped to the budget");
+            assertThrows(OcrEngineUnavailableException.class, () -> budget.reserve(1024));
+        }
+        assertEquals(1, budget.getTimeoutCount());
+    }
+
+    @Test
+    void testEstimateUsesHeaderDimensions() throws Exception {
+        File imageFile = ResourceUtils.getFile("classpath:receipt1.png");
+        byte[] bytes = Files.readAllBytes(imageFile.toPath());
+
+        long estimate = NativeMemoryBudget.estimateBytes(bytes);
+        try (ImagePipelineContext context = ImagePipelineContext.decode(bytes)) {
+            long pixels = (long) context.getWidth() * context.getHeight();
+            assertEquals(0, estimate % pixels, "Estimate should scale with the decoded pixel count");
+            assertTrue(estimate >= pixels * 4, "Estimate must cover at least the color and gray copies");
+        }
+        assertEquals(estimate, NativeMemoryBudget.estimateBytes(imageFile));
+    }
+}
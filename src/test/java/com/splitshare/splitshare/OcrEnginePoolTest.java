@@ -0,0 +1,87 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.junit.jupiter.api.Test;
+
+import com.splitshare.splitshare.service.OcrEngine;
+import com.splitshare.splitshare.service.OcrEnginePool;
+import com.splitshare.splitshare.service.OcrEngineUnavailableException;
+
+public class OcrEnginePoolTest {
+
+    @Test
+    void testBorrowAndReleaseTracksUsage() throws Exception {
+        OcrEnginePool pool = new OcrEnginePool(2, 1000);
+
+        OcrEngine first = pool.borrow();
+        OcrEngine second = pool.borrow();
+        assertNotSame(first, second, "Each caller should get its own engine");
+        assertEquals(2, pool.getInUse());
+        assertEquals(0, pool.getAvailable());
+
+        pool.release(first);
+        assertEquals(1, pool.getInUse());
+        assertSame(first, pool.borrow(), "Released engine should be reused");
+
+        assertEquals(3, pool.getBorrowCount());
+    }
+
+    @Test
+    void testBorrowTimesOutWhenPoolExhausted() throws Exception {
+        OcrEnginePool pool = new OcrEnginePool(1, 50);
+        pool.borrow();
+
+        assertThrows(OcrEngineUnavailableException.class, pool::borrow);
+        assertEquals(1, pool.getTimeoutCount());
+        assertEquals(0, pool.getWaiting());
+    }
+
+    @Test
+    void testTryBorrowDoesNotWait() throws Exception {
+        OcrEnginePool pool = new OcrEnginePool(1, 1000);
+        OcrEngine engine = pool.tryBorrow();
+        assertNotNull(engine);
+        assertNull(pool.tryBorrow(), "No engine is idle");
+        assertEquals(0, pool.getTimeoutCount());
+
+        pool.release(engine);
+        assertSame(engine, pool.tryBorrow());
+    }
+
+    @Test
+    void testDefaultSizeMatchesCores() {
+        OcrEnginePool pool = new OcrEnginePool(0, 1000);
+        assertEquals(Runtime.getRuntime().availableProcessors(), pool.getSize());
+    }
+
+    @Test
+    void testFastIsNotCarriedOverToTheNextCaller() throws Exception {
+        List<Boolean> fastCalls = new ArrayList<>();
+        OcrEngine engine = new OcrEngine() {
+            @Override
+            public String extractText(Mat gray, boolean fast) {
+                fastCalls.add(fast);
+                return "";
+            }
+        };
+        OcrEnginePool pool = new OcrEnginePool(1, 1000, () -> engine);
+
+        try (Mat gray = new Mat(8, 8, opencv_core.CV_8UC1)) {
+            pool.extractText(gray, true);
+            // Same pooled engine, but the plain overload always means the full setting
+            pool.extractText(gray);
+        }
+        assertEquals(List.of(true, false), fastCalls);
+    }
+}
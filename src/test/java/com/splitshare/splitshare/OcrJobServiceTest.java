@@ -0,0 +1,176 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.service.ExecutionModel;
+import com.splitshare.splitshare.service.ImageHandlingService;
+import com.splitshare.splitshare.service.OcrJob;
+import com.splitshare.splitshare.service.OcrJobService;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.OcrResultCache;
+import com.splitshare.splitshare.service.ParallelStripOcr;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+import com.splitshare.splitshare.service.PdfReceiptService;
+import com.splitshare.splitshare.service.ReceiptProcessingService;
+import com.splitshare.splitshare.service.ReceiptStorageService;
+
+public class OcrJobServiceTest {
+    private ImageHandlingService imageHandlingService;
+    private ReceiptStorageService storageService;
+    private ExecutionModel execution;
+    private OcrJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        imageHandlingService = mock(ImageHandlingService.class);
+        storageService = mock(ReceiptStorageService.class);
+        ReceiptProcessingService processingService = new ReceiptProcessingService(
+                imageHandlingService, new ReceiptExtractionHelper(), new OcrResultCache(false, 0, 0, "unused"),
+                new OcrMetrics(new SimpleMeterRegistry()),
+                mock(PdfReceiptService.class));
+        execution = new ExecutionModel(1, 10, ExecutionModel.IO_PLATFORM, 1, 10);
+        jobService = new OcrJobService(processingService, storageService, execution, 1, 1, 30);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+        execution.shutdown();
+    }
+
+    @Test
+    void testJobCompletesWithStoredReceipt() throws Exception {
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenReturn("COFFEE SHOP\nLatte 4.50\nTOTAL 4.50");
+        when(storageService.storeReceiptText(eq(1L), anyString(), any(ReceiptData.class), eq("r.png"))).thenReturn("receipt-1");
+
+        OcrJob job = jobService.submit(1L, "r.png", new byte[] {1, 2, 3});
+        assertSame(job, jobService.getJob(job.getJobId()));
+
+        List<OcrJob.Status> seen = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        job.addListener(changed -> {
+            seen.add(changed.getStatus());
+            if (changed.getStatus().isFinished()) finished.countDown();
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS), "Job should finish");
+        assertEquals(OcrJob.Status.COMPLETED, job.getStatus());
+        assertNotNull(job.getResult());
+        assertEquals("receipt-1", job.getResult().get("receiptId"));
+        assertEquals(4.50, (Double) job.getResult().get("total"), 0.001);
+        assertEquals(OcrJob.Status.COMPLETED, seen.get(seen.size() - 1));
+    }
+
+    @Test
+    void testOcrRunsOnTheSharedCpuPool() throws Exception {
+        List<String> threads = new CopyOnWriteArrayList<>();
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return "TOTAL 1.00";
+        });
+
+        OcrJob job = jobService.submit(1L, "r.png", new byte[] {1});
+        CountDownLatch finished = new CountDownLatch(1);
+        job.addListener(changed -> {
+            if (changed.getStatus().isFinished()) finished.countDown();
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS), "Job should finish");
+        assertEquals(List.of("ocr-cpu-1"), threads);
+    }
+
+    @Test
+    void testJobRunsInTheRequestedOcrMode() throws Exception {
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenReturn("TOTAL 1.00");
+
+        OcrJob job = jobService.submit(1L, "long.png", new byte[] {1}, ParallelStripOcr.MODE_STRIPS);
+        CountDownLatch finished = new CountDownLatch(1);
+        job.addListener(changed -> {
+            if (changed.getStatus().isFinished()) finished.countDown();
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS), "Job should finish");
+        verify(imageHandlingService).handleImage(any(byte[].class), eq(ParallelStripOcr.MODE_STRIPS));
+    }
+
+    @Test
+    void testFailedJobIsLogged() throws Exception {
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenThrow(new IllegalArgumentException("Could not decode image"));
+
+        OcrJob job = jobService.submit(2L, "bad.png", new byte[] {1});
+        CountDownLatch finished = new CountDownLatch(1);
+        job.addListener(changed -> {
+            if (changed.getStatus().isFinished()) finished.countDown();
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS), "Job should finish");
+        assertEquals(OcrJob.Status.FAILED, job.getStatus());
+        assertNotNull(job.getError());
+        verify(storageService).logOcrFailure(2L, "bad.png", "Could not decode image");
+    }
+
+    @Test
+    void testSubmitRejectedWhenQueueFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "TOTAL 1.00";
+        });
+
+        jobService.submit(1L, "a.png", new byte[] {1});
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        jobService.submit(1L, "b.png", new byte[] {1}); // fills the queue
+
+        assertThrows(RejectedExecutionException.class, () -> jobService.submit(1L, "c.png", new byte[] {1}));
+        release.countDown();
+    }
+
+    @Test
+    void testFinishedJobsExpireWhenPolled() throws Exception {
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenReturn("COFFEE SHOP\nLatte 4.50\nTOTAL 4.50");
+        when(storageService.storeReceiptText(eq(1L), anyString(), any(ReceiptData.class), eq("r.png"))).thenReturn("receipt-1");
+        OcrJobService shortLived = new OcrJobService(new ReceiptProcessingService(
+                imageHandlingService, new ReceiptExtractionHelper(), new OcrResultCache(false, 0, 0, "unused"),
+                new OcrMetrics(new SimpleMeterRegistry()), mock(PdfReceiptService.class)), storageService, execution, 1, 1, 0);
+        try {
+            OcrJob job = shortLived.submit(1L, "r.png", new byte[] {1, 2, 3});
+            CountDownLatch finished = new CountDownLatch(1);
+            job.addListener(changed -> {
+                if (changed.getStatus().isFinished()) finished.countDown();
+            });
+            assertTrue(finished.await(5, TimeUnit.SECONDS), "Job should finish");
+
+            Thread.sleep(5);
+            // No other job was submitted, the poll itself drops the expired job
+            assertNull(shortLived.getJob(job.getJobId()));
+        } finally {
+            shortLived.shutdown();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+
+import com.splitshare.splitshare.service.ImageHandlingService;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.OcrResultCache;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+import com.splitshare.splitshare.service.PdfReceiptService;
+import com.splitshare.splitshare.service.ReceiptProcessingService;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class OcrMetricsTest {
+
+    @Test
+    void testStagesAreRecordedPerStageAndMode() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OcrMetrics metrics = new OcrMetrics(registry);
+
+        metrics.time(OcrMetrics.PREPROCESS, "minimal", () -> "done");
+        metrics.time(OcrMetrics.PREPROCESS, "minimal", () -> "done");
+        metrics.time(OcrMetrics.PREPROCESS, "increased", () -> "done");
+        metrics.countMode("minimal");
+
+        assertEquals(2, registry.get(OcrMetrics.STAGE_TIMER)
+                .tags("stage", OcrMetrics.PREPROCESS, "mode", "minimal").timer().count());
+        assertEquals(1, registry.get(OcrMetrics.STAGE_TIMER)
+                .tags("stage", OcrMetrics.PREPROCESS, "mode", "increased").timer().count());
+        assertEquals(1.0, registry.get(OcrMetrics.MODE_COUNTER).tag("mode", "minimal").counter().count());
+    }
+
+    @Test
+    void testFailedStageIsStillTimed() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OcrMetrics metrics = new OcrMetrics(registry);
+
+        assertThrows(IllegalStateException.class, () -> metrics.time(OcrMetrics.OCR, OcrMetrics.NO_MODE, () -> {
+            throw new IllegalStateException("engine failed");
+        }));
+
+        assertEquals(1, registry.get(OcrMetrics.STAGE_TIMER).tag("stage", OcrMetrics.OCR).timer().count());
+    }
+
+    @Test
+    void testProcessingRecordsParseStage() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ImageHandlingService imageHandlingService = mock(ImageHandlingService.class);
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenReturn("COFFEE SHOP\nLatte 4.50\nTOTAL 4.50");
+        ReceiptProcessingService processing = new ReceiptProcessingService(imageHandlingService,
+                new ReceiptExtractionHelper(), new OcrResultCache(false, 0, 0, "unused"), new OcrMetrics(registry),
+                mock(PdfReceiptService.class));
+
+        processing.process(new byte[] {1, 2, 3});
+
+        Timer parse = registry.get(OcrMetrics.STAGE_TIMER).tag("stage", OcrMetrics.PARSE).timer();
+        assertNotNull(parse);
+        assertEquals(1, parse.count());
+    }
+}
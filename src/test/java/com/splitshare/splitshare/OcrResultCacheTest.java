@@ -0,0 +1,117 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.dto.OcrResult;
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.service.ImageHandlingService;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.OcrResultCache;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+import com.splitshare.splitshare.service.PdfReceiptService;
+import com.splitshare.splitshare.service.ReceiptProcessingService;
+
+public class OcrResultCacheTest {
+
+    @TempDir
+    Path storageDir;
+
+    private OcrResult result(String rawText, int parserVersion) {
+        ReceiptData data = new ReceiptData();
+        data.setStoreName(rawText);
+        return new OcrResult(rawText, data, parserVersion);
+    }
+
+    @Test
+    void testKeyDependsOnContentAndMode() {
+        byte[] image = {1, 2, 3};
+        assertEquals(OcrResultCache.key(image, "auto"), OcrResultCache.key(new byte[] {1, 2, 3}, "auto"));
+        assertNotEquals(OcrResultCache.key(image, "auto"), OcrResultCache.key(image, "tiled"));
+        assertNotEquals(OcrResultCache.key(image, "auto"), OcrResultCache.key(new byte[] {1, 2, 4}, "auto"));
+    }
+
+    @Test
+    void testMemoryHitReturnsCopy() {
+        OcrResultCache cache = new OcrResultCache(true, 1024 * 1024, 1024 * 1024, storageDir.toString());
+        cache.put("abc", result("STORE", 1));
+
+        OcrResult first = cache.get("abc");
+        OcrResult second = cache.get("abc");
+        assertEquals("STORE", first.getRawText());
+        assertNotSame(first.getReceiptData(), second.getReceiptData(), "Callers must not share mutable data");
+        assertEquals(2, cache.getMemoryHits());
+        assertNull(cache.get("missing"));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void testDiskTierSurvivesRestart() {
+        new OcrResultCache(true, 1024 * 1024, 1024 * 1024, storageDir.toString()).put("abc", result("STORE", 1));
+
+        OcrResultCache restarted = new OcrResultCache(true, 1024 * 1024, 1024 * 1024, storageDir.toString());
+        assertEquals(1, restarted.getDiskEntries());
+        assertNotNull(restarted.get("abc"));
+        assertEquals(1, restarted.getDiskHits());
+        // Promoted to memory after the disk hit
+        assertNotNull(restarted.get("abc"));
+        assertEquals(1, restarted.getMemoryHits());
+    }
+
+    @Test
+    void testMemoryTierEvictsLeastRecentlyUsed() {
+        // Room for roughly two entries in memory, disk tier disabled
+        OcrResultCache cache = new OcrResultCache(true, 400, 0, storageDir.toString());
+        cache.put("a1", result("A", 1));
+        cache.put("b2", result("B", 1));
+        cache.get("a1");
+        cache.put("c3", result("C", 1));
+
+        assertNotNull(cache.get("a1"));
+        assertNull(cache.get("b2"));
+        assertEquals(1, cache.getMemoryEvictions());
+    }
+
+    @Test
+    void testProcessingSkipsOcrOnRepeatAndReparsesOnParserChange() throws Exception {
+        ImageHandlingService imageHandlingService = mock(ImageHandlingService.class);
+        when(imageHandlingService.handleImage(any(byte[].class), anyString())).thenReturn("COFFEE SHOP\nTOTAL 4.50");
+        OcrResultCache cache = new OcrResultCache(true, 1024 * 1024, 1024 * 1024, storageDir.toString());
+        ReceiptProcessingService processing = new ReceiptProcessingService(
+                imageHandlingService, new ReceiptExtractionHelper(), cache, new OcrMetrics(new SimpleMeterRegistry()),
+                mock(PdfReceiptService.class));
+
+        byte[] image = {9, 8, 7};
+        processing.process(image);
+        OcrResult repeat = processing.process(image);
+        verify(imageHandlingService, times(1)).handleImage(any(byte[].class), anyString());
+        assertEquals(4.50, repeat.getReceiptData().getTotal(), 0.001);
+
+        // An entry written by an older parser keeps its OCR text but is parsed again
+        byte[] other = {1, 1, 1};
+        String key = OcrResultCache.key(other, "auto");
+        cache.put(key, new OcrResult("OLD STORE\nTOTAL 9.99", new ReceiptData(), ReceiptExtractionHelper.PARSER_VERSION - 1));
+        OcrResult reparsed = processing.process(other);
+        verify(imageHandlingService, never()).handleImage(eq(other), anyString());
+        assertEquals(9.99, reparsed.getReceiptData().getTotal(), 0.001);
+        assertEquals(ReceiptExtractionHelper.PARSER_VERSION, cache.get(key).getParserVersion());
+    }
+}
@@ -0,0 +1,152 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.ResourceUtils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.service.ImageHandlingService;
+import com.splitshare.splitshare.service.NativeMemoryBudget;
+import com.splitshare.splitshare.service.OcrEngine;
+import com.splitshare.splitshare.service.OcrEnginePool;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.OcrTierPolicy;
+import com.splitshare.splitshare.service.ParallelStripOcr;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+import com.splitshare.splitshare.service.ReceiptRegionDetector;
+import com.splitshare.splitshare.service.ResolutionNormalizer;
+
+public class OcrTierPolicyTest {
+
+    private static final String CONSISTENT = "COFFEE SHOP\nLatte 4.50\nMuffin 2.25\nSUBTOTAL 6.75\nTOTAL 6.75\n";
+    // The muffin was misread, so the items no longer add up
+    private static final String MISREAD = "COFFEE SHOP\nLatte 4.50\nMuffin 2.Z5\nSUBTOTAL 6.75\nTOTAL 6.75\n";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final OcrMetrics metrics = new OcrMetrics(registry);
+    private final ReceiptExtractionHelper extractor = new ReceiptExtractionHelper();
+
+    // Stands in for Tesseract: returns the scripted texts in order and records how each call was made
+    private static class ScriptedEngine extends OcrEngine {
+        private final List<String> texts;
+        private final List<Boolean> fastCalls = new ArrayList<>();
+        private final List<Integer> widths = new ArrayList<>();
+
+        ScriptedEngine(String... texts) {
+            this.texts = new ArrayList<>(Arrays.asList(texts));
+        }
+
+        @Override
+        public String extractText(Mat gray, boolean fast) throws Exception {
+            fastCalls.add(fast);
+            widths.add(gray.cols());
+            return texts.size() > 1 ? texts.remove(0) : texts.get(0);
+        }
+    }
+
+    private String run(ScriptedEngine engine, String image, boolean enabled) throws Exception {
+        ImageHandlingService service = new ImageHandlingService(metrics,
+                new NativeMemoryBudget(0, 30000), new ReceiptRegionDetector(true, 512, 0.2, 0.9),
+                new ResolutionNormalizer(true, 32, 1600, 0.25, 4, 0.2),
+                new ParallelStripOcr(new OcrEnginePool(1, 30000, () -> engine), metrics, 2000, 300, 0),
+                new OcrTierPolicy(extractor, metrics, enabled, 0.75, 1.25, 0.05));
+        File imageFile = ResourceUtils.getFile("classpath:" + image);
+        return service.handleImage(imageFile.getAbsolutePath(), ParallelStripOcr.MODE_SINGLE);
+    }
+
+    private double tierCount(String tier, String result) {
+        Counter counter = registry.find(OcrMetrics.TIERS).tag("tier", tier).tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @Test
+    void testConsistentTotals() {
+        assertTrue(OcrTierPolicy.isConsistent(extractor.parseReceiptText(CONSISTENT), 0.05));
+        assertFalse(OcrTierPolicy.isConsistent(extractor.parseReceiptText(MISREAD), 0.05));
+        // Without a subtotal the items, tax and tip must add up to the total
+        assertTrue(OcrTierPolicy.isConsistent(extractor.parseReceiptText("Latte 4.50\nTAX 0.50\nTOTAL 5.00\n"), 0.05));
+        assertFalse(OcrTierPolicy.isConsistent(extractor.parseReceiptText("Latte 4.50\nTOTAL 9.00\n"), 0.05));
+        // Nothing to check
+        assertFalse(OcrTierPolicy.isConsistent(new ReceiptData(), 0.05));
+    }
+
+    @Test
+    void testTextWithoutATotalIsRejected() {
+        OcrTierPolicy policy = new OcrTierPolicy(extractor, metrics, true, 0.75, 1.25, 0.05);
+        // The last amount stands in for the missing total and matches the only item
+        assertFalse(policy.accept(OcrTierPolicy.TIER_FAST, "COFFEE SHOP\nLatte 4.50\n"));
+        // The parser reads the subtotal as the total too, but the total line itself was not read
+        assertFalse(policy.accept(OcrTierPolicy.TIER_FAST, "COFFEE SHOP\nLatte 4.50\nSUBTOTAL 4.50\n"));
+        assertFalse(policy.accept(OcrTierPolicy.TIER_FAST, "COFFEE SHOP\nLatte 4.50\nSub Total 4.50\nT0TAL 4.50\n"));
+        assertTrue(policy.accept(OcrTierPolicy.TIER_FAST, CONSISTENT));
+        assertEquals(3.0, tierCount(OcrTierPolicy.TIER_FAST, "rejected"));
+        assertEquals(1.0, tierCount(OcrTierPolicy.TIER_FAST, "accepted"));
+    }
+
+    @Test
+    void testFastTierIsEnoughForAConsistentReceipt() throws Exception {
+        ScriptedEngine engine = new ScriptedEngine(CONSISTENT);
+        assertEquals(CONSISTENT, run(engine, "clear_receipt.png", true));
+
+        assertEquals(List.of(true), engine.fastCalls);
+        assertEquals(1.0, tierCount(OcrTierPolicy.TIER_FAST, "accepted"));
+        assertEquals(0.0, tierCount(OcrTierPolicy.TIER_STANDARD, "accepted") + tierCount(OcrTierPolicy.TIER_STANDARD, "rejected"));
+    }
+
+    @Test
+    void testInconsistentTotalsEscalate() throws Exception {
+        ScriptedEngine engine = new ScriptedEngine(MISREAD, CONSISTENT);
+        assertEquals(CONSISTENT, run(engine, "clear_receipt.png", true));
+
+        assertEquals(List.of(true, false), engine.fastCalls);
+        // FAST reads a smaller image than STANDARD
+        assertEquals(0.75, engine.widths.get(0) / (double) engine.widths.get(1), 0.02);
+        assertEquals(1.0, tierCount(OcrTierPolicy.TIER_FAST, "rejected"));
+        assertEquals(1.0, tierCount(OcrTierPolicy.TIER_STANDARD, "accepted"));
+        assertEquals(1.0, registry.get(OcrMetrics.STAGE_TIMER).tag("stage", OcrMetrics.TIER)
+                .tag("mode", OcrTierPolicy.TIER_FAST).timer().count());
+    }
+
+    @Test
+    void testLastTierIsReturnedWhenNothingAddsUp() throws Exception {
+        ScriptedEngine engine = new ScriptedEngine(MISREAD, MISREAD, "INTENSIVE\n");
+        assertEquals("INTENSIVE\n", run(engine, "clear_receipt.png", true));
+
+        assertEquals(3, engine.fastCalls.size());
+        // INTENSIVE reads a larger image than STANDARD
+        assertTrue(engine.widths.get(2) > 1.2 * engine.widths.get(1), engine.widths.toString());
+        assertEquals(1.0, tierCount(OcrTierPolicy.TIER_INTENSIVE, "rejected"));
+        // The increased preprocessing branch ran for INTENSIVE
+        assertEquals(1.0, registry.get(OcrMetrics.MODE_COUNTER).tag("mode", ImageHandlingService.MODE_INCREASED).counter().count());
+    }
+
+    @Test
+    void testBlurryImagesStartAtStandard() throws Exception {
+        ScriptedEngine engine = new ScriptedEngine(CONSISTENT);
+        run(engine, "blurry_receipt.png", true);
+
+        assertEquals(List.of(false), engine.fastCalls);
+        assertEquals(1.0, tierCount(OcrTierPolicy.TIER_STANDARD, "accepted"));
+    }
+
+    @Test
+    void testDisabledTiersRunOnePass() throws Exception {
+        ScriptedEngine engine = new ScriptedEngine(MISREAD, CONSISTENT);
+        assertEquals(MISREAD, run(engine, "clear_receipt.png", false));
+
+        assertEquals(List.of(false), engine.fastCalls);
+        assertEquals(null, registry.find(OcrMetrics.TIERS).counter());
+    }
+}
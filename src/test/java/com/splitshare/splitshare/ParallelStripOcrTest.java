@@ -0,0 +1,153 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.service.OcrEngine;
+import com.splitshare.splitshare.service.OcrEnginePool;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.ParallelStripOcr;
+
+public class ParallelStripOcrTest {
+
+    private static final int LINE_HEIGHT = 60;
+
+    // A long receipt: 60 lines of text on a 600 pixel wide strip of paper
+    private static Mat longReceipt() {
+        Mat receipt = new Mat(60 * LINE_HEIGHT + 40, 600, opencv_core.CV_8UC1, new Scalar(255.0));
+        try (Scalar ink = new Scalar(0.0)) {
+            for (int line = 0; line < 60; line++) {
+                try (Point origin = new Point(20, 50 + line * LINE_HEIGHT)) {
+                    opencv_imgproc.putText(receipt, "ITEM " + line + " Qy 1.99", origin,
+                            opencv_imgproc.FONT_HERSHEY_SIMPLEX, 1.0, ink, 2, opencv_imgproc.LINE_8, false);
+                }
+            }
+        }
+        return receipt;
+    }
+
+    // Stands in for Tesseract: reports the first row of every run of inked rows in the image, in
+    // the coordinates of the whole receipt, so lines read twice or missed show up in the text
+    private static class LineReportingEngine extends OcrEngine {
+        private final Mat receipt;
+        private final Set<String> threads;
+
+        LineReportingEngine(Mat receipt, Set<String> threads) {
+            this.receipt = receipt;
+            this.threads = threads;
+        }
+
+        @Override
+        public String extractText(Mat gray, boolean fast) throws Exception {
+            threads.add(Thread.currentThread().getName());
+            int offset = (int) ((gray.data().address() - receipt.data().address()) / receipt.step());
+            StringBuilder text = new StringBuilder();
+            boolean inLine = false;
+            for (int row = 0; row < gray.rows(); row++) {
+                boolean inked;
+                try (Mat line = gray.row(row)) {
+                    inked = opencv_core.countNonZero(line) < line.cols();
+                }
+                if (inked && !inLine) {
+                    text.append("line at ").append(offset + row).append('\n');
+                }
+                inLine = inked;
+            }
+            // Slow enough that helpers get their share of the strips
+            Thread.sleep(100);
+            return text.toString();
+        }
+    }
+
+    @Test
+    void testCutsFallBetweenTextLines() {
+        try (Mat receipt = longReceipt()) {
+            int[] cuts = ParallelStripOcr.findCuts(receipt, 4, 300);
+            assertEquals(5, cuts.length);
+            assertEquals(0, cuts[0]);
+            assertEquals(receipt.rows(), cuts[4]);
+            for (int i = 1; i < cuts.length; i++) {
+                assertTrue(cuts[i] - cuts[i - 1] >= 300, "Strips are not cut too short");
+                // Roughly a quarter of the receipt each
+                assertEquals(receipt.rows() / 4, cuts[i] - cuts[i - 1], LINE_HEIGHT);
+            }
+            for (int i = 1; i < cuts.length - 1; i++) {
+                try (Mat row = receipt.row(cuts[i])) {
+                    assertEquals(row.cols(), opencv_core.countNonZero(row), "Cut at row " + cuts[i] + " crosses text");
+                }
+            }
+        }
+    }
+
+    @Test
+    void testNoCutWithoutGaps() {
+        // Vertical rules leave ink on every row, so there is no gap to cut at
+        try (Mat ruled = new Mat(3000, 400, opencv_core.CV_8UC1, new Scalar(255.0)); Scalar ink = new Scalar(0.0)) {
+            for (int x = 10; x < 400; x += 40) {
+                try (Point top = new Point(x, 0); Point bottom = new Point(x, 2999)) {
+                    opencv_imgproc.line(ruled, top, bottom, ink, 3, opencv_imgproc.LINE_8, 0);
+                }
+            }
+            int[] cuts = ParallelStripOcr.findCuts(ruled, 4, 300);
+            assertEquals(2, cuts.length);
+            assertEquals(3000, cuts[1]);
+        }
+    }
+
+    @Test
+    void testStripsAreMergedInOrderWithoutLosingLines() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        try (Mat receipt = longReceipt()) {
+            OcrEnginePool pool = new OcrEnginePool(4, 1000, () -> new LineReportingEngine(receipt, threads));
+            ParallelStripOcr stripOcr = new ParallelStripOcr(pool, new OcrMetrics(new SimpleMeterRegistry()), 2000, 300, 0);
+            try {
+                String single = stripOcr.extractText(receipt, ParallelStripOcr.MODE_SINGLE);
+                assertEquals(60, single.lines().count());
+                threads.clear();
+
+                assertEquals(single, stripOcr.extractText(receipt, ParallelStripOcr.MODE_STRIPS));
+                assertTrue(threads.stream().anyMatch(name -> name.startsWith("ocr-strip-")),
+                        "Some strips ran on helper threads: " + threads);
+                // Tall and narrow, so auto mode cuts it too
+                assertEquals(single, stripOcr.extractText(receipt, ParallelStripOcr.MODE_AUTO));
+                // A helper hands its engine back just after counting down its last strip
+                long deadline = System.currentTimeMillis() + 1000;
+                while (pool.getInUse() > 0 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+                assertEquals(0, pool.getInUse(), "Every engine is returned");
+            } finally {
+                stripOcr.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testBusyPoolRunsStripsOnTheCallingThread() throws Exception {
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        try (Mat receipt = longReceipt()) {
+            OcrEnginePool pool = new OcrEnginePool(2, 1000, () -> new LineReportingEngine(receipt, threads));
+            ParallelStripOcr stripOcr = new ParallelStripOcr(pool, new OcrMetrics(new SimpleMeterRegistry()), 2000, 300, 0);
+            OcrEngine busy = pool.borrow();
+            try {
+                assertEquals(60, stripOcr.extractText(receipt, ParallelStripOcr.MODE_STRIPS).lines().count());
+                assertEquals(Set.of(Thread.currentThread().getName()), threads);
+            } finally {
+                pool.release(busy);
+                stripOcr.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.bytedeco.opencv.global.opencv_core;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.dto.OcrResult;
+import com.splitshare.splitshare.service.ImageHandlingService;
+import com.splitshare.splitshare.service.ImagePipelineContext;
+import com.splitshare.splitshare.service.NativeMemoryBudget;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.OcrResultCache;
+import com.splitshare.splitshare.service.PdfReceiptService;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+import com.splitshare.splitshare.service.ReceiptProcessingService;
+import com.splitshare.splitshare.service.UnreadableImageException;
+
+public class PdfReceiptServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ImageHandlingService imageHandlingService;
+    private SimpleMeterRegistry registry;
+    private PdfReceiptService pdfService;
+
+    // Sizes and mean gray levels of the pages handed to the OCR pipeline
+    private final List<int[]> renderedPages = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        imageHandlingService = mock(ImageHandlingService.class);
+        when(imageHandlingService.handleImage(any(ImagePipelineContext.class), anyString(), anyBoolean())).thenAnswer(invocation -> {
+            ImagePipelineContext context = invocation.getArgument(0);
+            renderedPages.add(new int[] {context.getWidth(), context.getHeight(),
+                    (int) opencv_core.mean(context.getGray()).get(0)});
+            return "SCANNED PAGE";
+        });
+        registry = new SimpleMeterRegistry();
+        pdfService = new PdfReceiptService(imageHandlingService, new NativeMemoryBudget(0, 30000),
+                new OcrMetrics(registry), 100, 20_000_000, 20, 20);
+    }
+
+    // An e-receipt: one page of real text
+    private Path textPdf() throws Exception {
+        Path file = tempDir.resolve("e-receipt.pdf");
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage(PDRectangle.A6);
+            document.addPage(page);
+            try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                content.beginText();
+                content.setFont(PDType1Font.HELVETICA, 10);
+                content.setLeading(14);
+                content.newLineAtOffset(20, 380);
+                for (String line : new String[] {"COFFEE SHOP", "Latte 4.50", "Muffin 2.25", "TOTAL 6.75"}) {
+                    content.showText(line);
+                    content.newLine();
+                }
+                content.endText();
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    // A scan saved as PDF: pages holding nothing but a photo of a receipt
+    private Path scannedPdf(int pages) throws Exception {
+        Path file = tempDir.resolve("scan.pdf");
+        try (PDDocument document = new PDDocument()) {
+            PDImageXObject photo = PDImageXObject.createFromFile("src/test/resources/receipt1.png", document);
+            for (int i = 0; i < pages; i++) {
+                // 4 x 6 inches
+                PDPage page = new PDPage(new PDRectangle(288, 432));
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawImage(photo, 0, 0, 288, 432);
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    @Test
+    void testTextLayerSkipsOcr() throws Exception {
+        String text = pdfService.extractText(textPdf(), "auto");
+
+        assertTrue(text.contains("Latte 4.50"), text);
+        assertTrue(text.contains("TOTAL 6.75"), text);
+        verify(imageHandlingService, never()).handleImage(any(ImagePipelineContext.class), anyString(), anyBoolean());
+        assertEquals(1.0, registry.get(OcrMetrics.PDF_PAGES).tag("source", "text_layer").counter().count());
+    }
+
+    @Test
+    void testScannedPagesAreRenderedOneByOne() throws Exception {
+        String text = pdfService.extractText(scannedPdf(3), "strips");
+
+        assertEquals("SCANNED PAGE\nSCANNED PAGE\nSCANNED PAGE\n", text);
+        // Pages of a longer receipt skip the OCR tiers
+        verify(imageHandlingService, times(3)).handleImage(any(ImagePipelineContext.class), eq("strips"), eq(false));
+        assertEquals(3, renderedPages.size());
+        for (int[] page : renderedPages) {
+            // 4 x 6 inches at 100 dpi
+            assertEquals(400, page[0]);
+            assertEquals(600, page[1]);
+            assertTrue(page[2] > 100 && page[2] < 250, "Rendered page holds the receipt, mean gray " + page[2]);
+        }
+        assertEquals(3.0, registry.get(OcrMetrics.PDF_PAGES).tag("source", "ocr").counter().count());
+    }
+
+    @Test
+    void testLargePagesAreRenderedAtLowerResolution() throws Exception {
+        PdfReceiptService limited = new PdfReceiptService(imageHandlingService, new NativeMemoryBudget(0, 30000),
+                new OcrMetrics(registry), 300, 60_000, 20, 20);
+        limited.extractText(Files.readAllBytes(scannedPdf(1)), "auto");
+
+        verify(imageHandlingService).handleImage(any(ImagePipelineContext.class), eq("auto"), eq(true));
+        int[] page = renderedPages.get(0);
+        assertTrue((long) page[0] * page[1] <= 61_000, "Got " + page[0] + "x" + page[1]);
+        assertEquals(1.5, (double) page[1] / page[0], 0.02);
+    }
+
+    @Test
+    void testProcessingRoutesPdfsPastTheImagePipeline() throws Exception {
+        ReceiptProcessingService processing = new ReceiptProcessingService(imageHandlingService,
+                new ReceiptExtractionHelper(), new OcrResultCache(false, 0, 0, "unused"), new OcrMetrics(registry), pdfService);
+
+        OcrResult fromFile = processing.process(textPdf());
+        assertTrue(fromFile.getRawText().contains("COFFEE SHOP"));
+        OcrResult fromBytes = processing.process(Files.readAllBytes(textPdf()));
+        assertEquals(fromFile.getRawText(), fromBytes.getRawText());
+        verify(imageHandlingService, never()).handleImage(any(byte[].class));
+        verify(imageHandlingService, never()).handleImage(anyString(), anyString());
+    }
+
+    @Test
+    void testBrokenPdfIsUnreadable() throws Exception {
+        byte[] broken = "%PDF-1.4 not really a pdf".getBytes();
+        assertThrows(UnreadableImageException.class, () -> pdfService.extractText(broken, "auto"));
+    }
+}
@@ -1,11 +1,14 @@
 package com.splitshare.splitshare;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.springframework.util.ResourceUtils;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import org.bytedeco.opencv.opencv_core.Mat;
+import com.splitshare.splitshare.service.ImagePipelineContext;
 import com.splitshare.splitshare.service.Preprocesing;
 
 public class PreprocesingTest {
@@ -24,4 +27,23 @@ public class PreprocesingTest {
         assertNotNull(result2, "Preprocessed image should not be null");
         assertTrue(result2.getWidth() > 0 && result.getHeight() > 0, "Image dimensions must be positive");
     }
+
+    @Test
+    public void testNativePreprocessingPadsAndScalesSmallImages() throws Exception {
+        File imageFile = ResourceUtils.getFile("classpath:clear_receipt.png");
+
+        try (ImagePipelineContext context = ImagePipelineContext.read(imageFile.getAbsolutePath());
+             Mat minimal = Preprocesing.preprocessMinimal(context.getGray());
+             Mat increased = Preprocesing.preprocessIncreased(context.getGray())) {
+            Mat gray = context.getGray();
+            boolean small = gray.cols() < 1000 && gray.rows() < 1000;
+            assertEquals(1, minimal.channels(), "OCR input must stay single channel");
+            assertEquals(1, increased.channels(), "OCR input must stay single channel");
+            int scale = small ? 2 : 1;
+            assertEquals((gray.cols() + 40) * scale, increased.cols());
+            assertEquals((gray.rows() + 40) * scale, increased.rows());
+            // The padding is white
+            assertEquals(255, increased.ptr(0, 0).get() & 0xFF);
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.dto.ReceiptItem;
+import com.splitshare.splitshare.service.ReceiptExtractionHelper;
+
+public class ReceiptExtractionHelperTest {
+    private final ReceiptExtractionHelper extractor = new ReceiptExtractionHelper();
+    private final RegexReceiptParser reference = new RegexReceiptParser();
+
+    // Texts on which the single pass parser has to reproduce a quirk of the regex parser
+    private static final String[] FIXTURES = {
+            "",
+            "\n\n",
+            "THE CORNER BISTRO\n123 Main Street\n05/12/2023 7:42 PM\n2 Chicken Wings 9.50\nSubtotal 9.50\nTOTAL $9.50\n",
+            // Amounts on the line after their keyword, and taxes that add up
+            "DINER\nPancakes 6.00\nTOTAL\n8.10\nState tax 1.00\nCity Tax: 0.35\nT 1 P\n1.50\n",
+            "SUB\nTOTAL 4.00\nsub  total:\n\n$3.50\nSales\ttax:€0.50\n",
+            // Windows line endings: String.matches fails on '\r', so these lines are not skipped as dates or non-items
+            "CAFE\r\nLatte 4.50\r\nTax 0.40\r\nTotal 4.90\r\n05/12/2023\r\n",
+            "Host Maria\r\nVisa 12.00\r\nTip\r\n2.00\r\n",
+            "\rTOTAL 1.00\n1 Bagel 2.25\r",
+            // Case folding is ASCII only, the dotted capital I and Kelvin sign are not "i" and "k"
+            "TİP 3.00\nTIP 2.00\nGRATUİTY 1.00\n\u212aiwi 1.20\n",
+            "STRASSE 3.00\nſubtotal 4.00\n",
+            // Prices without a decimal point, and names the item patterns stop short of
+            "Coffee 450\nTea 45\n12 Muffins 1299\nSoup & Salad 7.5\nBread & Co .99\n",
+            "3 x Eggs 2.00\n0 Water 1.00\nLobster 1500.00\nCaviar 999.99\n",
+            // Dates in each supported format, and ones that only look like dates
+            "2023-05-12\n12-05-2023\n13/13/2023\n1/2/23\n31/12/2023\n02/30/2023\n",
+            "Order 66\nTransaction 12.00\nCard Reader 3.00\nMastercard 4.00\nPayment 5.00\nAuthorization 6.00\n",
+            "totaltotal1.00\nTotal: $ 2.00\ntotal:$3.00\ntotal €4.00\nTOTAL$$5.00\n",
+            "   \n  Store Name  \n$12.34\n  9.99  \n",
+    };
+
+    @Test
+    void testParsesFullReceipt() throws Exception {
+        String text = "THE CORNER BISTRO\n"
+                + "123 Main Street\n"
+                + "Host: Maria  Table 12\n"
+                + "05/12/2023 7:42 PM\n"
+                + "2 Chicken Wings 9.50\n"
+                + "Coffee Latte 4.75\n"
+                + "Subtotal 14.25\n"
+                + "Sales Tax 1.14\n"
+                + "Tip 2.00\n"
+                + "TOTAL $17.39\n"
+                + "VISA **** 1234\n";
+
+        ReceiptData data = extractor.parseReceiptText(text);
+
+        assertEquals("THE CORNER BISTRO", data.getStoreName());
+        assertEquals(new SimpleDateFormat("MM/dd/yyyy").parse("05/12/2023"), data.getDate());
+        assertEquals(2, data.getItems().size());
+        ReceiptItem wings = data.getItems().get(0);
+        assertEquals("Chicken Wings", wings.getName());
+        assertEquals(9.50, wings.getPrice());
+        assertEquals(2, wings.getQuantity());
+        assertEquals("Coffee Latte", data.getItems().get(1).getName());
+        assertEquals(14.25, data.getSubtotal());
+        assertEquals(1.14, data.getTax());
+        assertEquals(2.00, data.getTip());
+        // "Subtotal 14.25" comes first and also contains "total"
+        assertEquals(14.25, data.getTotal());
+    }
+
+    @Test
+    void testAmountsMayFollowOnTheNextLineAndTaxesAddUp() {
+        String text = "DINER\nPancakes 6.00\nTOTAL\n8.10\nState tax 1.00\nCity Tax: 0.35\nT 1 P\n1.50\n";
+
+        ReceiptData data = extractor.parseReceiptText(text);
+
+        assertEquals(8.10, data.getTotal());
+        assertEquals(1.35, data.getTax(), 1e-9);
+        assertEquals(1.50, data.getTip());
+        assertEquals(1, data.getItems().size());
+        assertEquals("Pancakes", data.getItems().get(0).getName());
+    }
+
+    @Test
+    void testFallsBackToLastPriceAndUnknownStore() {
+        String text = "12 Oak Road\n2023-05-12\nBagel 2.25\nJuice $3.40\n";
+
+        ReceiptData data = extractor.parseReceiptText(text);
+
+        assertEquals("Unknown Store", data.getStoreName());
+        assertEquals(3.40, data.getTotal());
+        assertEquals(0.0, data.getSubtotal());
+        assertEquals(2, data.getItems().size());
+    }
+
+    @Test
+    void testSubtotalIsNotATotalLine() {
+        assertTrue(extractor.hasTotalLine("Latte 4.50\nSubtotal 4.50\nTOTAL\n$4.50\n"));
+        assertTrue(extractor.hasTotalLine("Latte 4.50\nTotal: 4.50\n"));
+        assertFalse(extractor.hasTotalLine("Latte 4.50\nSubtotal 4.50\n"));
+        assertFalse(extractor.hasTotalLine("Latte 4.50\nSUB\nTOTAL 4.50\n"));
+        // A total keyword without an amount is not a total the parser could read
+        assertFalse(extractor.hasTotalLine("Latte 4.50\nTotal due\n"));
+    }
+
+    @Test
+    void testFixturesParseLikeTheRegexParser() {
+        for (String text : FIXTURES) {
+            assertSameResult(text);
+        }
+    }
+
+    @Test
+    void testGeneratedReceiptsParseLikeTheRegexParser() {
+        // Fixed seed, so a failure names a text that can be added to FIXTURES
+        Random random = new Random(20240611L);
+        for (int i = 0; i < 20_000; i++) {
+            assertSameResult(generate(random));
+        }
+    }
+
+    private static final String[] WORDS = {
+            "total", "TOTAL", "Total", "sub total", "Subtotal", "SUB  TOTAL", "subtotal:", "tax", "TAX", "Sales Tax",
+            "sales\ttax", "Sales-Tax", "tip", "TIP", "T 1 P", "t1p", "gratuity", "visa", "host", "order", "payment",
+            "card reader", "Coffee", "Latte", "Chicken Wings", "Soup & Salad", "Eggs", "x", "STORE", "Main Street",
+            "İ", "ı", "\u212a", "ſ", "é", "#", "*", "-", "/", ":", "$", "€", "&"
+    };
+    private static final String[] NUMBERS = {
+            "4.50", "$4.50", "€4.50", "$ 4.50", "12.00", ".99", "0.00", "999.99", "1000.00", "1234.567", "450", "45",
+            "1299", "12345", "2", "0", "05/12/2023", "12-05-2023", "2023-05-12", "1/2/23", "31/12/2023", "13/13/2023"
+    };
+    private static final String[] SEPARATORS = {" ", " ", " ", "  ", "\t", ":", ": ", "\n", "\n", "\n", "\r\n", "\r", "\n\n", ""};
+
+    // A receipt-like text of words, amounts and separators picked at random
+    private static String generate(Random random) {
+        StringBuilder text = new StringBuilder();
+        int tokens = 1 + random.nextInt(40);
+        for (int i = 0; i < tokens; i++) {
+            String[] source = random.nextInt(3) == 0 ? NUMBERS : WORDS;
+            text.append(source[random.nextInt(source.length)]);
+            text.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+        }
+        return text.toString();
+    }
+
+    private void assertSameResult(String text) {
+        long before = System.currentTimeMillis();
+        ReceiptData expected = reference.parseReceiptText(text);
+        ReceiptData actual = extractor.parseReceiptText(text);
+        long after = System.currentTimeMillis();
+        String message = "Parsing " + text.replace("\r", "\\r").replace("\n", "\\n").replace("\t", "\\t");
+
+        assertEquals(expected.getStoreName(), actual.getStoreName(), message);
+        // Without a date both default to the time of parsing
+        if (isParseTime(expected.getDate(), before, after)) {
+            assertTrue(isParseTime(actual.getDate(), before, after), message + ": date " + actual.getDate());
+        } else {
+            assertEquals(expected.getDate(), actual.getDate(), message);
+        }
+        assertEquals(expected.getTotal(), actual.getTotal(), message);
+        assertEquals(expected.getSubtotal(), actual.getSubtotal(), message);
+        assertEquals(expected.getTax(), actual.getTax(), message);
+        assertEquals(expected.getTip(), actual.getTip(), message);
+        assertEquals(describe(expected.getItems()), describe(actual.getItems()), message);
+    }
+
+    private static boolean isParseTime(Date date, long before, long after) {
+        return date.getTime() >= before && date.getTime() <= after;
+    }
+
+    private static String describe(List<ReceiptItem> items) {
+        StringBuilder description = new StringBuilder();
+        for (ReceiptItem item : items) {
+            description.append(item.getQuantity()).append(" x '").append(item.getName()).append("' @ ")
+                    .append(item.getPrice()).append('\n');
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,122 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.dto.ReceiptPage;
+import com.splitshare.splitshare.dto.ReceiptSummary;
+import com.splitshare.splitshare.service.FileReceiptStore;
+import com.splitshare.splitshare.service.ReceiptIndex;
+
+public class ReceiptIndexTest {
+
+    @TempDir
+    Path storageDir;
+
+    private ReceiptData receipt(String storeName, double total) {
+        ReceiptData data = new ReceiptData();
+        data.setStoreName(storeName);
+        data.setTotal(total);
+        return data;
+    }
+
+    // Indexes then stores a receipt, in the order ReceiptStorageService does
+    private void store(ReceiptIndex index, FileReceiptStore store, Long userId, String receiptId, ReceiptData data) throws Exception {
+        index.add(userId, receiptId, data);
+        store.writeData(userId, receiptId, new ObjectMapper().writeValueAsBytes(data));
+    }
+
+    private List<String> allIds(ReceiptIndex index, Long userId, int pageSize) {
+        List<String> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            ReceiptPage page = index.page(userId, cursor, pageSize);
+            page.getReceipts().forEach(summary -> ids.add(summary.getReceiptId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return ids;
+    }
+
+    @Test
+    void testCursorPagesThroughEveryReceiptOnce() throws Exception {
+        ReceiptIndex index = new ReceiptIndex(storageDir.toString(), new FileReceiptStore(storageDir.toString()));
+        for (int i = 0; i < 25; i++) {
+            index.add(1L, "receipt-" + i, receipt("Store " + i, i));
+            Thread.sleep(1);
+        }
+        index.add(2L, "other-user", receipt("Target", 1));
+
+        List<String> ids = allIds(index, 1L, 10);
+        assertEquals(25, ids.size());
+        assertEquals("receipt-24", ids.get(0), "Newest first");
+        assertEquals("receipt-0", ids.get(24));
+
+        ReceiptPage last = index.page(1L, index.page(1L, index.page(1L, null, 10).getNextCursor(), 10).getNextCursor(), 10);
+        assertEquals(5, last.getReceipts().size());
+        assertNull(last.getNextCursor());
+        assertThrows(IllegalArgumentException.class, () -> index.page(1L, "not a cursor", 10));
+        assertThrows(IllegalArgumentException.class, () -> index.page(1L, null, 0));
+    }
+
+    @Test
+    void testUpdatesKeepOrderAndSurviveRestart() throws Exception {
+        FileReceiptStore store = new FileReceiptStore(storageDir.toString());
+        ReceiptIndex index = new ReceiptIndex(storageDir.toString(), store);
+        store(index, store, 1L, "first", receipt("Walmart", 10));
+        Thread.sleep(2);
+        store(index, store, 1L, "second", receipt("Costco", 20));
+        index.update(1L, "first", receipt("Walmart Supercenter", 12.5));
+
+        // Simulate a crash in the middle of appending a line
+        Files.write(storageDir.resolve("index").resolve("1.ndjson"), "{\"receiptId\":\"thi".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        ReceiptIndex reopened = new ReceiptIndex(storageDir.toString(), store);
+        assertEquals(List.of("second", "first"), allIds(reopened, 1L, 1));
+        ReceiptSummary first = reopened.page(1L, null, 2).getReceipts().get(1);
+        assertEquals("Walmart Supercenter", first.getStoreName());
+        assertEquals(12.5, first.getTotal());
+
+        store(reopened, store, 1L, "third", receipt("Aldi", 3));
+        assertEquals(List.of("third", "second", "first"), allIds(new ReceiptIndex(storageDir.toString(), store), 1L, 2));
+    }
+
+    @Test
+    void testExistingReceiptsAreIndexedOnFirstAccess() throws Exception {
+        FileReceiptStore store = new FileReceiptStore(storageDir.toString());
+        store.writeData(3L, "legacy", "{\"storeName\":\"Kroger\",\"total\":9.99}".getBytes(StandardCharsets.UTF_8));
+
+        ReceiptIndex index = new ReceiptIndex(storageDir.toString(), store);
+        ReceiptSummary summary = index.page(3L, null, 10).getReceipts().get(0);
+        assertEquals("legacy", summary.getReceiptId());
+        assertEquals("Kroger", summary.getStoreName());
+        assertEquals(9.99, summary.getTotal());
+    }
+
+    @Test
+    void testEntriesWithoutARecordAreDroppedOnLoad() throws Exception {
+        FileReceiptStore store = new FileReceiptStore(storageDir.toString());
+        ReceiptIndex index = new ReceiptIndex(storageDir.toString(), store);
+        store(index, store, 4L, "stored", receipt("Target", 5));
+        // Simulate a crash after indexing a receipt but before its record was written
+        index.add(4L, "lost", receipt("Safeway", 7));
+
+        ReceiptIndex reopened = new ReceiptIndex(storageDir.toString(), store);
+        assertEquals(List.of("stored"), allIds(reopened, 4L, 10));
+        store(reopened, store, 4L, "next", receipt("Aldi", 2));
+        assertEquals(List.of("next", "stored"), allIds(new ReceiptIndex(storageDir.toString(), store), 4L, 10));
+    }
+}
@@ -0,0 +1,93 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.ResourceUtils;
+
+import com.splitshare.splitshare.service.ImagePipelineContext;
+import com.splitshare.splitshare.service.ReceiptRegionDetector;
+
+public class ReceiptRegionDetectorTest {
+
+    private final ReceiptRegionDetector detector = new ReceiptRegionDetector(true, 512, 0.2, 0.9);
+
+    // A tilted 600x1000 sheet of paper with a few dark text lines on a dark table
+    private static Mat photo() {
+        Mat photo = new Mat(1600, 1200, opencv_core.CV_8UC1, new Scalar(60.0));
+        int[] corners = {330, 250, 930, 310, 860, 1300, 260, 1240};
+        try (Mat sheet = new Mat(4, 1, opencv_core.CV_32SC2); Scalar white = new Scalar(235.0); Scalar ink = new Scalar(30.0)) {
+            try (IntIndexer indexer = sheet.createIndexer()) {
+                for (int i = 0; i < 4; i++) {
+                    indexer.put(i, 0, 0, corners[2 * i]);
+                    indexer.put(i, 0, 1, corners[2 * i + 1]);
+                }
+            }
+            opencv_imgproc.fillConvexPoly(photo, sheet, white);
+            for (int line = 0; line < 12; line++) {
+                try (Point origin = new Point(380, 400 + line * 70)) {
+                    opencv_imgproc.putText(photo, "ITEM " + line + "   $" + line + ".99", origin,
+                            opencv_imgproc.FONT_HERSHEY_SIMPLEX, 1.2, ink, 3, opencv_imgproc.LINE_8, false);
+                }
+            }
+        }
+        return photo;
+    }
+
+    @Test
+    void testPhotoIsCroppedToTheReceipt() {
+        try (Mat photo = photo(); Mat region = detector.crop(photo)) {
+            assertTrue(ReceiptRegionDetector.isCropped(photo, region));
+            assertEquals(1, region.channels());
+            // The sheet is about 600 wide and 1000 high, give or take the detection at reduced size
+            assertEquals(600, region.cols(), 30);
+            assertEquals(1000, region.rows(), 40);
+            assertTrue(region.total() < photo.total() / 2, "OCR gets far fewer pixels");
+            // Mostly paper, no table left
+            assertTrue(opencv_core.mean(region).get(0) > 180);
+        }
+    }
+
+    @Test
+    void testPhotoOfReceiptOnTableIsCropped() throws Exception {
+        // The paper spans roughly x 110-915 and y 100-1440 of the 1024x1536 photo
+        File imageFile = ResourceUtils.getFile("classpath:clear_receipt.png");
+        try (ImagePipelineContext context = ImagePipelineContext.read(imageFile.getAbsolutePath());
+             Mat region = detector.crop(context.getGray())) {
+            assertTrue(ReceiptRegionDetector.isCropped(context.getGray(), region));
+            assertEquals(805, region.cols(), 40);
+            assertEquals(1340, region.rows(), 40);
+        }
+    }
+
+    @Test
+    void testFullFrameIsUsedWhenNothingIsFound() throws Exception {
+        try (Mat blank = new Mat(800, 600, opencv_core.CV_8UC1, new Scalar(128.0));
+             Mat region = detector.crop(blank)) {
+            assertFalse(ReceiptRegionDetector.isCropped(blank, region));
+            assertEquals(blank.cols(), region.cols());
+        }
+
+        // Digital receipts already fill the frame
+        File imageFile = ResourceUtils.getFile("classpath:receipt_3.png");
+        try (ImagePipelineContext context = ImagePipelineContext.read(imageFile.getAbsolutePath());
+             Mat region = detector.crop(context.getGray())) {
+            assertFalse(ReceiptRegionDetector.isCropped(context.getGray(), region));
+        }
+
+        try (Mat photo = photo();
+             Mat region = new ReceiptRegionDetector(false, 512, 0.2, 0.9).crop(photo)) {
+            assertFalse(ReceiptRegionDetector.isCropped(photo, region));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import com.splitshare.splitshare.dto.BulkAssignmentRequest;
+import com.splitshare.splitshare.dto.ReceiptData;
+import com.splitshare.splitshare.dto.ReceiptItem;
+import com.splitshare.splitshare.service.FileReceiptStore;
+import com.splitshare.splitshare.service.ItemSplitService;
+import com.splitshare.splitshare.service.LogStructuredReceiptStore;
+import com.splitshare.splitshare.service.OcrMetrics;
+import com.splitshare.splitshare.service.ReceiptIndex;
+import com.splitshare.splitshare.service.ReceiptStorageService;
+import com.splitshare.splitshare.service.ReceiptStore;
+import com.splitshare.splitshare.service.ReceiptVersionConflictException;
+import com.splitshare.splitshare.service.SplitResultCache;
+
+public class ReceiptStorageServiceTest {
+
+    @TempDir
+    Path storageDir;
+
+    private ReceiptStorageService storageService(ReceiptStore store, int compactThreshold) {
+        return new ReceiptStorageService(store, new ReceiptIndex(storageDir.toString(), store),
+                new OcrMetrics(new SimpleMeterRegistry()), new SplitResultCache(true, 100), compactThreshold);
+    }
+
+    private String storeReceipt(ReceiptStorageService storageService, int items) {
+        ReceiptData data = new ReceiptData();
+        data.setStoreName("Costco");
+        for (int i = 0; i < items; i++) {
+            data.getItems().add(new ReceiptItem("Item " + i, i + 1, 1));
+        }
+        return storageService.storeReceiptText(5L, "RAW TEXT", data, "r.png");
+    }
+
+    @Test
+    void testFileStoreKeepsOriginalLayout() {
+        ReceiptStorageService storageService = storageService(new FileReceiptStore(storageDir.toString()), 16);
+        ReceiptData data = new ReceiptData();
+        data.setStoreName("Walmart");
+        data.setTotal(4.5);
+        data.setItems(List.of(new ReceiptItem("Milk", 4.5, 1)));
+
+        String receiptId = storageService.storeReceiptText(5L, "RAW TEXT", data, "r.png");
+
+        assertTrue(Files.exists(storageDir.resolve("5").resolve(receiptId + ".txt")));
+        assertTrue(Files.exists(storageDir.resolve("5").resolve(receiptId + ".json")));
+        assertTrue(storageService.getReceiptText(5L, receiptId).endsWith("RAW TEXT"));
+        assertEquals("Walmart", storageService.getReceiptById(5L, receiptId).getStoreName());
+
+        data.setStoreName("Target");
+        storageService.updateReceipt(5L, receiptId, data);
+        assertEquals("Target", storageService.getReceiptById(5L, receiptId).getStoreName());
+        assertNull(storageService.getReceiptById(5L, "missing"));
+        assertEquals("Target", storageService.listReceipts(5L, null, 10).getReceipts().get(0).getStoreName());
+    }
+
+    @Test
+    void testConcurrentAssignmentsAreNotLost() throws Exception {
+        ReceiptStorageService storageService = storageService(new FileReceiptStore(storageDir.toString()), 1000);
+        String receiptId = storeReceipt(storageService, 30);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            int itemIndex = i;
+            results.add(executor.submit(() ->
+                    storageService.assignUsers(5L, receiptId, Map.of(itemIndex, List.of(itemIndex + 100)), null)));
+        }
+        for (Future<Long> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        ReceiptData receipt = storageService.getReceiptById(5L, receiptId);
+        assertEquals(30, receipt.getVersion());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(List.of(i + 100), receipt.getItems().get(i).getAssignedUser());
+        }
+        assertTrue(Files.exists(storageDir.resolve("5").resolve(receiptId + ".deltas")), "Assignments only append deltas");
+    }
+
+    @Test
+    void testStaleVersionIsRejected() {
+        ReceiptStorageService storageService = storageService(new FileReceiptStore(storageDir.toString()), 16);
+        String receiptId = storeReceipt(storageService, 2);
+
+        assertEquals(1L, storageService.assignUsers(5L, receiptId, Map.of(0, List.of(2)), 0L));
+        assertThrows(ReceiptVersionConflictException.class,
+                () -> storageService.assignUsers(5L, receiptId, Map.of(1, List.of(3)), 0L));
+        assertThrows(IllegalArgumentException.class,
+                () -> storageService.assignUsers(5L, receiptId, Map.of(2, List.of(3)), 1L));
+        assertNull(storageService.assignUsers(5L, "missing", Map.of(0, List.of(3)), null));
+
+        ReceiptData stale = storageService.getReceiptById(5L, receiptId);
+        storageService.assignUsers(5L, receiptId, Map.of(1, List.of(4)), null);
+        assertThrows(ReceiptVersionConflictException.class,
+                () -> storageService.updateReceipt(5L, receiptId, stale, stale.getVersion()));
+        assertEquals(List.of(4), storageService.getReceiptById(5L, receiptId).getItems().get(1).getAssignedUser());
+    }
+
+    @Test
+    void testChangesInvalidateCachedSplits() {
+        FileReceiptStore store = new FileReceiptStore(storageDir.toString());
+        SplitResultCache splitCache = new SplitResultCache(true, 100);
+        ReceiptStorageService storageService = new ReceiptStorageService(store, new ReceiptIndex(storageDir.toString(), store),
+                new OcrMetrics(new SimpleMeterRegistry()), splitCache, 16);
+        String receiptId = storeReceipt(storageService, 2);
+        assertEquals(0L, storageService.getReceiptVersion(5L, receiptId));
+        assertNull(storageService.getReceiptVersion(5L, "missing"));
+
+        splitCache.put(5L, receiptId, 0, false, Map.of(1, 3.0));
+        assertEquals(Map.of(1, 3.0), splitCache.get(5L, receiptId, 0, false));
+        assertNull(splitCache.get(5L, receiptId, 0, true));
+
+        storageService.assignUsers(5L, receiptId, Map.of(0, List.of(2)), null);
+        assertNull(splitCache.get(5L, receiptId, 0, false));
+        assertEquals(1L, storageService.getReceiptVersion(5L, receiptId));
+
+        splitCache.put(5L, receiptId, 1, false, Map.of(1, 2.0, 2, 1.0));
+        // A result computed from an older version must not replace a newer one
+        splitCache.put(5L, receiptId, 0, false, Map.of(1, 3.0));
+        assertEquals(Map.of(1, 2.0, 2, 1.0), splitCache.get(5L, receiptId, 1, false));
+        storageService.updateReceipt(5L, receiptId, storageService.getReceiptById(5L, receiptId));
+        assertNull(splitCache.get(5L, receiptId, 1, false));
+        assertEquals(2, splitCache.getInvalidations());
+    }
+
+    @Test
+    void testJournalIsFoldedInTheBackground() throws Exception {
+        LogStructuredReceiptStore store = new LogStructuredReceiptStore(storageDir.toString(), 1024 * 1024, 0, 0.5, false);
+        ReceiptStorageService storageService = storageService(store, 4);
+        String receiptId = storeReceipt(storageService, 3);
+
+        for (int i = 0; i < 4; i++) {
+            storageService.assignUsers(5L, receiptId, Map.of(i % 3, List.of(i)), (long) i);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!store.readDeltas(5L, receiptId).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(store.readDeltas(5L, receiptId).isEmpty());
+
+        ReceiptData receipt = storageService.getReceiptById(5L, receiptId);
+        assertEquals(4, receipt.getVersion());
+        assertEquals(List.of(3), receipt.getItems().get(0).getAssignedUser());
+        assertEquals(List.of(1), receipt.getItems().get(1).getAssignedUser());
+        storageService.shutdown();
+        store.shutdown();
+    }
+
+    @Test
+    void testBulkAssignmentIsValidatedAndPersistedOnce() throws Exception {
+        FileReceiptStore store = new FileReceiptStore(storageDir.toString());
+        ReceiptStorageService storageService = storageService(store, 16);
+        ItemSplitService itemSplitService = new ItemSplitService();
+        String receiptId = storeReceipt(storageService, 4);
+
+        BulkAssignmentRequest request = new BulkAssignmentRequest();
+        request.setAssignments(Map.of(0, List.of(1), 1, List.of(2, 3)));
+        request.setSplitRemainingAmong(List.of(1, 2));
+        ReceiptData result = storageService.applyAssignments(5L, receiptId, 0L,
+                receipt -> itemSplitService.resolveAssignments(receipt, request));
+
+        assertEquals(1, result.getVersion());
+        assertEquals(List.of(1, 2), result.getItems().get(3).getAssignedUser());
+        assertEquals(1, store.readDeltas(5L, receiptId).size(), "One delta for the whole request");
+        // Items cost 1, 2, 3 and 4: user 1 owes 1 + 3/2 + 4/2, user 2 owes 2/2 + 3/2 + 4/2
+        Map<Integer, Double> owed = itemSplitService.calculateUserOwedAmounts(storageService.getReceiptById(5L, receiptId));
+        assertEquals(4.5, owed.get(1), 0.001);
+        assertEquals(4.5, owed.get(2), 0.001);
+        assertEquals(1.0, owed.get(3), 0.001);
+
+        BulkAssignmentRequest invalid = new BulkAssignmentRequest();
+        invalid.setAssignments(Map.of(0, List.of(9), 7, List.of(9)));
+        assertThrows(IllegalArgumentException.class, () -> storageService.applyAssignments(5L, receiptId, null,
+                receipt -> itemSplitService.resolveAssignments(receipt, invalid)));
+        assertEquals(List.of(1), storageService.getReceiptById(5L, receiptId).getItems().get(0).getAssignedUser(),
+                "Nothing is written when part of the request is invalid");
+    }
+}
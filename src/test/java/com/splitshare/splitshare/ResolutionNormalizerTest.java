@@ -0,0 +1,85 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Point;
+import org.bytedeco.opencv.opencv_core.Scalar;
+import org.junit.jupiter.api.Test;
+
+import com.splitshare.splitshare.service.Preprocesing;
+import com.splitshare.splitshare.service.ResolutionNormalizer;
+
+public class ResolutionNormalizerTest {
+
+    private final ResolutionNormalizer normalizer = new ResolutionNormalizer(true, 32, 1600, 0.25, 4, 0.2);
+
+    // Receipt-like lines of capitals and digits, HERSHEY_SIMPLEX capitals are about 22 * fontScale pixels tall
+    private static Mat receipt(int width, int height, double fontScale) {
+        Mat image = new Mat(height, width, opencv_core.CV_8UC1, new Scalar(240.0));
+        int lineHeight = (int) (40 * fontScale);
+        int thickness = Math.max(1, (int) Math.round(2 * fontScale));
+        try (Scalar ink = new Scalar(20.0)) {
+            for (int y = lineHeight; y < height - lineHeight / 2 && y < 16 * lineHeight; y += lineHeight) {
+                try (Point origin = new Point(lineHeight / 2, y)) {
+                    opencv_imgproc.putText(image, "BREAD 2.29 MILK 3.99", origin,
+                            opencv_imgproc.FONT_HERSHEY_SIMPLEX, fontScale, ink, thickness, opencv_imgproc.LINE_8, false);
+                }
+            }
+        }
+        return image;
+    }
+
+    @Test
+    void testLargePhotoTextIsScaledDown() {
+        // A 4000x3000 photo with capitals about 88 pixels tall
+        try (Mat photo = receipt(3000, 4000, 4.0)) {
+            ResolutionNormalizer.Decision decision = normalizer.decide(photo);
+            assertTrue(decision.isEstimated());
+            assertEquals(88, decision.getTextHeight(), 15);
+            assertTrue(decision.getFactor() < 0.5, "Got " + decision.getFactor());
+
+            try (Mat preprocessed = Preprocesing.preprocessMinimal(photo, decision.getFactor())) {
+                assertTrue(preprocessed.total() * 4 < photo.total(), "Tesseract gets far fewer pixels");
+                double scaledTextHeight = decision.getTextHeight() * decision.getFactor();
+                assertEquals(32, scaledTextHeight, 1);
+            }
+        }
+    }
+
+    @Test
+    void testSmallTextIsScaledUp() {
+        try (Mat scan = receipt(600, 800, 0.5)) {
+            ResolutionNormalizer.Decision decision = normalizer.decide(scan);
+            assertTrue(decision.isEstimated());
+            assertTrue(decision.getFactor() > 2, "Got " + decision.getFactor());
+            try (Mat preprocessed = Preprocesing.preprocessIncreased(scan, decision.getFactor())) {
+                assertEquals(Math.round((600 + 40) * decision.getFactor()), preprocessed.cols(), 1);
+            }
+        }
+    }
+
+    @Test
+    void testTextNearTargetIsLeftAlone() {
+        try (Mat receipt = receipt(1200, 1600, 1.5)) {
+            assertEquals(1.0, normalizer.decide(receipt).getFactor());
+        }
+    }
+
+    @Test
+    void testFallsBackToOldRuleWithoutText() {
+        try (Mat small = new Mat(600, 400, opencv_core.CV_8UC1, new Scalar(255.0));
+             Mat large = new Mat(2000, 1500, opencv_core.CV_8UC1, new Scalar(255.0))) {
+            assertFalse(normalizer.decide(small).isEstimated());
+            assertEquals(2.0, normalizer.decide(small).getFactor());
+            assertEquals(1.0, normalizer.decide(large).getFactor());
+        }
+        try (Mat photo = receipt(3000, 4000, 4.0)) {
+            assertEquals(1.0, new ResolutionNormalizer(false, 32, 1600, 0.25, 4, 0.2).decide(photo).getFactor());
+        }
+    }
+}
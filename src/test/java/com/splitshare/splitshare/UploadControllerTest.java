@@ -1,9 +1,14 @@
 package com.splitshare.splitshare;
 
 import com.splitshare.splitshare.controller.UploadController;
+import com.splitshare.splitshare.service.UploadIngestService;
+
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
@@ -12,16 +17,28 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(UploadController.class)
+@Import(UploadIngestService.class)
 public class UploadControllerTest {
 
+        // Uploads are checked by their magic bytes, so test files start with a real header
+        private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A};
+        private static final byte[] JPEG_HEADER = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0};
+
         @Autowired
         private MockMvc mockMvc;
 
+        private static byte[] withHeader(byte[] header, String content) {
+                byte[] body = content.getBytes();
+                byte[] bytes = Arrays.copyOf(header, header.length + body.length);
+                System.arraycopy(body, 0, bytes, header.length, body.length);
+                return bytes;
+        }
+
         // ✅ Test: Valid PNG upload
         @Test
         public void testValidPngUpload_Returns200() throws Exception {
         MockMultipartFile file = new MockMultipartFile(
-                "file", "receipt.png", "image/png", "fake image content".getBytes());
+                "file", "receipt.png", "image/png", withHeader(PNG_HEADER, "fake image content"));
 
         mockMvc.perform(multipart("/api/upload")
                         .file(file))
@@ -29,14 +46,16 @@ public class UploadControllerTest {
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.message").value("Upload successful"))
                 .andExpect(jsonPath("$.fileName").exists())
-                .andExpect(jsonPath("$.filePath").exists());
+                .andExpect(jsonPath("$.filePath").exists())
+                .andExpect(jsonPath("$.contentType").value("image/png"))
+                .andExpect(jsonPath("$.contentHash").exists());
         }
 
         // ✅ Test: Valid JPEG upload (.jpeg)
         @Test
         public void testValidJpegUpload_Returns200() throws Exception {
                 MockMultipartFile file = new MockMultipartFile(
-                        "file", "receipt.jpeg", "image/jpeg", "fake jpeg content".getBytes());
+                        "file", "receipt.jpeg", "image/jpeg", withHeader(JPEG_HEADER, "fake jpeg content"));
 
                 mockMvc.perform(multipart("/api/upload")
                                 .file(file))
@@ -48,7 +67,7 @@ public class UploadControllerTest {
         @Test
         public void testValidJpgUpload_Returns200() throws Exception {
                 MockMultipartFile file = new MockMultipartFile(
-                        "file", "receipt.jpg", "image/jpeg", "fake jpg content".getBytes());
+                        "file", "receipt.jpg", "image/jpeg", withHeader(JPEG_HEADER, "fake jpg content"));
 
                 mockMvc.perform(multipart("/api/upload")
                         .file(file))
@@ -68,6 +87,18 @@ public class UploadControllerTest {
                         .andExpect(content().string(org.hamcrest.Matchers.containsString("Unsupported file format")));
         }
 
+        // ❌ Test: Claims to be an image but the content is not
+        @Test
+        public void testSpoofedContentType_Returns415() throws Exception {
+                MockMultipartFile file = new MockMultipartFile(
+                        "file", "receipt.png", "image/png", "MZ not really a png".getBytes());
+
+                mockMvc.perform(multipart("/api/upload")
+                        .file(file))
+                        .andExpect(status().isUnsupportedMediaType())
+                        .andExpect(content().string(org.hamcrest.Matchers.containsString("Unsupported file format")));
+        }
+
         // ❌ Test: Oversized file (>5MB)
         @Test
         public void testOversizedFile_Returns413() throws Exception {
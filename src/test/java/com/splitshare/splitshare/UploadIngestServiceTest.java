@@ -0,0 +1,77 @@
+package com.splitshare.splitshare;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.ResourceUtils;
+
+import com.splitshare.splitshare.dto.UploadedImage;
+import com.splitshare.splitshare.service.ImageType;
+import com.splitshare.splitshare.service.OcrResultCache;
+import com.splitshare.splitshare.service.UnsupportedImageTypeException;
+import com.splitshare.splitshare.service.UploadIngestService;
+import com.splitshare.splitshare.service.UploadTooLargeException;
+
+public class UploadIngestServiceTest {
+    private final UploadIngestService ingestService = new UploadIngestService();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testStreamsImageWithHashAndSniffedType() throws Exception {
+        File imageFile = ResourceUtils.getFile("classpath:receipt1.png");
+        byte[] bytes = Files.readAllBytes(imageFile.toPath());
+
+        // Hand out a few bytes per read, like a slow network stream
+        InputStream trickle = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 5));
+            }
+        };
+        UploadedImage upload = ingestService.ingest(trickle, tempDir, bytes.length, ImageType.OCR_TYPES);
+
+        assertEquals(ImageType.PNG, upload.getType());
+        assertEquals(bytes.length, upload.getSize());
+        assertEquals(OcrResultCache.sha256(bytes), upload.getContentHash());
+        assertEquals(OcrResultCache.sha256(bytes), OcrResultCache.sha256(upload.getPath()));
+        assertArrayEquals(bytes, Files.readAllBytes(upload.getPath()));
+        assertEquals(true, upload.getPath().toString().endsWith(".png"));
+    }
+
+    @Test
+    void testRejectedUploadsLeaveNoFiles() throws Exception {
+        byte[] text = "just some text, not an image".getBytes();
+        assertThrows(UnsupportedImageTypeException.class,
+                () -> ingestService.ingest(new ByteArrayInputStream(text), tempDir, 1024, ImageType.OCR_TYPES));
+
+        byte[] pdf = "%PDF-1.7 a pdf".getBytes();
+        assertThrows(UnsupportedImageTypeException.class,
+                () -> ingestService.ingest(new ByteArrayInputStream(pdf), tempDir, 1024, EnumSet.of(ImageType.PNG)));
+
+        byte[] bigJpeg = new byte[200 * 1024];
+        bigJpeg[0] = (byte) 0xFF;
+        bigJpeg[1] = (byte) 0xD8;
+        bigJpeg[2] = (byte) 0xFF;
+        assertThrows(UploadTooLargeException.class,
+                () -> ingestService.ingest(new ByteArrayInputStream(bigJpeg), tempDir, 100 * 1024, ImageType.OCR_TYPES));
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count(), "Partial files must be removed");
+        }
+    }
+}